@@ -38,8 +38,10 @@ import org.junit.Test;
 import com.dynamo.bob.CompileExceptionError;
 import com.dynamo.bob.archive.ArchiveEntry;
 import com.dynamo.bob.archive.ArchiveBuilder;
+import com.dynamo.bob.archive.ArchiveEntryCache;
 import com.dynamo.bob.archive.ArchiveReader;
 import com.dynamo.bob.archive.ManifestBuilder;
+import com.dynamo.bob.archive.MappedArchiveReader;
 import com.dynamo.bob.Project;
 import com.dynamo.bob.util.FileUtil;
 import com.dynamo.bob.fs.DefaultFileSystem;
@@ -152,6 +154,160 @@ public class ArchiveTest {
         ar.close();
     }
 
+    private byte[][] writeArchive(int maxThreads, List<String> excludedResources) throws IOException, CompileExceptionError {
+        return writeArchive(maxThreads, excludedResources, null, null, null);
+    }
+
+    private byte[][] writeArchive(int maxThreads, List<String> excludedResources, File previousData, ArchiveEntryCache previousCache, File cacheFile) throws IOException, CompileExceptionError {
+        ManifestBuilder mb = new ManifestBuilder();
+        mb.setResourceHashAlgorithm(HashAlgorithm.HASH_SHA1);
+        ArchiveBuilder ab = new ArchiveBuilder(contentRoot, mb, 16);
+        ab.setMaxThreads(maxThreads);
+        if (cacheFile != null) {
+            ab.setPreviousArchive(previousData, previousCache, "bob:encryption");
+        }
+        for (int i = 0; i < 100; ++i) {
+            String filename = "dir" + (i % 7) + "/file" + i + ".txt";
+            StringBuilder content = new StringBuilder();
+            for (int j = 0; j < i * 10; ++j) {
+                content.append(filename);
+            }
+            ab.add(createDummyFile(contentRoot, filename, content.toString().getBytes()), i % 2 == 0, i % 3 == 0);
+        }
+
+        RandomAccessFile outFileIndex = new RandomAccessFile(outputIndex, "rw");
+        RandomAccessFile outFileData = new RandomAccessFile(outputData, "rw");
+        outFileIndex.setLength(0);
+        outFileData.setLength(0);
+        ab.write(outFileIndex, outFileData, resourcePackDir, excludedResources);
+        outFileIndex.close();
+        outFileData.close();
+        if (cacheFile != null) {
+            ab.getEntryCache().write(cacheFile, outputData);
+        }
+        return new byte[][] { Files.readAllBytes(outputIndex.toPath()), Files.readAllBytes(outputData.toPath()) };
+    }
+
+    // entries prepared in parallel must produce the same archive as a single thread
+    @Test
+    public void testParallelWriteIsDeterministic() throws IOException, CompileExceptionError {
+        List<String> excludedResources = new ArrayList<String>();
+        excludedResources.add("/dir3/file10.txt");
+        excludedResources.add("/dir1/file22.txt");
+
+        byte[][] sequential = writeArchive(1, excludedResources);
+        byte[][] parallel = writeArchive(8, excludedResources);
+        assertArrayEquals(sequential[0], parallel[0]);
+        assertArrayEquals(sequential[1], parallel[1]);
+    }
+
+    // an archive built from the entries of a previous archive must be the same as a full build
+    @Test
+    public void testIncrementalWrite() throws IOException, CompileExceptionError {
+        List<String> excludedResources = new ArrayList<String>();
+        excludedResources.add("/dir3/file10.txt");
+        File cacheFile = new File(outputData.getPath() + ".cache");
+        File previousData = Files.createTempFile("tmp.defold.previous", "arcd").toFile();
+        try {
+            writeArchive(4, excludedResources, null, null, cacheFile);
+            ArchiveEntryCache cache = ArchiveEntryCache.read(cacheFile, outputData, HashAlgorithm.HASH_SHA1, "bob:encryption");
+            assertEquals(99, cache.size());
+
+            // exclude a previously bundled entry
+            excludedResources.add("/dir1/file22.txt");
+            FileUtils.copyFile(outputData, previousData);
+            byte[][] incremental = writeArchive(4, excludedResources, previousData, cache, cacheFile);
+            byte[][] full = writeArchive(4, excludedResources);
+            assertArrayEquals(full[0], incremental[0]);
+            assertArrayEquals(full[1], incremental[1]);
+
+            // the cache is not used by a build with another version of bob or encryption
+            assertEquals(null, ArchiveEntryCache.read(cacheFile, outputData, HashAlgorithm.HASH_SHA1, "bob:other-encryption"));
+
+            // the cache does not match a modified archive
+            outputData.setLastModified(outputData.lastModified() - 10000);
+            assertEquals(null, ArchiveEntryCache.read(cacheFile, outputData, HashAlgorithm.HASH_SHA1, "bob:encryption"));
+        } finally {
+            FileUtils.deleteQuietly(cacheFile);
+            FileUtils.deleteQuietly(previousData);
+        }
+    }
+
+    // entries with identical payloads share their data in the archive
+    @Test
+    public void testDuplicatePayloads() throws IOException, CompileExceptionError {
+        ArchiveBuilder ab = new ArchiveBuilder(contentRoot, manifestBuilder, 4);
+        ab.add(createDummyFile(contentRoot, "a.txt", "abc123abc123".getBytes()), true, false);
+        ab.add(createDummyFile(contentRoot, "b.txt", "abc123abc123".getBytes()), true, false);
+        ab.add(createDummyFile(contentRoot, "c.txt", "abc123abc123".getBytes()), false, false);
+        ab.add(createDummyFile(contentRoot, "d.txt", "abc123".getBytes()), false, false);
+
+        RandomAccessFile outFileIndex = new RandomAccessFile(outputIndex, "rw");
+        RandomAccessFile outFileData = new RandomAccessFile(outputData, "rw");
+        outFileIndex.setLength(0);
+        outFileData.setLength(0);
+        ab.write(outFileIndex, outFileData, resourcePackDir, new ArrayList<String>());
+        outFileIndex.close();
+        outFileData.close();
+
+        // a.txt, b.txt and c.txt are too small to compress, so all three share
+        // one payload, written after d.txt (6 bytes) and its padding (2 bytes)
+        assertEquals(4, ab.getArchiveEntrySize());
+        assertEquals(6 + 2 + 12, outputData.length());
+
+        ArchiveReader ar = new ArchiveReader(outputIndex.getAbsolutePath(), outputData.getAbsolutePath(), null);
+        ar.read();
+        int sharedOffset = -1;
+        for (ArchiveEntry entry : ar.getEntries()) {
+            if (entry.getSize() == 12) {
+                if (sharedOffset == -1) {
+                    sharedOffset = entry.getResourceOffset();
+                }
+                assertEquals(sharedOffset, entry.getResourceOffset());
+            }
+        }
+        ar.close();
+    }
+
+    @Test
+    public void testMappedArchiveReader() throws IOException, CompileExceptionError {
+        ArchiveBuilder ab = new ArchiveBuilder(contentRoot, manifestBuilder, 4);
+        List<byte[]> contents = new ArrayList<byte[]>();
+        for (int i = 0; i < 20; ++i) {
+            StringBuilder content = new StringBuilder();
+            for (int j = 0; j < i * 20; ++j) {
+                content.append("content" + (j % 3));
+            }
+            contents.add(content.toString().getBytes());
+            ab.add(createDummyFile(contentRoot, "file" + i + ".txt", contents.get(i)), i % 2 == 0, i % 3 == 0);
+        }
+
+        RandomAccessFile outFileIndex = new RandomAccessFile(outputIndex, "rw");
+        RandomAccessFile outFileData = new RandomAccessFile(outputData, "rw");
+        outFileIndex.setLength(0);
+        outFileData.setLength(0);
+        ab.write(outFileIndex, outFileData, resourcePackDir, new ArrayList<String>());
+        outFileIndex.close();
+        outFileData.close();
+
+        MappedArchiveReader reader = new MappedArchiveReader(outputIndex, outputData);
+        assertEquals(20, reader.getEntryCount());
+        assertEquals(20, reader.getHashLength());
+        for (int i = 0; i < ab.getArchiveEntrySize(); ++i) {
+            ArchiveEntry entry = ab.getArchiveEntry(i);
+            int index = reader.find(entry.getHash());
+            assertEquals(i, index);
+            assertEquals(entry.getSize(), reader.getSize(index));
+            assertEquals(entry.getFlags(), reader.getFlags(index));
+            assertEquals(entry.getHexDigest(), reader.getEntry(index).getHexDigest());
+
+            int fileIndex = Integer.parseInt(entry.getRelativeFilename().replaceAll("[^0-9]", ""));
+            assertArrayEquals(contents.get(fileIndex), reader.getContent(index));
+        }
+        assertEquals(-1, reader.find(new byte[ArchiveBuilder.HASH_LENGTH]));
+        reader.close();
+    }
+
     @Test
     public void testEntriesOrder() throws IOException, CompileExceptionError {
 
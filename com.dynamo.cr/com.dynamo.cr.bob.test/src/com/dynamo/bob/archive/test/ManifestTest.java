@@ -16,6 +16,7 @@ package com.dynamo.bob.archive.test;
 
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
@@ -30,6 +31,8 @@ import java.security.NoSuchAlgorithmException;
 import java.security.PrivateKey;
 import java.security.PublicKey;
 import java.security.spec.InvalidKeySpecException;
+import java.util.HashSet;
+import java.util.Set;
 
 import javax.crypto.BadPaddingException;
 import javax.crypto.IllegalBlockSizeException;
@@ -469,6 +472,34 @@ public class ManifestTest {
         }
     }
 
+    @Test
+    public void testResourcePackDelta() throws NoSuchAlgorithmException, IOException {
+        ManifestBuilder manifestBuilder = new ManifestBuilder();
+        manifestBuilder.setResourceHashAlgorithm(HashAlgorithm.HASH_SHA1);
+        manifestBuilder.addResourceEntry("/unchanged.goc", "a".getBytes(), 1, 1, ResourceEntryFlag.EXCLUDED.getNumber());
+        manifestBuilder.addResourceEntry("/added.goc", "b".getBytes(), 1, 1, ResourceEntryFlag.EXCLUDED.getNumber());
+        manifestBuilder.addResourceEntry("/bundled.goc", "c".getBytes(), 1, 1, ResourceEntryFlag.BUNDLED.getNumber());
+
+        String unchanged = ManifestBuilder.CryptographicOperations.hexdigest(ManifestBuilder.CryptographicOperations.hash("a".getBytes(), HashAlgorithm.HASH_SHA1));
+        String added = ManifestBuilder.CryptographicOperations.hexdigest(ManifestBuilder.CryptographicOperations.hash("b".getBytes(), HashAlgorithm.HASH_SHA1));
+        String bundled = ManifestBuilder.CryptographicOperations.hexdigest(ManifestBuilder.CryptographicOperations.hash("c".getBytes(), HashAlgorithm.HASH_SHA1));
+        String removed = ManifestBuilder.CryptographicOperations.hexdigest(ManifestBuilder.CryptographicOperations.hash("d".getBytes(), HashAlgorithm.HASH_SHA1));
+
+        Set<String> previous = new HashSet<String>();
+        previous.add(unchanged);
+        previous.add(removed);
+        String delta = manifestBuilder.buildResourcePackDelta(previous);
+
+        String addedSection = delta.substring(delta.indexOf("\"added\""), delta.indexOf("\"removed\""));
+        String removedSection = delta.substring(delta.indexOf("\"removed\""));
+        assertTrue(addedSection.contains("/added.goc"));
+        assertTrue(addedSection.contains(added));
+        assertFalse(addedSection.contains(unchanged));
+        assertFalse(addedSection.contains(bundled));
+        assertTrue(removedSection.contains(removed));
+        assertFalse(removedSection.contains(unchanged));
+    }
+
     @Test
     public void testCreateManifest_Resources() throws NoSuchAlgorithmException, InvalidKeySpecException, IOException {
         ManifestInstance instance = new ManifestInstance();
@@ -0,0 +1,191 @@
+// Copyright 2020-2024 The Defold Foundation
+// Copyright 2014-2020 King
+// Copyright 2009-2014 Ragnar Svensson, Christian Murray
+// Licensed under the Defold License version 1.0 (the "License"); you may not use
+// this file except in compliance with the License.
+//
+// You may obtain a copy of the License, together with FAQs at
+// https://www.defold.com/license
+//
+// Unless required by applicable law or agreed to in writing, software distributed
+// under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+// CONDITIONS OF ANY KIND, either express or implied. See the License for the
+// specific language governing permissions and limitations under the License.
+
+
+package com.dynamo.bob.cache.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.bio.SocketConnector;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.dynamo.bob.cache.ResourceCache;
+
+public class RemoteResourceCacheTest {
+
+	private Path cacheDir;
+
+	private Server httpServer;
+
+	private String remoteUrl;
+
+	private ResourceCache resourceCache = null;
+
+	// contents of the stand-in remote cache
+	private Map<String, byte[]> remote = new ConcurrentHashMap<>();
+
+	// status codes returned instead of the content for some keys
+	private Map<String, Integer> errors = new ConcurrentHashMap<>();
+
+	private AtomicInteger headCount = new AtomicInteger();
+	private AtomicInteger getCount = new AtomicInteger();
+	private AtomicInteger putCount = new AtomicInteger();
+
+	private class RemoteCacheHandler extends AbstractHandler {
+		@Override
+		public void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response) throws IOException, ServletException {
+			String key = target.substring(target.lastIndexOf('/') + 1);
+			String method = request.getMethod();
+			if (method.equals("PUT")) {
+				putCount.incrementAndGet();
+				remote.put(key, IOUtils.toByteArray(request.getInputStream()));
+				response.setStatus(HttpServletResponse.SC_CREATED);
+			} else {
+				if (method.equals("HEAD")) {
+					headCount.incrementAndGet();
+				} else {
+					getCount.incrementAndGet();
+				}
+				byte[] data = remote.get(key);
+				Integer error = errors.get(key);
+				if (error != null) {
+					response.setStatus(error);
+				} else if (data == null) {
+					response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+				} else {
+					response.setStatus(HttpServletResponse.SC_OK);
+					response.setContentLength(data.length);
+					if (method.equals("GET")) {
+						response.getOutputStream().write(data);
+					}
+				}
+			}
+			baseRequest.setHandled(true);
+		}
+	}
+
+	@Before
+	public void setUp() throws Exception {
+		cacheDir = Files.createTempDirectory(null);
+		httpServer = new Server();
+		SocketConnector connector = new SocketConnector();
+		connector.setPort(0);
+		httpServer.addConnector(connector);
+		httpServer.setHandler(new RemoteCacheHandler());
+		httpServer.start();
+		remoteUrl = "http://localhost:" + connector.getLocalPort() + "/cache";
+		resourceCache = new ResourceCache();
+		resourceCache.init(cacheDir.toString(), remoteUrl);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		resourceCache.flush();
+		httpServer.stop();
+		FileUtils.deleteDirectory(cacheDir.toFile());
+	}
+
+	// a batched query should download existing resources with one request each
+	@Test
+	public void testBatchedContains() throws Exception {
+		remote.put("aa01", "one".getBytes());
+		remote.put("aa02", "two".getBytes());
+
+		Set<String> cached = resourceCache.contains(Arrays.asList("aa01", "aa02", "aa03"));
+		assertEquals(2, cached.size());
+		assertTrue(cached.contains("aa01"));
+		assertTrue(cached.contains("aa02"));
+		assertEquals(0, headCount.get());
+		assertEquals(3, getCount.get());
+
+		// the resources are now local
+		assertArrayEquals("one".getBytes(), resourceCache.get("aa01"));
+		assertArrayEquals("two".getBytes(), resourceCache.get("aa02"));
+		assertFalse(resourceCache.contains("aa03"));
+		assertEquals(3, getCount.get());
+	}
+
+	// prefetched resources should be available without further requests
+	@Test
+	public void testPrefetch() throws Exception {
+		remote.put("aa01", "one".getBytes());
+		resourceCache.prefetch(Arrays.asList("aa01", "aa02"));
+		assertTrue(resourceCache.contains("aa01"));
+		assertFalse(resourceCache.contains("aa02"));
+		assertArrayEquals("one".getBytes(), resourceCache.get("aa01"));
+		assertEquals(2, getCount.get());
+	}
+
+	// a 403 response, used by S3 and GCS style caches for missing keys, is a cache miss
+	@Test
+	public void testForbiddenIsMiss() throws Exception {
+		errors.put("aa01", HttpServletResponse.SC_FORBIDDEN);
+		remote.put("aa02", "two".getBytes());
+
+		Set<String> cached = resourceCache.contains(Arrays.asList("aa01", "aa02"));
+		assertEquals(1, cached.size());
+		assertTrue(cached.contains("aa02"));
+		assertFalse(resourceCache.contains("aa01"));
+	}
+
+	// a server error is a cache miss, it doesn't fail the build
+	@Test
+	public void testServerErrorIsMiss() throws Exception {
+		errors.put("aa01", HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+		remote.put("aa02", "two".getBytes());
+
+		resourceCache.prefetch(Arrays.asList("aa01", "aa02"));
+		assertFalse(resourceCache.contains("aa01"));
+		assertTrue(resourceCache.contains("aa02"));
+		assertArrayEquals("two".getBytes(), resourceCache.get("aa02"));
+	}
+
+	// uploads happen in the background and are finished by flush()
+	@Test
+	public void testUpload() throws Exception {
+		assertFalse(resourceCache.contains("aa01"));
+		resourceCache.put("aa01", "one".getBytes());
+		resourceCache.put("aa02", "two".getBytes());
+		resourceCache.flush();
+
+		assertArrayEquals("one".getBytes(), remote.get("aa01"));
+		assertArrayEquals("two".getBytes(), remote.get("aa02"));
+		assertEquals(2, putCount.get());
+		// the first key is already known to be missing
+		assertEquals(1, headCount.get());
+	}
+}
@@ -14,6 +14,7 @@
 
 package com.dynamo.bob.cache.test;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertTrue;
@@ -196,4 +197,24 @@ public class ResourceCacheKeyTest {
 
 		assertEquals(key1, key2);
 	}
+
+	// the memoized task signature must not be affected by calculating keys
+	@Test
+	public void testMultipleOutputs() throws CompileExceptionError, IOException {
+		IResource input = createResource("someInput");
+		IResource output1 = createResource("someOutput").output();
+		IResource output2 = createResource("someOutput").output();
+
+		DummyBuilder builder1 = new DummyBuilder();
+		Task task1 = builder1.addInput(input).addOutput(output1).addOutput(output2).create(null);
+		String key1 = ResourceCacheKey.calculate(task1, createEmptyOptions(), output1);
+		String key2 = ResourceCacheKey.calculate(task1, createEmptyOptions(), output2);
+		assertNotEquals(key1, key2);
+		assertEquals(key1, ResourceCacheKey.calculate(task1, createEmptyOptions(), output1));
+
+		DummyBuilder builder2 = new DummyBuilder();
+		Task task2 = builder2.addInput(input).addOutput(output1).addOutput(output2).create(null);
+		assertEquals(key2, ResourceCacheKey.calculate(task2, createEmptyOptions(), output2));
+		assertArrayEquals(task1.calculateSignature(), task2.calculateSignature());
+	}
 }
@@ -15,6 +15,7 @@
 package com.dynamo.bob.cache.test;
 
 import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 import java.io.IOException;
@@ -26,6 +27,7 @@ import org.junit.Before;
 import org.junit.Test;
 
 import com.dynamo.bob.CompileExceptionError;
+import com.dynamo.bob.cache.LocalResourceCache;
 import com.dynamo.bob.cache.ResourceCache;
 
 
@@ -69,4 +71,58 @@ public class ResourceCacheTest {
 		assertArrayEquals(data, resourceCache.get(key));
 	}
 
+	// entries should be stored in subdirectories named after the key prefix
+	@Test
+	public void testSharding() throws IOException {
+		resourceCache.init(cacheDir.toString(), null);
+		resourceCache.put("abcdef", "somedata".getBytes());
+		assertTrue(Files.exists(cacheDir.resolve("ab").resolve("abcdef")));
+	}
+
+	// entries written before sharding should still be found
+	@Test
+	public void testLegacyEntry() throws IOException {
+		final byte[] data = "somedata".getBytes();
+		Files.write(cacheDir.resolve("abcdef"), data);
+		resourceCache.init(cacheDir.toString(), null);
+		assertTrue(resourceCache.contains("abcdef"));
+		assertArrayEquals(data, resourceCache.get("abcdef"));
+	}
+
+	// the least recently used entries should be evicted when the cache is over budget
+	@Test
+	public void testEviction() throws IOException, InterruptedException {
+		LocalResourceCache cache = new LocalResourceCache(cacheDir.toFile(), 250);
+		final byte[] data = new byte[100];
+		cache.put("aa01", data);
+		Thread.sleep(5);
+		cache.put("aa02", data);
+		Thread.sleep(5);
+		cache.put("aa03", data);
+		Thread.sleep(5);
+		// use the oldest entry so that the second one is evicted
+		cache.get("aa01");
+		assertTrue(cache.getSize() == 300);
+		cache.flush();
+
+		assertTrue(cache.contains("aa01"));
+		assertFalse(cache.contains("aa02"));
+		assertTrue(cache.contains("aa03"));
+		assertTrue(cache.getSize() == 200);
+
+		// the index is picked up by new instances
+		LocalResourceCache other = new LocalResourceCache(cacheDir.toFile(), 250);
+		assertTrue(other.getSize() == 200);
+	}
+
+	// a missing index should be rebuilt from the cache contents
+	@Test
+	public void testRebuildIndex() throws IOException {
+		LocalResourceCache cache = new LocalResourceCache(cacheDir.toFile(), 0);
+		cache.put("aa01", new byte[10]);
+		cache.put("bb02", new byte[20]);
+		LocalResourceCache other = new LocalResourceCache(cacheDir.toFile(), 0);
+		assertTrue(other.getSize() == 30);
+	}
+
 }
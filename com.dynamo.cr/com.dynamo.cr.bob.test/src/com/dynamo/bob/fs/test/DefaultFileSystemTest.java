@@ -0,0 +1,108 @@
+// Copyright 2020-2024 The Defold Foundation
+// Copyright 2014-2020 King
+// Copyright 2009-2014 Ragnar Svensson, Christian Murray
+// Licensed under the Defold License version 1.0 (the "License"); you may not use
+// this file except in compliance with the License.
+//
+// You may obtain a copy of the License, together with FAQs at
+// https://www.defold.com/license
+//
+// Unless required by applicable law or agreed to in writing, software distributed
+// under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+// CONDITIONS OF ANY KIND, either express or implied. See the License for the
+// specific language governing permissions and limitations under the License.
+
+
+package com.dynamo.bob.fs.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.Random;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.dynamo.bob.fs.DefaultFileSystem;
+import com.dynamo.bob.fs.IResource;
+
+public class DefaultFileSystemTest {
+
+    DefaultFileSystem fileSystem;
+    File root;
+
+    @Before
+    public void setUp() throws Exception {
+        root = Files.createTempDirectory("defaultfs").toFile();
+        fileSystem = new DefaultFileSystem();
+        fileSystem.setRootDirectory(root.getAbsolutePath());
+        fileSystem.setBuildDirectory("build");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        fileSystem.close();
+        FileUtils.deleteDirectory(root);
+    }
+
+    private static byte[] sha1(byte[] content) throws Exception {
+        return MessageDigest.getInstance("SHA1").digest(content);
+    }
+
+    @Test
+    public void testInterned() throws Exception {
+        IResource a = fileSystem.get("main/a.txt");
+        assertSame(a, fileSystem.get("/main/a.txt"));
+        assertSame(a.output(), fileSystem.get("build/main/a.txt"));
+    }
+
+    @Test
+    public void testSetContentAndRemove() throws Exception {
+        IResource r = fileSystem.get("build/a.txt");
+        assertFalse(r.exists());
+
+        r.setContent("first".getBytes());
+        assertTrue(fileSystem.get("build/a.txt").exists());
+        assertArrayEquals(sha1("first".getBytes()), r.sha1());
+
+        r.setContent("second!".getBytes());
+        assertArrayEquals(sha1("second!".getBytes()), fileSystem.get("build/a.txt").sha1());
+
+        r.remove();
+        assertFalse(fileSystem.get("build/a.txt").exists());
+    }
+
+    @Test
+    public void testExternalWrite() throws Exception {
+        IResource r = fileSystem.get("a.txt");
+        assertFalse(r.exists());
+
+        // missing files are not cached
+        File f = new File(root, "a.txt");
+        FileUtils.writeByteArrayToFile(f, "abc".getBytes());
+        assertTrue(r.exists());
+        assertArrayEquals(sha1("abc".getBytes()), r.sha1());
+
+        // existing files are cached until invalidated
+        FileUtils.writeByteArrayToFile(f, "abcdef".getBytes());
+        r.invalidate();
+        assertArrayEquals(sha1("abcdef".getBytes()), r.sha1());
+    }
+
+    @Test
+    public void testStreamedDigest() throws Exception {
+        // larger than the digest buffer and not a multiple of it
+        byte[] content = new byte[1024 * 1024 + 17];
+        new Random(1).nextBytes(content);
+        IResource r = fileSystem.get("build/big.bin");
+        r.setContent(content);
+        assertArrayEquals(sha1(content), r.sha1());
+    }
+}
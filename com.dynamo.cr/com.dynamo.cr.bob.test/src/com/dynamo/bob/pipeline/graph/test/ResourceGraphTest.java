@@ -15,8 +15,11 @@
 package com.dynamo.bob.pipeline.graph.test;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import org.junit.After;
@@ -99,4 +102,57 @@ public class ResourceGraphTest {
         System.out.println("excludedResources " + excludedResources);
         assertEquals(3, excludedResources.size());
     }
+
+    @Test
+    public void testAllDependants() throws IOException {
+        ResourceNode main_collectionc = resourceGraph.getResourceNodeFromPath("/main/main.collectionc");
+        List<String> dependants = new ArrayList<>();
+        for (ResourceNode dependant : resourceGraph.getAllDependants(main_collectionc)) {
+            dependants.add(dependant.getPath());
+        }
+        // the collections loaded by the proxies are not dependants
+        List<String> expected = Arrays.asList(
+            "/main/main.goc",
+            "/main/main.scriptc",
+            "/main/shared_go.goc",
+            "/main/level1.collectionproxyc",
+            "/main/level2.collectionproxyc");
+        assertEquals(expected, dependants);
+
+        ResourceNode level1_collectionc = resourceGraph.getResourceNodeFromPath("/main/level1.collectionc");
+        dependants.clear();
+        for (ResourceNode dependant : resourceGraph.getAllDependants(level1_collectionc)) {
+            dependants.add(dependant.getPath());
+        }
+        expected = Arrays.asList(
+            "/main/shared_go.goc",
+            "/main/level1.goc",
+            "/main/level1.scriptc");
+        assertEquals(expected, dependants);
+
+        // the result is cached
+        assertSame(resourceGraph.getAllDependants(level1_collectionc), resourceGraph.getAllDependants(level1_collectionc));
+    }
+
+    @Test
+    public void testLoadOrder() throws IOException {
+        List<String> loadOrder = resourceGraph.createLoadOrderList();
+        List<String> expected = Arrays.asList(
+            // main collection, with the proxies but not the resources they load
+            "/main/main.collectionc",
+            "/main/main.goc",
+            "/main/main.scriptc",
+            "/main/level1.collectionproxyc",
+            "/main/level2.collectionproxyc",
+            "/main/shared_go.goc",
+            // level1, shared_go.goc is already loaded by the main collection
+            "/main/level1.collectionc",
+            "/main/level1.goc",
+            "/main/level1.scriptc",
+            // level2
+            "/main/level2.collectionc",
+            "/main/level2.goc",
+            "/main/level2.scriptc");
+        assertEquals(expected, loadOrder);
+    }
 }
@@ -0,0 +1,150 @@
+// Copyright 2020-2024 The Defold Foundation
+// Copyright 2014-2020 King
+// Copyright 2009-2014 Ragnar Svensson, Christian Murray
+// Licensed under the Defold License version 1.0 (the "License"); you may not use
+// this file except in compliance with the License.
+//
+// You may obtain a copy of the License, together with FAQs at
+// https://www.defold.com/license
+//
+// Unless required by applicable law or agreed to in writing, software distributed
+// under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+// CONDITIONS OF ANY KIND, either express or implied. See the License for the
+// specific language governing permissions and limitations under the License.
+
+
+package com.dynamo.bob.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.dynamo.bob.Builder;
+import com.dynamo.bob.CompileExceptionError;
+import com.dynamo.bob.Project;
+import com.dynamo.bob.Task;
+import com.dynamo.bob.TaskCache;
+import com.dynamo.bob.fs.IResource;
+import com.dynamo.bob.test.util.MockFileSystem;
+
+public class TaskCacheTest {
+
+    private class DummyBuilder extends Builder {
+        private boolean cacheable;
+
+        public DummyBuilder(boolean cacheable) {
+            this.cacheable = cacheable;
+        }
+
+        @Override
+        public boolean isTaskCreationCacheable() {
+            return cacheable;
+        }
+
+        @Override
+        public Task create(IResource input) throws IOException, CompileExceptionError {
+            return Task.newBuilder(this)
+                    .setName("dummy")
+                    .addInput(input)
+                    .addInput(project.getResource("other.in"))
+                    .addOutput(input.changeExt(".out"))
+                    .addExtraCacheKey("extra")
+                    .disableCache()
+                    .build();
+        }
+
+        @Override
+        public void build(Task task) throws CompileExceptionError, IOException {
+        }
+    }
+
+    private MockFileSystem fs;
+    private Project project;
+
+    @Before
+    public void setUp() throws Exception {
+        fs = new MockFileSystem();
+        fs.setRootDirectory(".");
+        fs.setBuildDirectory("build");
+        fs.addFile("test.in", "test".getBytes());
+        fs.addFile("other.in", "other".getBytes());
+        project = new Project(fs, ".", "build");
+    }
+
+    private DummyBuilder createBuilder(boolean cacheable) {
+        DummyBuilder builder = new DummyBuilder(cacheable);
+        builder.setProject(project);
+        return builder;
+    }
+
+    private TaskCache saveAndLoad(TaskCache cache, String validityKey) throws Exception {
+        IResource resource = fs.get("build/_BobTaskCache_");
+        cache.save(resource);
+        TaskCache loaded = new TaskCache(validityKey);
+        loaded.load(resource);
+        return loaded;
+    }
+
+    private Task createAndCache(TaskCache cache, Builder builder, IResource input) throws Exception {
+        Task task = builder.create(input);
+        cache.put(builder, input, task, new ArrayList<>());
+        return task;
+    }
+
+    @Test
+    public void testRecreateTask() throws Exception {
+        IResource input = fs.get("test.in");
+        TaskCache cache = new TaskCache("key");
+        Task task = createAndCache(cache, createBuilder(true), input);
+
+        TaskCache loaded = saveAndLoad(cache, "key");
+        Task cached = loaded.get(project, createBuilder(true), input);
+        assertNotNull(cached);
+        assertEquals(task.getName(), cached.getName());
+        assertEquals(task.getInputs(), cached.getInputs());
+        assertEquals(task.getOutputs(), cached.getOutputs());
+        assertEquals(Arrays.asList("extra"), cached.getExtraCacheKeys());
+        assertFalse(cached.isCacheable());
+        assertArrayEquals(task.calculateSignature(), cached.calculateSignature());
+    }
+
+    @Test
+    public void testChangedInput() throws Exception {
+        IResource input = fs.get("test.in");
+        TaskCache cache = new TaskCache("key");
+        createAndCache(cache, createBuilder(true), input);
+
+        input.setContent("changed".getBytes());
+        TaskCache loaded = saveAndLoad(cache, "key");
+        assertNull(loaded.get(project, createBuilder(true), input));
+    }
+
+    @Test
+    public void testChangedValidityKey() throws Exception {
+        IResource input = fs.get("test.in");
+        TaskCache cache = new TaskCache("key");
+        createAndCache(cache, createBuilder(true), input);
+
+        TaskCache loaded = saveAndLoad(cache, "other key");
+        assertNull(loaded.get(project, createBuilder(true), input));
+    }
+
+    @Test
+    public void testNotCacheable() throws Exception {
+        IResource input = fs.get("test.in");
+        TaskCache cache = new TaskCache("key");
+        createAndCache(cache, createBuilder(false), input);
+
+        TaskCache loaded = saveAndLoad(cache, "key");
+        assertNull(loaded.get(project, createBuilder(true), input));
+    }
+}
@@ -0,0 +1,125 @@
+// Copyright 2020-2024 The Defold Foundation
+// Copyright 2014-2020 King
+// Copyright 2009-2014 Ragnar Svensson, Christian Murray
+// Licensed under the Defold License version 1.0 (the "License"); you may not use
+// this file except in compliance with the License.
+//
+// You may obtain a copy of the License, together with FAQs at
+// https://www.defold.com/license
+//
+// Unless required by applicable law or agreed to in writing, software distributed
+// under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+// CONDITIONS OF ANY KIND, either express or implied. See the License for the
+// specific language governing permissions and limitations under the License.
+
+
+package com.dynamo.bob.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.dynamo.bob.Builder;
+import com.dynamo.bob.CompileExceptionError;
+import com.dynamo.bob.Task;
+import com.dynamo.bob.TaskGraph;
+import com.dynamo.bob.fs.IResource;
+import com.dynamo.bob.test.util.MockFileSystem;
+
+public class TaskGraphTest {
+
+    private class DummyBuilder extends Builder {
+        @Override
+        public Task create(IResource input) throws IOException, CompileExceptionError {
+            return null;
+        }
+
+        @Override
+        public void build(Task task) throws CompileExceptionError, IOException {
+        }
+    }
+
+    private MockFileSystem fs;
+
+    @Before
+    public void setUp() throws Exception {
+        fs = new MockFileSystem();
+        fs.setBuildDirectory("build");
+    }
+
+    @SuppressWarnings("unchecked")
+    private Task createTask(String name, String[] inputs, String[] outputs) {
+        Task.TaskBuilder builder = Task.newBuilder(new DummyBuilder()).setName(name);
+        for (String input : inputs) {
+            builder.addInput(fs.get(input));
+        }
+        for (String output : outputs) {
+            builder.addOutput(fs.get(output).output());
+        }
+        return builder.build();
+    }
+
+    @Test
+    public void testReadyOrder() throws Exception {
+        Task a = createTask("a", new String[] {"a.in"}, new String[] {"a.out"});
+        Task b = createTask("b", new String[] {"b.in", "build/a.out"}, new String[] {"b.out"});
+        Task c = createTask("c", new String[] {"build/a.out", "build/b.out"}, new String[] {"c.out", "c2.out"});
+        TaskGraph graph = new TaskGraph(Arrays.asList(c, b, a));
+
+        assertEquals(3, graph.size());
+        assertEquals(a, graph.getProducer(fs.get("build/a.out")));
+        assertEquals(c, graph.getProducer(fs.get("build/c2.out")));
+
+        assertEquals(a, graph.pollReady());
+        assertNull(graph.pollReady());
+
+        graph.complete(a);
+        assertEquals(b, graph.pollReady());
+        assertNull(graph.pollReady());
+
+        graph.complete(b);
+        assertEquals(c, graph.pollReady());
+        graph.complete(c);
+        assertTrue(graph.isDone());
+    }
+
+    @Test
+    public void testFailurePropagatesToDependants() throws Exception {
+        Task a = createTask("a", new String[] {"a.in"}, new String[] {"a.out"});
+        Task b = createTask("b", new String[] {"build/a.out"}, new String[] {"b.out"});
+        Task c = createTask("c", new String[] {"build/b.out"}, new String[] {"c.out"});
+        Task d = createTask("d", new String[] {"d.in"}, new String[] {"d.out"});
+        TaskGraph graph = new TaskGraph(Arrays.asList(a, b, c, d));
+
+        assertEquals(new HashSet<>(Arrays.asList(a, d)), new HashSet<>(Arrays.asList(graph.pollReady(), graph.pollReady())));
+
+        List<Task> failed = graph.fail(a);
+        assertEquals(new HashSet<>(Arrays.asList(b, c)), new HashSet<>(failed));
+        assertFalse(graph.hasReadyTasks());
+        assertFalse(graph.isDone());
+
+        graph.complete(d);
+        assertTrue(graph.isDone());
+        assertEquals(4, graph.getDoneCount());
+    }
+
+    @Test
+    public void testPostpone() throws Exception {
+        Task a = createTask("a", new String[] {"a.in"}, new String[] {"a.out"});
+        TaskGraph graph = new TaskGraph(Arrays.asList(a));
+
+        Task task = graph.pollReady();
+        assertFalse(graph.hasReadyTasks());
+        graph.postpone(task);
+        assertEquals(a, graph.pollReady());
+    }
+}
@@ -0,0 +1,77 @@
+// Copyright 2020-2024 The Defold Foundation
+// Copyright 2014-2020 King
+// Copyright 2009-2014 Ragnar Svensson, Christian Murray
+// Licensed under the Defold License version 1.0 (the "License"); you may not use
+// this file except in compliance with the License.
+//
+// You may obtain a copy of the License, together with FAQs at
+// https://www.defold.com/license
+//
+// Unless required by applicable law or agreed to in writing, software distributed
+// under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+// CONDITIONS OF ANY KIND, either express or implied. See the License for the
+// specific language governing permissions and limitations under the License.
+
+package com.dynamo.bob.test.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.file.Files;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.dynamo.bob.util.FileUtil;
+
+public class FileUtilTest {
+
+    private File dir;
+
+    @Before
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("fileutiltest").toFile();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        FileUtils.deleteDirectory(dir);
+    }
+
+    @Test
+    public void testMoveFile() throws Exception {
+        File source = new File(dir, "source");
+        File target = new File(dir, "target");
+        FileUtils.writeByteArrayToFile(source, "new".getBytes());
+        FileUtils.writeByteArrayToFile(target, "old".getBytes());
+
+        FileUtil.moveFile(source, target);
+        assertFalse(source.exists());
+        assertArrayEquals("new".getBytes(), FileUtils.readFileToByteArray(target));
+    }
+
+    @Test
+    public void testLinkOrCopyFile() throws Exception {
+        File source = new File(dir, "source");
+        File target = new File(dir, "sub/target");
+        FileUtils.writeByteArrayToFile(source, "first".getBytes());
+
+        FileUtil.linkOrCopyFile(source, target);
+        assertArrayEquals("first".getBytes(), FileUtils.readFileToByteArray(target));
+
+        // replacing the source must not change the target
+        File replacement = new File(dir, "replacement");
+        FileUtils.writeByteArrayToFile(replacement, "second".getBytes());
+        FileUtil.moveFile(replacement, source);
+        assertArrayEquals("first".getBytes(), FileUtils.readFileToByteArray(target));
+
+        // an existing target is replaced
+        FileUtil.linkOrCopyFile(source, target);
+        assertArrayEquals("second".getBytes(), FileUtils.readFileToByteArray(target));
+        assertTrue(source.exists());
+    }
+}
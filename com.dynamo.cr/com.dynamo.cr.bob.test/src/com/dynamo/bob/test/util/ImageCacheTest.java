@@ -0,0 +1,82 @@
+// Copyright 2020-2024 The Defold Foundation
+// Copyright 2014-2020 King
+// Copyright 2009-2014 Ragnar Svensson, Christian Murray
+// Licensed under the Defold License version 1.0 (the "License"); you may not use
+// this file except in compliance with the License.
+//
+// You may obtain a copy of the License, together with FAQs at
+// https://www.defold.com/license
+//
+// Unless required by applicable law or agreed to in writing, software distributed
+// under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+// CONDITIONS OF ANY KIND, either express or implied. See the License for the
+// specific language governing permissions and limitations under the License.
+
+package com.dynamo.bob.test.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+
+import javax.imageio.ImageIO;
+
+import org.junit.Test;
+
+import com.dynamo.bob.util.ImageCache;
+
+public class ImageCacheTest {
+
+    private static byte[] createPng(int width, int height, int color) throws Exception {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        image.setRGB(0, 0, color);
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", os);
+        return os.toByteArray();
+    }
+
+    @Test
+    public void testCache() throws Exception {
+        ImageCache cache = new ImageCache(1000);
+        byte[] png = createPng(10, 10, 0xff00ff00);
+
+        BufferedImage image = cache.get(png);
+        assertEquals(10, image.getWidth());
+        assertEquals(0xff00ff00, image.getRGB(0, 0));
+        // the same data is only decoded once
+        assertSame(image, cache.get(png.clone()));
+
+        cache.clear();
+        assertNotSame(image, cache.get(png));
+    }
+
+    @Test
+    public void testEviction() throws Exception {
+        ImageCache cache = new ImageCache(250);
+        byte[] png1 = createPng(10, 10, 1);
+        byte[] png2 = createPng(10, 10, 2);
+        byte[] png3 = createPng(10, 10, 3);
+
+        BufferedImage image1 = cache.get(png1);
+        BufferedImage image2 = cache.get(png2);
+        // use image1 so that image2 is the least recently used
+        assertSame(image1, cache.get(png1));
+        cache.get(png3);
+
+        assertSame(image1, cache.get(png1));
+        assertNotSame(image2, cache.get(png2));
+
+        // images larger than the cache are not cached
+        byte[] large = createPng(20, 20, 4);
+        assertNotSame(cache.get(large), cache.get(large));
+    }
+
+    @Test
+    public void testUnsupportedData() throws Exception {
+        ImageCache cache = new ImageCache(1000);
+        assertNull(cache.get("not an image".getBytes()));
+    }
+}
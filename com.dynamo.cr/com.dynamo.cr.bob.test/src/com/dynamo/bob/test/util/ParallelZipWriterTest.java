@@ -0,0 +1,125 @@
+// Copyright 2020-2024 The Defold Foundation
+// Copyright 2014-2020 King
+// Copyright 2009-2014 Ragnar Svensson, Christian Murray
+// Licensed under the Defold License version 1.0 (the "License"); you may not use
+// this file except in compliance with the License.
+//
+// You may obtain a copy of the License, together with FAQs at
+// https://www.defold.com/license
+//
+// Unless required by applicable law or agreed to in writing, software distributed
+// under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+// CONDITIONS OF ANY KIND, either express or implied. See the License for the
+// specific language governing permissions and limitations under the License.
+
+package com.dynamo.bob.test.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.dynamo.bob.util.ParallelZipWriter;
+
+public class ParallelZipWriterTest {
+
+    private File dir;
+
+    @Before
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("parallelzipwritertest").toFile();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        FileUtils.deleteDirectory(dir);
+    }
+
+    private File createFile(String name, byte[] data) throws Exception {
+        File file = new File(dir, name);
+        FileUtils.writeByteArrayToFile(file, data);
+        // the modification time is stored in the zip
+        file.setLastModified(1700000000000L);
+        return file;
+    }
+
+    private static byte[] createText(int size) {
+        StringBuilder sb = new StringBuilder();
+        Random random = new Random(size);
+        while (sb.length() < size) {
+            sb.append("line ").append(random.nextInt(1000)).append('\n');
+        }
+        return sb.substring(0, size).getBytes();
+    }
+
+    private static byte[] createRandom(int size) {
+        byte[] data = new byte[size];
+        new Random(size).nextBytes(data);
+        return data;
+    }
+
+    private File writeZip(String name, int maxThreads, String[] names, byte[][] contents) throws Exception {
+        File zip = new File(dir, name);
+        try (ParallelZipWriter writer = new ParallelZipWriter(zip, maxThreads)) {
+            for (int i = 0; i < names.length; ++i) {
+                writer.putFile(names[i], createFile("in/" + names[i], contents[i]));
+            }
+        }
+        return zip;
+    }
+
+    @Test
+    public void testWrite() throws Exception {
+        String[] names = { "empty.txt", "small.txt", "large.txt", "random.bin", "sound.ogg", "dir/file.txt" };
+        byte[][] contents = {
+            new byte[0],
+            "hello".getBytes(),
+            createText(3 * 1024 * 1024 + 17),
+            createRandom(1024 * 1024 + 5),
+            createText(1000),
+            createText(200) };
+        File zip = writeZip("test.zip", 4, names, contents);
+
+        try (ZipFile zipFile = new ZipFile(zip)) {
+            assertEquals(names.length, zipFile.size());
+            for (int i = 0; i < names.length; ++i) {
+                ZipEntry entry = zipFile.getEntry(names[i]);
+                assertArrayEquals(contents[i], IOUtils.toByteArray(zipFile.getInputStream(entry)));
+            }
+            assertEquals(ZipEntry.DEFLATED, zipFile.getEntry("large.txt").getMethod());
+            // incompressible and already compressed files are stored
+            assertEquals(ZipEntry.STORED, zipFile.getEntry("random.bin").getMethod());
+            assertEquals(ZipEntry.STORED, zipFile.getEntry("sound.ogg").getMethod());
+        }
+
+        // the local headers must also be valid when streaming the zip
+        try (ZipInputStream zipInputStream = new ZipInputStream(new FileInputStream(zip))) {
+            for (int i = 0; i < names.length; ++i) {
+                ZipEntry entry = zipInputStream.getNextEntry();
+                assertEquals(names[i], entry.getName());
+                assertArrayEquals(contents[i], IOUtils.toByteArray(zipInputStream));
+            }
+        }
+    }
+
+    @Test
+    public void testDeterministic() throws Exception {
+        String[] names = { "a.txt", "b.txt", "c.bin" };
+        byte[][] contents = { createText(2 * 1024 * 1024), createText(100), createRandom(5000) };
+        File single = writeZip("single.zip", 1, names, contents);
+        File parallel = writeZip("parallel.zip", 8, names, contents);
+        assertArrayEquals(FileUtils.readFileToByteArray(single), FileUtils.readFileToByteArray(parallel));
+    }
+}
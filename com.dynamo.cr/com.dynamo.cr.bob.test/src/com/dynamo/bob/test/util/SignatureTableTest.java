@@ -0,0 +1,121 @@
+// Copyright 2020-2024 The Defold Foundation
+// Copyright 2014-2020 King
+// Copyright 2009-2014 Ragnar Svensson, Christian Murray
+// Licensed under the Defold License version 1.0 (the "License"); you may not use
+// this file except in compliance with the License.
+//
+// You may obtain a copy of the License, together with FAQs at
+// https://www.defold.com/license
+//
+// Unless required by applicable law or agreed to in writing, software distributed
+// under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+// CONDITIONS OF ANY KIND, either express or implied. See the License for the
+// specific language governing permissions and limitations under the License.
+
+
+package com.dynamo.bob.test.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.dynamo.bob.util.SignatureTable;
+
+public class SignatureTableTest {
+
+    private File tmpDir;
+
+    @Before
+    public void setUp() throws Exception {
+        tmpDir = Files.createTempDirectory(null).toFile();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        FileUtils.deleteDirectory(tmpDir);
+    }
+
+    private static byte[] sig(int value) {
+        byte[] signature = new byte[20];
+        Arrays.fill(signature, (byte) value);
+        return signature;
+    }
+
+    @Test
+    public void testPutGetRemove() throws Exception {
+        SignatureTable table = new SignatureTable();
+        assertNull(table.getSignature("a"));
+        table.put("a", sig(1));
+        table.put("b", new byte[0], 123, 456);
+        assertArrayEquals(sig(1), table.getSignature("a"));
+        assertEquals(123, table.get("b").mtime);
+        assertEquals(456, table.get("b").size);
+        table.remove("a");
+        assertNull(table.getSignature("a"));
+        assertEquals(Arrays.asList("b"), table.getPaths());
+    }
+
+    @Test
+    public void testSerialization() throws Exception {
+        SignatureTable table = new SignatureTable();
+        String[] paths = new String[] {"build/z.goc", "build/a.goc", "build/åäö.png", "b"};
+        for (int i = 0; i < paths.length; ++i) {
+            table.put(paths[i], sig(i), i, i * 10);
+        }
+        SignatureTable loaded = SignatureTable.fromByteArray(table.toByteArray());
+        for (int i = 0; i < paths.length; ++i) {
+            assertArrayEquals(sig(i), loaded.getSignature(paths[i]));
+            assertEquals(i, loaded.get(paths[i]).mtime);
+            assertEquals(i * 10, loaded.get(paths[i]).size);
+        }
+        assertNull(loaded.getSignature("build/b.goc"));
+        assertEquals(paths.length, loaded.getPaths().size());
+        assertFalse(loaded.isModified());
+    }
+
+    @Test
+    public void testInvalidData() throws Exception {
+        SignatureTable table = SignatureTable.fromByteArray("not a signature table".getBytes());
+        assertTrue(table.getPaths().isEmpty());
+    }
+
+    @Test
+    public void testSaveAndOpen() throws Exception {
+        File file = new File(tmpDir, "state");
+        SignatureTable table = SignatureTable.open(file);
+        table.put("a", sig(1));
+        table.put("b", sig(2));
+        table.save(file);
+
+        // update existing entries in place
+        table = SignatureTable.open(file);
+        long length = file.length();
+        table.put("a", sig(3));
+        table.put("b", new byte[0]);
+        table.save(file);
+        assertEquals(length, file.length());
+        table = SignatureTable.open(file);
+        assertArrayEquals(sig(3), table.getSignature("a"));
+        assertArrayEquals(new byte[0], table.getSignature("b"));
+
+        // add and remove entries
+        table.put("c", sig(4));
+        table.remove("a");
+        table.save(file);
+        table = SignatureTable.open(file);
+        assertNull(table.getSignature("a"));
+        assertArrayEquals(new byte[0], table.getSignature("b"));
+        assertArrayEquals(sig(4), table.getSignature("c"));
+    }
+}
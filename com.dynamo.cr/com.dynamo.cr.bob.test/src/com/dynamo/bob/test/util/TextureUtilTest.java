@@ -14,10 +14,13 @@
 
 package com.dynamo.bob.test.util;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 
 import java.awt.Color;
+import java.awt.Graphics2D;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
@@ -143,6 +146,59 @@ public class TextureUtilTest {
         }
     }
 
+    @Test
+    public void testGetABGRPixels() {
+        int[] colours = { 0x00000000, 0x00ff8040, 0xff102030, 0x80ff8040, 0x01ffffff, 0x7f336699 };
+        int[] types = { BufferedImage.TYPE_INT_ARGB, BufferedImage.TYPE_4BYTE_ABGR, BufferedImage.TYPE_INT_ARGB_PRE, BufferedImage.TYPE_3BYTE_BGR };
+        for (int type : types) {
+            BufferedImage src = new BufferedImage(colours.length, 1, type);
+            for (int x = 0; x < colours.length; ++x) {
+                src.setRGB(x, 0, colours[x]);
+            }
+
+            // The pixels are the same as when drawing the image onto a transparent image
+            BufferedImage expected = new BufferedImage(src.getWidth(), src.getHeight(), BufferedImage.TYPE_4BYTE_ABGR);
+            Graphics2D g = expected.createGraphics();
+            g.drawImage(src, 0, 0, null);
+            g.dispose();
+
+            assertArrayEquals(((DataBufferByte) expected.getRaster().getDataBuffer()).getData(), TextureUtil.getABGRPixels(src));
+        }
+    }
+
+    @Test
+    public void testDrawSprite() {
+        int red = (255 << 24) | (255 << 16);
+        int green = (255 << 24) | (255 << 8);
+        int blue = (255 << 24) | (255);
+        BufferedImage src = new BufferedImage(2, 1, BufferedImage.TYPE_INT_ARGB);
+        src.setRGB(0, 0, red);
+        src.setRGB(1, 0, green);
+
+        // 1 padding and 1 extrusion gives a 6x5 sprite, rotated to 5x6
+        BufferedImage tgt = new BufferedImage(8, 8, BufferedImage.TYPE_4BYTE_ABGR);
+        byte[] pixels = ((DataBufferByte) tgt.getRaster().getDataBuffer()).getData();
+        tgt.setRGB(0, 0, blue);
+        TextureUtil.drawSprite(TextureUtil.getABGRPixels(src), 2, 1, 1, 1, true, pixels, 8, 8, 1, 2);
+
+        assertEquals(blue, tgt.getRGB(0, 0));
+        for (int y = 0; y < 8; ++y) {
+            for (int x = 0; x < 8; ++x) {
+                int expected = 0;
+                // Rotated clockwise, the top of the sprite is at the right
+                int sx = y - 2;
+                int sy = 4 - (x - 1);
+                if (sx >= 2 && sx <= 3 && sy == 2) {
+                    expected = sx == 2 ? red : green;
+                }
+                if (x == 0 && y == 0) {
+                    expected = blue;
+                }
+                assertEquals(expected, tgt.getRGB(x, y));
+            }
+        }
+    }
+
     @Test
     public void testTextureProfilePaths() throws FileNotFoundException, IOException {
 
@@ -0,0 +1,96 @@
+// Copyright 2020-2024 The Defold Foundation
+// Copyright 2014-2020 King
+// Copyright 2009-2014 Ragnar Svensson, Christian Murray
+// Licensed under the Defold License version 1.0 (the "License"); you may not use
+// this file except in compliance with the License.
+//
+// You may obtain a copy of the License, together with FAQs at
+// https://www.defold.com/license
+//
+// Unless required by applicable law or agreed to in writing, software distributed
+// under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+// CONDITIONS OF ANY KIND, either express or implied. See the License for the
+// specific language governing permissions and limitations under the License.
+
+
+package com.dynamo.bob.test.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.io.FileUtils;
+import org.codehaus.jackson.JsonNode;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.junit.Test;
+
+import com.dynamo.bob.util.TimeProfiler;
+
+public class TimeProfilerTest {
+
+    @Test
+    public void testThreadedReport() throws Exception {
+        File dir = Files.createTempDirectory("timeprofiler").toFile();
+        try {
+            List<File> reportFiles = new ArrayList<File>();
+            reportFiles.add(new File(dir, "report.json"));
+            File traceFile = new File(dir, "trace.json");
+            TimeProfiler.init(reportFiles, traceFile, true);
+
+            TimeProfiler.start("main");
+            Thread worker = new Thread(() -> {
+                TimeProfiler.start("worker");
+                TimeProfiler.start("nested");
+                TimeProfiler.addData("count", 3);
+                TimeProfiler.stop();
+                TimeProfiler.stop();
+            }, "worker-thread");
+            worker.start();
+            worker.join();
+            TimeProfiler.stop();
+            // left open on purpose
+            TimeProfiler.start("unclosed");
+
+            TimeProfiler.createReport(true);
+
+            ObjectMapper mapper = new ObjectMapper();
+
+            // the time report has the main thread tree and one entry per other thread
+            JsonNode report = mapper.readTree(new File(dir, "report_time.json"));
+            JsonNode data = report.get("data");
+            assertEquals(2, data.size());
+            assertEquals("Total time", data.get(0).get("name").getTextValue());
+            JsonNode children = data.get(0).get("children");
+            assertEquals("main", children.get(0).get("name").getTextValue());
+            assertEquals("unclosed", children.get(1).get("name").getTextValue());
+            assertTrue(children.get(1).get("forceFinishedScope").getBooleanValue());
+            assertEquals("Thread worker-thread", data.get(1).get("name").getTextValue());
+            JsonNode worker0 = data.get(1).get("children").get(0);
+            assertEquals("worker", worker0.get("name").getTextValue());
+            assertEquals("nested", worker0.get("children").get(0).get("name").getTextValue());
+
+            // the trace has complete events on separate thread tracks
+            JsonNode events = mapper.readTree(traceFile).get("traceEvents");
+            Map<String, JsonNode> byName = new HashMap<String, JsonNode>();
+            for (JsonNode event : events) {
+                if (event.get("ph").getTextValue().equals("X")) {
+                    byName.put(event.get("name").getTextValue(), event);
+                }
+            }
+            assertTrue(byName.containsKey("main"));
+            assertTrue(byName.containsKey("nested"));
+            assertTrue(byName.get("main").get("tid").getLongValue() != byName.get("nested").get("tid").getLongValue());
+            assertEquals(byName.get("worker").get("tid").getLongValue(), byName.get("nested").get("tid").getLongValue());
+            assertTrue(byName.get("nested").get("ts").getDoubleValue() >= byName.get("worker").get("ts").getDoubleValue());
+            assertEquals(3.0, byName.get("nested").get("args").get("count").getDoubleValue(), 0.0);
+        } finally {
+            FileUtils.deleteDirectory(dir);
+        }
+    }
+}
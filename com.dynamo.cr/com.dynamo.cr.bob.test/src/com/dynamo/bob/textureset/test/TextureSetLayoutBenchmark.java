@@ -0,0 +1,121 @@
+// Copyright 2020-2024 The Defold Foundation
+// Copyright 2014-2020 King
+// Copyright 2009-2014 Ragnar Svensson, Christian Murray
+// Licensed under the Defold License version 1.0 (the "License"); you may not use
+// this file except in compliance with the License.
+//
+// You may obtain a copy of the License, together with FAQs at
+// https://www.defold.com/license
+//
+// Unless required by applicable law or agreed to in writing, software distributed
+// under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+// CONDITIONS OF ANY KIND, either express or implied. See the License for the
+// specific language governing permissions and limitations under the License.
+
+package com.dynamo.bob.textureset.test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Function;
+
+import com.dynamo.bob.textureset.MaxRectsLayoutStrategy;
+import com.dynamo.bob.textureset.TextureSetLayout.Layout;
+import com.dynamo.bob.textureset.TextureSetLayout.Rect;
+import com.dynamo.bob.textureset.TextureSetLayoutStrategy;
+
+/**
+ * Compares the packing time and occupancy of the max rects layout with the
+ * previous implementation in ReferenceMaxRectsLayoutStrategy, on synthetic
+ * atlases. Not run as part of the tests, run it with:
+ *
+ *   java -cp <classpath> com.dynamo.bob.textureset.test.TextureSetLayoutBenchmark [count...]
+ */
+public class TextureSetLayoutBenchmark {
+
+    private static final int ITERATIONS = 3;
+    private static final int MARGIN = 2;
+
+    private static List<Rect> createRectangles(int count, int minSize, int maxSize) {
+        Random random = new Random(count);
+        List<Rect> rects = new ArrayList<Rect>();
+        for (int i = 0; i < count; ++i) {
+            int width = minSize + random.nextInt(maxSize - minSize + 1);
+            int height = minSize + random.nextInt(maxSize - minSize + 1);
+            rects.add(new Rect(String.format("%d", i), i, width, height));
+        }
+        // Same order as TextureSetLayout.createMaxRectsLayout, by area first, then longest side
+        Collections.sort(rects, new Comparator<Rect>() {
+            @Override
+            public int compare(Rect o1, Rect o2) {
+                int a1 = o1.getArea();
+                int a2 = o2.getArea();
+                if (a1 != a2) {
+                    return a2 - a1;
+                }
+                int n1 = Math.max(o1.getWidth(), o1.getHeight());
+                int n2 = Math.max(o2.getWidth(), o2.getHeight());
+                return n2 - n1;
+            }
+        });
+        return rects;
+    }
+
+    private static String measure(Function<MaxRectsLayoutStrategy.Settings, TextureSetLayoutStrategy> factory, int count, int minSize, int maxSize, int pageSize) {
+        MaxRectsLayoutStrategy.Settings settings = new MaxRectsLayoutStrategy.Settings();
+        settings.maxPageWidth = pageSize;
+        settings.maxPageHeight = pageSize;
+        settings.minPageWidth = 16;
+        settings.minPageHeight = 16;
+        settings.paddingX = MARGIN;
+        settings.paddingY = MARGIN;
+        settings.rotation = true;
+        settings.square = false;
+
+        long bestTime = Long.MAX_VALUE;
+        List<Layout> layouts = null;
+        for (int i = 0; i < ITERATIONS; ++i) {
+            List<Rect> rects = createRectangles(count, minSize, maxSize);
+            TextureSetLayoutStrategy strategy = factory.apply(settings);
+            long start = System.nanoTime();
+            layouts = strategy.createLayout(rects);
+            bestTime = Math.min(bestTime, System.nanoTime() - start);
+        }
+
+        long usedArea = 0;
+        long totalArea = 0;
+        for (Layout layout : layouts) {
+            totalArea += (long)layout.getWidth() * layout.getHeight();
+            for (Rect r : layout.getRectangles()) {
+                usedArea += r.getArea();
+            }
+        }
+        return String.format("%3d pages  %8.1f ms  occupancy %.4f",
+            layouts.size(), bestTime / 1000000.0, (double)usedArea / totalArea);
+    }
+
+    private static void run(String name, int count, int minSize, int maxSize, int pageSize) {
+        String reference = measure(ReferenceMaxRectsLayoutStrategy::new, count, minSize, maxSize, pageSize);
+        String current = measure(MaxRectsLayoutStrategy::new, count, minSize, maxSize, pageSize);
+        System.out.println(String.format("%-8s %6d rects  reference %s", name, count, reference));
+        System.out.println(String.format("%-8s %6d rects  current   %s", name, count, current));
+    }
+
+    public static void main(String[] args) {
+        int[] counts = new int[] { 100, 1000, 5000 };
+        if (args.length > 0) {
+            counts = new int[args.length];
+            for (int i = 0; i < args.length; ++i) {
+                counts[i] = Integer.parseInt(args[i]);
+            }
+        }
+
+        for (int count : counts) {
+            run("small", count, 4, 64, 4096);
+            run("mixed", count, 4, 256, 4096);
+            run("paged", count, 4, 64, 1024);
+        }
+    }
+}
@@ -18,12 +18,17 @@ import static org.hamcrest.CoreMatchers.is;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Random;
 
 import org.junit.Test;
 
@@ -275,6 +280,39 @@ public class TextureSetLayoutTest {
         }
     }
 
+    private static List<Rect> createRandomRectangles(int count) {
+        Random random = new Random(count);
+        List<Rect> rects = new ArrayList<Rect>();
+        for (int i = 0; i < count; ++i) {
+            rects.add(new Rect(String.format("%d", i), i, 4 + random.nextInt(60), 4 + random.nextInt(60)));
+        }
+        return rects;
+    }
+
+    @Test
+    public void testManyRectanglesDeterministic() {
+        // enough rectangles for the packing heuristics to run in parallel
+        Layout layout = packedLayout(2, createRandomRectangles(500)).get(0);
+        List<Rect> outputRectangles = layout.getRectangles();
+        assertEquals(500, outputRectangles.size());
+        for (int i = 0; i < outputRectangles.size(); ++i) {
+            for (int j = i + 1; j < outputRectangles.size(); ++j) {
+                assertFalse(isOverlapping(outputRectangles.get(i), outputRectangles.get(j)));
+            }
+        }
+
+        for (int n = 0; n < 4; ++n) {
+            Layout other = packedLayout(2, createRandomRectangles(500)).get(0);
+            assertEquals(layout.getWidth(), other.getWidth());
+            assertEquals(layout.getHeight(), other.getHeight());
+            for (int i = 0; i < outputRectangles.size(); ++i) {
+                Rect r = outputRectangles.get(i);
+                assertRect(other, i, r.getId(), r.getIndex(), r.getX(), r.getY());
+                assertEquals(r.getRotated(), other.getRectangles().get(i).getRotated());
+            }
+        }
+    }
+
     @Test
     public void testGridLayout1() {
 
@@ -320,6 +358,150 @@ public class TextureSetLayoutTest {
         }
     }
 
+    private static Map<String, Rect> rectsById(List<Layout> layouts) {
+        Map<String, Rect> rects = new HashMap<String, Rect>();
+        for (Layout layout : layouts) {
+            for (Rect r : layout.getRectangles()) {
+                rects.put(r.getId(), r);
+            }
+        }
+        return rects;
+    }
+
+    private static void assertNoOverlaps(Layout layout) {
+        List<Rect> rects = layout.getRectangles();
+        for (int i = 0; i < rects.size(); ++i) {
+            Rect r = rects.get(i);
+            assertTrue(r.getX() >= 0 && r.getY() >= 0);
+            assertTrue(r.getX() + r.getWidth() <= layout.getWidth() && r.getY() + r.getHeight() <= layout.getHeight());
+            for (int j = i + 1; j < rects.size(); ++j) {
+                assertFalse(isOverlapping(r, rects.get(j)));
+            }
+        }
+    }
+
+    @Test
+    public void testIncrementalLayout() {
+        List<Layout> previous = packedLayout(2, createRandomRectangles(100));
+        Map<String, Rect> previousRects = rectsById(previous);
+
+        // Shrink one image, remove one and add a small one
+        List<Rect> rects = createRandomRectangles(100);
+        Rect shrunk = rects.get(10);
+        shrunk.setWidth(shrunk.getWidth() - 2);
+        shrunk.setHeight(shrunk.getHeight() - 2);
+        rects.remove(20);
+        rects.add(new Rect("new", 100, 6, 6));
+
+        List<Layout> layouts = TextureSetLayout.createMaxRectsLayout(2, rects, true, previous);
+        assertEquals(previous.size(), layouts.size());
+        assertEquals(previous.get(0).getWidth(), layouts.get(0).getWidth());
+        assertEquals(previous.get(0).getHeight(), layouts.get(0).getHeight());
+        assertEquals(100, layouts.get(0).getRectangles().size());
+        assertNoOverlaps(layouts.get(0));
+
+        Map<String, Rect> layoutRects = rectsById(layouts);
+        assertFalse(layoutRects.containsKey("20"));
+        assertTrue(layoutRects.containsKey("new"));
+        for (Rect r : layoutRects.values()) {
+            Rect previousRect = previousRects.get(r.getId());
+            if (previousRect == null) {
+                continue;
+            }
+            assertEquals(previousRect.getX(), r.getX());
+            assertEquals(previousRect.getY(), r.getY());
+            assertEquals(previousRect.getRotated(), r.getRotated());
+        }
+        Rect shrunkRect = layoutRects.get("10");
+        Rect previousShrunkRect = previousRects.get("10");
+        assertEquals(previousShrunkRect.getWidth() - 2, shrunkRect.getWidth());
+        assertEquals(previousShrunkRect.getHeight() - 2, shrunkRect.getHeight());
+    }
+
+    @Test
+    public void testIncrementalLayoutGrownImage() {
+        List<Rect> rectangles = new ArrayList<Rect>(Arrays.asList(rect("0", 0, 64, 64),
+                                                                  rect("1", 1, 32, 32),
+                                                                  rect("2", 2, 16, 16)));
+        List<Layout> previous = TextureSetLayout.packedLayout(0, rectangles, false, 128, 128);
+        Map<String, Rect> previousRects = rectsById(previous);
+
+        rectangles = new ArrayList<Rect>(Arrays.asList(rect("0", 0, 64, 64),
+                                                       rect("1", 1, 32, 32),
+                                                       rect("2", 2, 24, 24)));
+        List<Layout> layouts = TextureSetLayout.createMaxRectsLayout(0, rectangles, false, previous);
+        assertEquals(1, layouts.size());
+        assertNoOverlaps(layouts.get(0));
+
+        Map<String, Rect> layoutRects = rectsById(layouts);
+        for (String id : Arrays.asList("0", "1")) {
+            assertEquals(previousRects.get(id).getX(), layoutRects.get(id).getX());
+            assertEquals(previousRects.get(id).getY(), layoutRects.get(id).getY());
+        }
+        assertEquals(24, layoutRects.get("2").getWidth());
+        assertEquals(24, layoutRects.get("2").getHeight());
+    }
+
+    @Test
+    public void testIncrementalLayoutNoSpace() {
+        List<Rect> rectangles = new ArrayList<Rect>(Arrays.asList(rect("0", 0, 16, 16),
+                                                                  rect("1", 1, 16, 16)));
+        List<Layout> previous = TextureSetLayout.packedLayout(0, rectangles, false, 32, 16);
+        assertEquals(1, previous.size());
+
+        rectangles = new ArrayList<Rect>(Arrays.asList(rect("0", 0, 16, 16),
+                                                       rect("1", 1, 16, 16),
+                                                       rect("2", 2, 16, 16)));
+        assertNull(TextureSetLayout.createMaxRectsLayout(0, rectangles, false, previous));
+    }
+
+    private static List<Rect> randomRects(long seed, int count, int minSize, int maxSize, boolean elongated) {
+        Random random = new Random(seed);
+        List<Rect> rects = new ArrayList<Rect>();
+        for (int i = 0; i < count; ++i) {
+            int w = minSize + random.nextInt(maxSize - minSize);
+            int h = minSize + random.nextInt(maxSize - minSize);
+            if (elongated && i % 2 == 0) {
+                h = 2 + random.nextInt(6);
+            }
+            rects.add(new Rect(Integer.toString(i), i, w, h));
+        }
+        return rects;
+    }
+
+    // "<page width>x<page height> <id>:<x>,<y>[r] ..." per page, rects in index order
+    private static String describeLayouts(List<Layout> layouts) {
+        StringBuilder sb = new StringBuilder();
+        for (Layout layout : layouts) {
+            if (sb.length() > 0) {
+                sb.append(" | ");
+            }
+            sb.append(layout.getWidth()).append('x').append(layout.getHeight());
+            List<Rect> rects = new ArrayList<Rect>(layout.getRectangles());
+            rects.sort(Comparator.comparingInt(Rect::getIndex));
+            for (Rect r : rects) {
+                sb.append(' ').append(r.getId()).append(':').append(r.getX()).append(',').append(r.getY());
+                if (r.getRotated()) {
+                    sb.append('r');
+                }
+            }
+        }
+        return sb.toString();
+    }
+
+    // The exact placements of the MaxRects packer. Changes to the packer must not move any rect.
+    @Test
+    public void testFixedLayouts() {
+        assertEquals("128x128 0:0,0 1:37,0r 2:55,65r 3:112,0r 4:72,40r 5:0,71 6:63,65 7:74,0r 8:0,100r 9:71,54 10:47,53 11:0,32 12:74,22r 13:26,32r 14:47,23 15:29,70r",
+                     describeLayouts(TextureSetLayout.packedLayout(0, randomRects(1, 16, 4, 40, false), true, 0, 0)));
+        assertEquals("128x128 0:109,2 1:83,2 2:43,38 3:57,50 4:69,50 5:2,119 6:43,2 7:37,83 8:24,83 9:82,38 10:83,27 11:2,2 12:2,83 13:2,42 14:42,50 15:24,116",
+                     describeLayouts(TextureSetLayout.packedLayout(2, randomRects(2, 16, 4, 40, false), false, 0, 0)));
+        assertEquals("128x128 0:55,78 1:1,1 2:52,109 3:63,42 4:55,44r 5:64,74 6:64,68 7:1,81 8:64,84 9:1,44 10:1,120 11:63,1r 12:109,1r 13:1,109 14:64,81 15:101,42",
+                     describeLayouts(TextureSetLayout.packedLayout(1, randomRects(3, 16, 2, 64, true), true, 0, 0)));
+        assertEquals("128x128 1:2,48 4:47,74 8:2,2 9:47,42r 13:85,36 16:41,2 18:79,74 19:85,2r 21:2,96 | 128x128 0:31,21 2:24,75r 3:29,43 5:2,70 6:63,28 7:2,108r 10:31,2 11:24,92 12:2,2 14:24,105 15:107,2r 17:2,35r 20:29,59 22:76,2 23:70,38",
+                     describeLayouts(TextureSetLayout.packedLayout(2, randomRects(4, 24, 8, 48, false), true, 128, 128)));
+    }
+
     @Test
     public void testLargeLayout() {
         List<Rect> rectangles
@@ -126,7 +126,7 @@ public class Bob {
         }));
       }
 
-    public static void init() {
+    public static synchronized void init() {
         if (rootFolder != null) {
             return;
         }
@@ -153,7 +153,7 @@ public class Bob {
         TimeProfiler.stop();
     }
 
-    public static void initLua() {
+    public static synchronized void initLua() {
         if (luaInitialized) {
             return;
         }
@@ -552,12 +552,14 @@ public class Bob {
 
                 opt("tp", "texture-profiles", ONE, "DEPRECATED! Use --texture-compression instead", true),
                 opt("tc", "texture-compression", ONE, "Use texture compression as specified in texture profiles", true),
+                opt(null, "atlas-incremental-layout", ZERO, "Keep the placement of the atlas images from the previous build, and only pack new or grown images into the free space. Atlases are packed from scratch when the images don't fit or the pages get too fragmented", true),
 
                 opt(null, "exclude-build-folder", ONE, "DEPRECATED! Use '.defignore' file instead", true),
 
                 opt("br", "build-report", ONE, ABS_OR_CWD_REL_PATH, "DEPRECATED! Use --build-report-json instead", false),
                 opt("brjson", "build-report-json", ONE, ABS_OR_CWD_REL_PATH, "Filepath where to save a build report as JSON", false),
                 opt("brhtml", "build-report-html", ONE, ABS_OR_CWD_REL_PATH, "Filepath where to save a build report as HTML", false),
+                opt(null, "build-report-trace", ONE, ABS_OR_CWD_REL_PATH, "Filepath where to save the build time profile in the Chrome trace event format, which can be opened in Perfetto", false),
 
                 opt(null, "build-server", ONE, "The build server (when using native extensions)", true),
                 opt(null, "build-server-header", MANY, "Additional build server header to set", true),
@@ -569,8 +571,10 @@ public class Bob {
                 opt(null, "use-uncompressed-lua-source", ZERO, "Use uncompressed and unencrypted Lua source code instead of byte code", true),
                 opt(null, "use-lua-bytecode-delta", ZERO, "Use byte code delta compression when building for multiple architectures", true),
                 opt(null, "archive-resource-padding", ONE, "The alignment of the resources in the game archive. Default is 4", true),
+                opt(null, "archive-layout", ONE, "The order of the resources in the game archive data. 'path' (default) or 'load-order', which places resources in the order they are loaded, grouped per collection proxy", true),
 
                 opt("l", "liveupdate", ONE, "Yes if liveupdate content should be published", true),
+                opt(null, "liveupdate-previous-manifest", ONE, ABS_OR_CWD_REL_PATH, "Path to the game.dmanifest of a previous build. Only resources not in the liveupdate content of that build are published, along with a delta of the changes", false),
 
                 opt("ar", "architectures", ONE, "Comma separated list of architectures to include for the platform", true),
 
@@ -583,6 +587,7 @@ public class Bob {
                 opt(null, "ne-output-name", ONE, "Specify a library target name", false),
 
                 opt(null, "resource-cache-local", ONE, ABS_OR_CWD_REL_PATH, "Path to local resource cache", false),
+                opt(null, "resource-cache-local-size", ONE, "Max size of the local resource cache in megabytes. Least recently used resources are evicted when the cache grows larger. Unbounded if left out", false),
                 opt(null, "resource-cache-remote", ONE, "URL to remote resource cache", false),
                 opt(null, "resource-cache-remote-user", ONE, "Username to authenticate access to the remote resource cache", false),
                 opt(null, "resource-cache-remote-pass", ONE, "Password/token to authenticate access to the remote resource cache", false),
@@ -746,7 +751,9 @@ public class Bob {
         build_report_json = build_report_json != null ? build_report_json : cmd.getOptionValue("build-report-json");
         build_report_html = build_report_html != null ? build_report_html : cmd.getOptionValue("build-report-html");
 
-        if (build_report_json != null || build_report_html != null) {
+        String build_report_trace = cmd.getOptionValue("build-report-trace");
+
+        if (build_report_json != null || build_report_html != null || build_report_trace != null) {
             List<File> reportFiles = new ArrayList<>();
             if (build_report_json != null) {
                 reportFiles.add(new File(build_report_json));
@@ -754,7 +761,8 @@ public class Bob {
             if (build_report_html != null) {
                 reportFiles.add(new File(build_report_html));
             }
-            TimeProfiler.init(reportFiles, fromEditor);
+            File traceFile = build_report_trace != null ? new File(build_report_trace) : null;
+            TimeProfiler.init(reportFiles, traceFile, fromEditor);
         }
 
         TimeProfiler.start("ParseCommandLine");
@@ -952,6 +960,10 @@ public class Bob {
             project.setOption("archive-resource-padding", resourcePaddingStr);
         }
 
+        if (cmd.hasOption("archive-layout")) {
+            validateChoices("archive-layout", cmd.getOptionValue("archive-layout"), Arrays.asList("path", "load-order"));
+        }
+
         if (project.hasOption("build-artifacts")) {
             String[] validArtifacts = {"engine", "plugins", "library"};
             validateChoicesList(project, "build-artifacts", validArtifacts);
@@ -134,6 +134,32 @@ public abstract class Builder {
         return false;
     }
 
+    /**
+     * Check if the task created by this builder may be recreated from the
+     * {@link TaskCache} instead of calling {@link #create(IResource)}. This is
+     * only the case if the task depends on nothing but the content of the
+     * input, the project options and sub-tasks created through the project,
+     * and if build() doesn't rely on state set up by create().
+     * @return true if the created task can be cached
+     */
+    public boolean isTaskCreationCacheable() {
+        return false;
+    }
+
+    /**
+     * Check if {@link #create(IResource)} is implemented by a specific class,
+     * ie not overridden by a subclass
+     * @param klass class to check
+     * @return true if create() is declared by klass
+     */
+    protected boolean isCreateDeclaredBy(Class<? extends Builder> klass) {
+        try {
+            return getClass().getMethod("create", IResource.class).getDeclaringClass() == klass;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
     public void clearState() {
     }
 }
\ No newline at end of file
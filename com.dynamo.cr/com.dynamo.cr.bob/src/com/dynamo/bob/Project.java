@@ -33,8 +33,12 @@ import java.net.HttpURLConnection;
 import java.net.URISyntaxException;
 import java.net.URL;
 import java.net.URI;
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.nio.file.attribute.FileTime;
 import java.text.ParseException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
@@ -52,6 +56,9 @@ import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Callable;
 import java.util.concurrent.Future;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.TimeUnit;
 import java.util.jar.Attributes;
 import java.util.jar.JarFile;
 import java.util.jar.Manifest;
@@ -101,6 +108,7 @@ import com.dynamo.bob.util.BobProjectProperties;
 import com.dynamo.bob.util.LibraryUtil;
 import com.dynamo.bob.util.ReportGenerator;
 import com.dynamo.bob.util.HttpUtil;
+import com.dynamo.bob.util.ImageCache;
 import com.dynamo.bob.util.TimeProfiler;
 import com.dynamo.bob.util.StringUtil;
 import com.dynamo.graphics.proto.Graphics.TextureProfiles;
@@ -129,6 +137,12 @@ public class Project {
     }
 
     private ExecutorService executor = Executors.newCachedThreadPool();
+    // Decoded images shared by the atlases and tile sources of a build,
+    // released when the tasks of the build have run.
+    // 64M pixels is 256 MB of 32 bit images.
+    private static final long IMAGE_CACHE_MAX_PIXELS = 64L * 1024 * 1024;
+    private ImageCache imageCache = null;
+    private ExecutorService imageExecutor = null;
     private ResourceCache resourceCache = new ResourceCache();
     private IFileSystem fileSystem;
     private Map<String, Class<? extends Builder>> extToBuilder = new HashMap<String, Class<? extends Builder>>();
@@ -137,7 +151,10 @@ public class Project {
     private HashMap<String, EnumSet<OutputFlags>> outputs = new HashMap<String, EnumSet<OutputFlags>>();
     private HashMap<String, Task> tasks;
     private Set<String> circularDependencyChecker = new LinkedHashSet<>();
+    // sub-tasks created by each task currently being created, see createTask()
+    private ArrayDeque<List<TaskCache.SubTask>> createdSubTasks = new ArrayDeque<>();
     private State state;
+    private TaskCache taskCache;
     private String rootDirectory = ".";
     private String buildDirectory = "build";
     private Map<String, String> options = new HashMap<String, String>();
@@ -225,6 +242,18 @@ public class Project {
         return option("resource-cache-local", null);
     }
 
+    /**
+     * Get the size budget of the local resource cache
+     * @return size in bytes, 0 if the cache is unbounded
+     */
+    public long getLocalResourceCacheMaxSize() {
+        String maxSizeOpt = option("resource-cache-local-size", null);
+        if (maxSizeOpt == null) {
+            return 0;
+        }
+        return Long.parseLong(maxSizeOpt) * 1024 * 1024;
+    }
+
     public String getRemoteResourceCacheDirectory() {
         return option("resource-cache-remote", null);
     }
@@ -245,6 +274,41 @@ public class Project {
         return Integer.parseInt(maxThreadsOpt);
     }
 
+    /**
+     * Get the cache of decoded images shared by the builders of the current build
+     * @return image cache
+     */
+    public synchronized ImageCache getImageCache() {
+        if (imageCache == null) {
+            imageCache = new ImageCache(IMAGE_CACHE_MAX_PIXELS);
+        }
+        return imageCache;
+    }
+
+    /**
+     * Get the executor decoding images for the builders of the current build,
+     * sized by the max-cpu-threads option
+     * @return image decoding executor
+     */
+    public synchronized ExecutorService getImageExecutor() {
+        if (imageExecutor == null) {
+            imageExecutor = Executors.newFixedThreadPool(getMaxCpuThreads(), r -> {
+                Thread thread = new Thread(r, "texture-image-decode");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return imageExecutor;
+    }
+
+    private synchronized void releaseImageCache() {
+        imageCache = null;
+        if (imageExecutor != null) {
+            imageExecutor.shutdown();
+            imageExecutor = null;
+        }
+    }
+
     public BobProjectProperties getProjectProperties() {
         return projectProperties;
     }
@@ -488,6 +552,10 @@ public class Project {
         if (!circularDependencyChecker.add(key)) {
             throw new CompileExceptionError(generateCircularDependencyErrorMessage(key), null);
         }
+        // record the task as a sub-task of the task currently being created
+        if (!createdSubTasks.isEmpty()) {
+            createdSubTasks.peek().add(new TaskCache.SubTask(inputResource.getPath(), builderClass.getName()));
+        }
         Task task = tasks.get(key);
         if (task != null) {
             circularDependencyChecker.remove(key);
@@ -496,10 +564,21 @@ public class Project {
         TimeProfiler.start();
         TimeProfiler.addData("type", "createTask");
         Builder builder;
+        List<TaskCache.SubTask> subTasks = new ArrayList<>();
+        createdSubTasks.push(subTasks);
         try {
             builder = builderClass.newInstance();
             builder.setProject(this);
-            task = builder.create(inputResource);
+            task = taskCache != null ? taskCache.get(this, builder, inputResource) : null;
+            if (task != null) {
+                TimeProfiler.addData("takenFromTaskCache", true);
+            }
+            else {
+                task = builder.create(inputResource);
+                if (task != null && taskCache != null) {
+                    taskCache.put(builder, inputResource, task, subTasks);
+                }
+            }
             if (task != null) {
                 TimeProfiler.addData("output", StringUtil.truncate(task.getOutputsString(), 1000));
                 TimeProfiler.addData("name", task.getName());
@@ -513,12 +592,14 @@ public class Project {
         } catch (Exception e) {
             throw new RuntimeException(e);
         } finally {
+            createdSubTasks.pop();
             TimeProfiler.stop();
         }
     }
 
     private void createTasks() throws CompileExceptionError {
         circularDependencyChecker = new LinkedHashSet<>();
+        createdSubTasks = new ArrayDeque<>();
         tasks = new HashMap<String, Task>();
         if(this.inputs == null || this.inputs.isEmpty()) {
             createTask(getGameProjectResource());
@@ -676,10 +757,13 @@ public class Project {
      */
     public List<TaskResult> build(IProgress monitor, String... commands) throws IOException, CompileExceptionError, MultipleCompileException {
         try {
-            if (this.hasOption("build-report-html")) {
+            if (this.hasOption("build-report-html") || this.hasOption("build-report-trace")) {
                 List<File> reportFiles = new ArrayList<>();
-                reportFiles.add(new File(this.option("build-report-html", "report.html")));
-                TimeProfiler.init(reportFiles, true);
+                if (this.hasOption("build-report-html")) {
+                    reportFiles.add(new File(this.option("build-report-html", "report.html")));
+                }
+                File traceFile = this.hasOption("build-report-trace") ? new File(this.option("build-report-trace", "trace.json")) : null;
+                TimeProfiler.init(reportFiles, traceFile, true);
             }
 
             TimeProfiler.start("loadProjectFile");
@@ -1515,6 +1599,9 @@ public class Project {
         TimeProfiler.start("Create tasks");
         BundleHelper.throwIfCanceled(monitor);
         configurePreBuildProjectOptions();
+        // the options are final at this point, load the task cache matching them
+        taskCache = new TaskCache(calculateTaskCacheValidityKey());
+        taskCache.load(getTaskCacheResource());
         createTasks();
         validateBuildResourceMapping();
         TimeProfiler.addData("TasksCount", tasks.size());
@@ -1591,13 +1678,44 @@ public class Project {
         m.done();
     }
 
+    private IResource getTaskCacheResource() {
+        return fileSystem.get(FilenameUtils.concat(buildDirectory, "_BobTaskCache_"));
+    }
+
+    /**
+     * Calculate a key covering everything besides the input resource which
+     * may change how tasks are created: the engine version and the project
+     * options. The task cache is discarded when the key changes.
+     * @return the key as a hex string
+     */
+    private String calculateTaskCacheValidityKey() throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+        digest.update(EngineVersion.sha1.getBytes());
+        List<String> keys = new ArrayList<String>(options.keySet());
+        Collections.sort(keys);
+        for (String key : keys) {
+            digest.update(key.getBytes());
+            String value = options.get(key);
+            if (value != null) {
+                digest.update(value.getBytes());
+            }
+        }
+        return new BigInteger(1, digest.digest()).toString(16);
+    }
+
     private List<TaskResult> doBuild(IProgress monitor, String... commands) throws Throwable, IOException, CompileExceptionError, MultipleCompileException {
         TimeProfiler.start("Prepare cache");
-        resourceCache.init(getLocalResourceCacheDirectory(), getRemoteResourceCacheDirectory());
+        resourceCache.init(getLocalResourceCacheDirectory(), getRemoteResourceCacheDirectory(), getLocalResourceCacheMaxSize());
         resourceCache.setRemoteAuthentication(getRemoteResourceCacheUser(), getRemoteResourceCachePass());
         fileSystem.loadCache();
         IResource stateResource = fileSystem.get(FilenameUtils.concat(buildDirectory, "_BobBuildState_"));
         state = State.load(stateResource);
+        IResource taskCacheResource = getTaskCacheResource();
         TimeProfiler.stop();
         List<TaskResult> result = new ArrayList<TaskResult>();
 
@@ -1716,35 +1834,215 @@ public class Project {
         monitor.done();
         TimeProfiler.start("Save cache");
         state.save(stateResource);
+        if (taskCache != null) {
+            taskCache.save(taskCacheResource);
+        }
         fileSystem.saveCache();
+        resourceCache.flush();
         TimeProfiler.stop();
         return result;
     }
 
 
 
-    @SuppressWarnings({ "rawtypes", "unchecked" })
-    private List<TaskResult> runTasks(IProgress monitor) throws IOException, CompileExceptionError {
-        // set of all completed tasks. The set includes both task run
-        // in this session and task already completed (output already exists with correct signatures, see below)
-        // the set also contains failed tasks
-        Set<Task> completedTasks = new HashSet<>();
+    /**
+     * Build a single task, or copy its outputs from the resource cache if they
+     * are all available there. Called from the task worker threads, so anything
+     * shared between tasks (completed sets, progress, results) is updated by
+     * runTasks() once the returned result has been collected.
+     * @param task The task to build
+     * @param taskSignature The signature of the task
+     * @return The result of the task. The result will have an exception set if
+     * an unexpected error occurred and the build should be aborted.
+     */
+    private TaskResult buildTask(Task task, byte[] taskSignature) {
+        final List<IResource> outputResources = task.getOutputs();
+
+        TimeProfiler.start(task.getName());
+        TimeProfiler.addData("output", StringUtil.truncate(task.getOutputsString(), 1000));
+        TimeProfiler.addData("type", "buildTask");
+
+        TaskResult taskResult = new TaskResult(task);
+        Builder builder = task.getBuilder();
+        boolean ok = true;
+        int lineNumber = 0;
+        String message = null;
+        Throwable exception = null;
+        Map<IResource, String> outputResourceToCacheKey = new HashMap<IResource, String>();
+        try {
+            if (task.isCacheable() && resourceCache.isCacheEnabled()) {
+                // check if all output resources exist in the resource cache
+                boolean allResourcesCached = true;
+                for (IResource r : outputResources) {
+                    final String key = ResourceCacheKey.calculate(task, options, r);
+                    outputResourceToCacheKey.put(r, key);
+                    if (!r.isCacheable()) {
+                        allResourcesCached = false;
+                    }
+                }
+                if (allResourcesCached) {
+                    // one batched query instead of one request per output
+                    Collection<String> keys = outputResourceToCacheKey.values();
+                    allResourcesCached = resourceCache.contains(keys).containsAll(keys);
+                }
+
+                // all resources exist in the cache, fetch them
+                // the cache is shared with other processes, and an entry may
+                // be evicted after the check above
+                Map<IResource, byte[]> cachedContent = new HashMap<IResource, byte[]>();
+                if (allResourcesCached) {
+                    for (IResource r : outputResources) {
+                        byte[] content = resourceCache.get(outputResourceToCacheKey.get(r));
+                        if (content == null) {
+                            allResourcesCached = false;
+                            break;
+                        }
+                        cachedContent.put(r, content);
+                    }
+                }
+
+                // copy them to the output
+                if (allResourcesCached) {
+                    TimeProfiler.addData("takenFromCache", true);
+                    for (IResource r : outputResources) {
+                        r.setContent(cachedContent.get(r));
+                    }
+                }
+                // build task and cache output
+                else {
+                    builder.build(task);
+                    for (IResource r : outputResources) {
+                        state.putSignature(r.getAbsPath(), taskSignature);
+                        if (r.isCacheable()) {
+                            resourceCache.put(outputResourceToCacheKey.get(r), r.getContent());
+                        }
+                    }
+                }
+            }
+            else {
+                builder.build(task);
+                for (IResource r : outputResources) {
+                    state.putSignature(r.getAbsPath(), taskSignature);
+                }
+            }
+            builder.clearState();
 
-        // the set of all output files generated
-        // in this or previous session
-        Set<IResource> completedOutputs = new HashSet<>();
+            // builders may write outputs directly to disk, bypassing setContent()
+            for (IResource r : outputResources) {
+                r.invalidate();
+            }
+            for (IResource r : outputResources) {
+                if (!r.exists()) {
+                    message = String.format("Output '%s' not found", r.getAbsPath());
+                    ok = false;
+                    break;
+                }
+            }
+        } catch (CompileExceptionError e) {
+            ok = false;
+            lineNumber = e.getLineNumber();
+            message = e.getMessage();
+        } catch (Throwable e) {
+            ok = false;
+            message = e.getMessage();
+            exception = e;
 
+            // to fix the issue it's easier to see the actual callstack
+            exception.printStackTrace(new java.io.PrintStream(System.out));
+        } finally {
+            TimeProfiler.stop();
+        }
+        if (!ok) {
+            taskResult.setOk(ok);
+            taskResult.setLineNumber(lineNumber);
+            taskResult.setMessage(message);
+            taskResult.setException(exception);
+            // Clear sigs for all outputs when a task fails
+            for (IResource r : outputResources) {
+                state.putSignature(r.getAbsPath(), new byte[0]);
+            }
+        }
+        return taskResult;
+    }
+
+    /**
+     * Calculate the digests of a set of resources in parallel. The digests
+     * end up in the file system digest cache, where the task signatures
+     * calculated in runTasks() pick them up. Errors are ignored here and
+     * reported when the signature of the task using the resource is calculated.
+     * @param resources The resources to hash
+     * @param executor The executor to hash the resources on
+     */
+    private void hashInputs(Collection<IResource> resources, ExecutorService executor) throws InterruptedException {
+        TimeProfiler.start("Hash inputs");
+        List<Callable<Void>> jobs = new ArrayList<>(resources.size());
+        for (IResource resource : resources) {
+            jobs.add(() -> {
+                try {
+                    if (resource.exists()) {
+                        resource.sha1();
+                    }
+                } catch (Exception e) {
+                    // reported by Task.calculateSignature()
+                }
+                return null;
+            });
+        }
+        executor.invokeAll(jobs);
+        TimeProfiler.addData("count", resources.size());
+        TimeProfiler.stop();
+    }
+
+    /**
+     * Start fetching the cacheable outputs of a task from the remote resource cache
+     * @param task The task to fetch outputs for
+     */
+    private void prefetchTaskOutputs(Task task) throws IOException {
+        List<String> keys = new ArrayList<>();
+        for (IResource r : task.getOutputs()) {
+            if (!r.isCacheable()) {
+                // the task will be built anyway
+                return;
+            }
+            keys.add(ResourceCacheKey.calculate(task, options, r));
+        }
+        resourceCache.prefetch(keys);
+    }
+
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+    private List<TaskResult> runTasks(IProgress monitor) throws IOException, CompileExceptionError {
         List<TaskResult> result = new ArrayList<>();
 
-        List<Task> buildTasks = new ArrayList<>(this.getTasks());
+        // the dependency graph of all tasks, tasks become ready once all
+        // tasks producing their inputs have completed
+        TaskGraph graph = new TaskGraph(this.getTasks());
+
         // set of *all* possible output files
         Set<IResource> allOutputs = new HashSet<>();
         for (Task task : this.getTasks()) {
             allOutputs.addAll(task.getOutputs());
         }
+
+        // set of all inputs which are not produced by any task, these can
+        // be hashed up front
+        Set<IResource> sourceInputs = new HashSet<>();
+        for (Task task : this.getTasks()) {
+            for (IResource input : task.getInputs()) {
+                if (!allOutputs.contains(input)) {
+                    sourceInputs.add(input);
+                }
+            }
+        }
         tasks.clear();
 
-        TextureGenerator.maxThreads = getMaxCpuThreads();
+        // set of tasks submitted to the task executor but not yet collected
+        Set<Task> runningTasks = new HashSet<>();
+
+        // ready tasks that must wait until no other task is running
+        List<Task> deferredTasks = new ArrayList<>();
+
+        int maxThreads = getMaxCpuThreads();
+        TextureGenerator.maxThreads = maxThreads;
 
         // Keep track of the paths for all outputs
         outputs = new HashMap<>(allOutputs.size());
@@ -1752,187 +2050,134 @@ public class Project {
             outputs.put(res.getAbsPath(), EnumSet.noneOf(OutputFlags.class));
         }
 
-        // This flag is set to true as soon as one task has failed. This will
-        // break out of the outer loop after the remaining tasks has been tried once.
-        // NOTE The underlying problem is that if a task fails and has dependent
-        // tasks, the dependent tasks will be tried forever. It should be solved
-        // by marking all dependent tasks as failed instead of this flag.
-        boolean taskFailed = false;
+        // Tasks are built on a pool of worker threads. With a single thread the
+        // tasks are built directly on the calling thread, same as before.
+        ExecutorService taskExecutor = maxThreads > 1 ? Executors.newFixedThreadPool(maxThreads) : null;
+        CompletionService<TaskResult> completionService = new ExecutorCompletionService<>(taskExecutor != null ? taskExecutor : Runnable::run);
+
+        // This flag is set to true when a task failed with an unexpected error.
+        // No new tasks will be started once it is set.
+        boolean abort = false;
         // This flag is needed to determine if at least one file was built or taken from the cache.
         // It is used to know whether GameProjectBuilder.build() (the builder for `game.project`)
         // needs to be executed.
         boolean buildContainsChanges = false;
-run:
-        while (completedTasks.size() < buildTasks.size()) {
-            for (Task task : buildTasks) {
-                BundleHelper.throwIfCanceled(monitor);
-
-                // deps are the task input files generated by another task not yet completed,
-                // i.e. "solve" the dependency graph
-                Set<IResource> deps = new HashSet<>(task.getInputs());
-                deps.retainAll(allOutputs);
-                deps.removeAll(completedOutputs);
-                if (deps.size() > 0) {
-                    // postpone task. dependent input not yet generated
-                    continue;
-                }
-
-                final List<IResource> outputResources = task.getOutputs();
-
-                // do all output files exist?
-                boolean allOutputExists = true;
-                for (IResource r : outputResources) {
-                    if (!r.exists()) {
-                        allOutputExists = false;
-                        break;
-                    }
-                }
-
-                // compare all task signature. current task signature between previous
-                // signature from state on disk
-                byte[] taskSignature = task.calculateSignature();
-                boolean allSigsEquals = true;
-                for (IResource r : outputResources) {
-                    byte[] s = state.getSignature(r.getAbsPath());
-                    if (!Arrays.equals(s, taskSignature)) {
-                        allSigsEquals = false;
-                        break;
-                    }
-                }
+        try {
+            if (taskExecutor != null) {
+                hashInputs(sourceInputs, taskExecutor);
+            }
 
-                // game.project is always the last task
-                boolean isLastTask = completedTasks.size() + 1 == buildTasks.size();
-                boolean shouldRun = !completedTasks.contains(task);
-                // GameProjectBuilder creates archives, and it is always the last task.
-                // If for some reason it's not, something went wrong, and the build pipeline is broken.
-                // But some tests may run build for some particular files without building game.project at all.
-                shouldRun = shouldRun && (!allOutputExists || !allSigsEquals ||
-                            (isLastTask && buildContainsChanges && (task.getBuilder().isGameProjectBuilder())));
-
-                if (!shouldRun) {
-                    if (allOutputExists && allSigsEquals)
-                    {
-                        // Task is successfully completed now or in a previous build.
-                        // Only if the conditions in the if-statements are true add the task to the completed set and the
-                        // output files to the completed output set
-                        completedTasks.add(task);
-                        completedOutputs.addAll(outputResources);
+            while (!abort && !graph.isDone()) {
+                Task task;
+                while ((task = graph.pollReady()) != null) {
+                    BundleHelper.throwIfCanceled(monitor);
+
+                    // GameProjectBuilder creates archives from the outputs of all other tasks
+                    // and it must know if any of them changed. Postpone it until no other
+                    // task is in flight.
+                    boolean isGameProjectTask = task.getBuilder().isGameProjectBuilder();
+                    if (isGameProjectTask && !runningTasks.isEmpty()) {
+                        deferredTasks.add(task);
+                        continue;
                     }
 
-                    monitor.worked(1);
-                    continue;
-                }
-
-                TimeProfiler.start(task.getName());
-                TimeProfiler.addData("output", StringUtil.truncate(task.getOutputsString(), 1000));
-                TimeProfiler.addData("type", "buildTask");
-
-                completedTasks.add(task);
-
-                TaskResult taskResult = new TaskResult(task);
-                result.add(taskResult);
-                Builder builder = task.getBuilder();
-                boolean ok = true;
-                int lineNumber = 0;
-                String message = null;
-                Throwable exception = null;
-                boolean abort = false;
-                Map<IResource, String> outputResourceToCacheKey = new HashMap<IResource, String>();
-                try {
-                    if (task.isCacheable() && resourceCache.isCacheEnabled()) {
-                        // check if all output resources exist in the resource cache
-                        boolean allResourcesCached = true;
-                        for (IResource r : outputResources) {
-                            final String key = ResourceCacheKey.calculate(task, options, r);
-                            outputResourceToCacheKey.put(r, key);
-                            if (!r.isCacheable()) {
-                                allResourcesCached = false;
-                            }
-                            else if (!resourceCache.contains(key)) {
-                                allResourcesCached = false;
-                            }
-                        }
+                    final List<IResource> outputResources = task.getOutputs();
 
-                        // all resources exist in the cache
-                        // copy them to the output
-                        if (allResourcesCached) {
-                            TimeProfiler.addData("takenFromCache", true);
-                            for (IResource r : outputResources) {
-                                r.setContent(resourceCache.get(outputResourceToCacheKey.get(r)));
-                            }
-                        }
-                        // build task and cache output
-                        else {
-                            builder.build(task);
-                            for (IResource r : outputResources) {
-                                state.putSignature(r.getAbsPath(), taskSignature);
-                                if (r.isCacheable()) {
-                                    resourceCache.put(outputResourceToCacheKey.get(r), r.getContent());
-                                }
-                            }
-                        }
-                    }
-                    else {
-                        builder.build(task);
-                        for (IResource r : outputResources) {
-                            state.putSignature(r.getAbsPath(), taskSignature);
+                    // do all output files exist?
+                    boolean allOutputExists = true;
+                    for (IResource r : outputResources) {
+                        if (!r.exists()) {
+                            allOutputExists = false;
+                            break;
                         }
                     }
-                    builder.clearState();
-                    monitor.worked(1);
-                    buildContainsChanges = true;
 
+                    // compare all task signature. current task signature between previous
+                    // signature from state on disk
+                    final byte[] taskSignature = task.calculateSignature();
+                    boolean allSigsEquals = true;
                     for (IResource r : outputResources) {
-                        if (!r.exists()) {
-                            message = String.format("Output '%s' not found", r.getAbsPath());
-                            ok = false;
+                        byte[] s = state.getSignature(r.getAbsPath());
+                        if (!Arrays.equals(s, taskSignature)) {
+                            allSigsEquals = false;
                             break;
                         }
                     }
-                    completedOutputs.addAll(outputResources);
-                    TimeProfiler.stop();
 
-                } catch (CompileExceptionError e) {
-                    TimeProfiler.stop();
-                    ok = false;
-                    lineNumber = e.getLineNumber();
-                    message = e.getMessage();
-                } catch (Throwable e) {
-                    TimeProfiler.stop();
-                    ok = false;
-                    message = e.getMessage();
-                    exception = e;
-                    abort = true;
+                    // game.project is always the last task
+                    boolean isLastTask = graph.getDoneCount() + 1 == graph.size();
+                    // GameProjectBuilder creates archives, and it is always the last task.
+                    // If for some reason it's not, something went wrong, and the build pipeline is broken.
+                    // But some tests may run build for some particular files without building game.project at all.
+                    boolean shouldRun = !allOutputExists || !allSigsEquals ||
+                                (isLastTask && buildContainsChanges && isGameProjectTask);
+
+                    if (!shouldRun) {
+                        // Task is successfully completed in a previous build.
+                        graph.complete(task);
+                        monitor.worked(1);
+                        continue;
+                    }
 
-                    // to fix the issue it's easier to see the actual callstack
-                    exception.printStackTrace(new java.io.PrintStream(System.out));
+                    // start downloading the outputs from the remote cache
+                    // while the task waits for a worker thread
+                    if (task.isCacheable() && resourceCache.isRemoteCacheEnabled()) {
+                        prefetchTaskOutputs(task);
+                    }
+
+                    runningTasks.add(task);
+                    final Task submittedTask = task;
+                    completionService.submit(() -> buildTask(submittedTask, taskSignature));
                 }
-                if (!ok) {
-                    taskFailed = true;
-                    taskResult.setOk(ok);
-                    taskResult.setLineNumber(lineNumber);
-                    taskResult.setMessage(message);
-                    taskResult.setException(exception);
-                    // Clear sigs for all outputs when a task fails
-                    for (IResource r : outputResources) {
-                        state.putSignature(r.getAbsPath(), new byte[0]);
+
+                if (runningTasks.isEmpty()) {
+                    if (deferredTasks.isEmpty()) {
+                        // Nothing is running and nothing more can be started
+                        break;
                     }
-                    if (abort) {
-                        break run;
+                    for (Task deferredTask : deferredTasks) {
+                        graph.postpone(deferredTask);
                     }
+                    deferredTasks.clear();
+                    continue;
+                }
+
+                // wait for at least one task to finish and collect all other finished tasks
+                Future<TaskResult> future = completionService.take();
+                while (future != null) {
+                    TaskResult taskResult = future.get();
+                    Task completedTask = taskResult.getTask();
+                    runningTasks.remove(completedTask);
+                    result.add(taskResult);
+                    if (taskResult.isOk()) {
+                        graph.complete(completedTask);
+                        buildContainsChanges = true;
+                        monitor.worked(1);
+                    }
+                    else {
+                        // tasks depending on the outputs of the failed task will never run
+                        graph.fail(completedTask);
+                        if (taskResult.getException() != null) {
+                            abort = true;
+                        }
+                    }
+                    future = completionService.poll();
                 }
             }
-            if (taskFailed) {
-                break;
-            }
-            // set of *all* possible output files
-            // TODO: do we really need this?
-            // It seems like we never create new tasks during building process
-            for (Task task : this.getTasks()) {
-                allOutputs.addAll(task.getOutputs());
+        } catch (InterruptedException | ExecutionException e) {
+            throw new RuntimeException(e);
+        } finally {
+            if (taskExecutor != null) {
+                // Let tasks which are still in flight (on abort or cancel) finish
+                // before the state is saved
+                taskExecutor.shutdown();
+                try {
+                    taskExecutor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
             }
-            buildTasks.addAll(this.getTasks());
-            tasks.clear();
+            releaseImageCache();
         }
         return result;
     }
@@ -1949,7 +2194,7 @@ run:
         return outputs;
     }
 
-    public EnumSet<OutputFlags> getOutputFlags(String resourcePath) {
+    public synchronized EnumSet<OutputFlags> getOutputFlags(String resourcePath) {
         return outputs.get(resourcePath);
     }
 
@@ -1958,7 +2203,7 @@ run:
      * @param resourcePath output resource absolute path
      * @param flag OutputFlag to add
      */
-    public boolean addOutputFlags(String resourcePath, OutputFlags flag) {
+    public synchronized boolean addOutputFlags(String resourcePath, OutputFlags flag) {
         EnumSet<OutputFlags> currentFlags = outputs.get(resourcePath);
         if(currentFlags == null) {
             return false;
@@ -22,6 +22,7 @@ import java.security.NoSuchAlgorithmException;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import com.dynamo.bob.fs.IResource;
 import com.dynamo.bob.pipeline.ProtoUtil;
@@ -37,8 +38,8 @@ public abstract class ProtoBuilder<B extends GeneratedMessageV3.Builder<B>> exte
     private ProtoParams protoParams;
     private HashMap<IResource, B> srcBuilders = new HashMap<>();
 
-    private static Map<String, Class<? extends GeneratedMessageV3>> extToMessageClass = new HashMap<String, Class<? extends GeneratedMessageV3>>();
-    private static Map<Class<? extends GeneratedMessageV3>,  byte[]> classToProtoDigest = new HashMap<Class<? extends GeneratedMessageV3>,  byte[]>();
+    private static Map<String, Class<? extends GeneratedMessageV3>> extToMessageClass = new ConcurrentHashMap<String, Class<? extends GeneratedMessageV3>>();
+    private static Map<Class<? extends GeneratedMessageV3>,  byte[]> classToProtoDigest = new ConcurrentHashMap<Class<? extends GeneratedMessageV3>,  byte[]>();
 
     public ProtoBuilder() {
         protoParams = getClass().getAnnotation(ProtoParams.class);
@@ -193,6 +194,12 @@ public abstract class ProtoBuilder<B extends GeneratedMessageV3.Builder<B>> exte
         task.output(0).setContent(out.toByteArray());
     }
 
+    // Subclasses overriding create() may depend on more than the proto message
+    @Override
+    public boolean isTaskCreationCacheable() {
+        return isCreateDeclaredBy(ProtoBuilder.class);
+    }
+
     @Override
     public void clearState() {
         super.clearState();
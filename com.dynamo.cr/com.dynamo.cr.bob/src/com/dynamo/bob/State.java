@@ -14,28 +14,33 @@
 
 package com.dynamo.bob;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
-import java.io.Serializable;
-import java.util.HashMap;
-import java.util.Map;
 import java.util.List;
-import java.util.ArrayList;
 
+import com.dynamo.bob.fs.DefaultResource;
 import com.dynamo.bob.fs.IResource;
+import com.dynamo.bob.util.SignatureTable;
 
 /**
  * Bob state abstraction for persistent sha1-checksums
+ * The signatures are stored in a {@link SignatureTable} which is looked up
+ * lazily, so loading the state doesn't depend on the number of entries.
+ * Signatures are read and written by the task worker threads.
  * @author Christian Murray
  *
  */
-public class State implements Serializable {
+public class State {
 
-    private static final long serialVersionUID = -275410118302470802L + 1;
-    private Map<String, byte[]> signatures = new HashMap<String, byte[]>();
+    private final SignatureTable signatures;
+
+    private State(SignatureTable signatures) {
+        this.signatures = signatures;
+    }
+
+    public State() {
+        this(new SignatureTable());
+    }
 
     /**
      * Get signature for path
@@ -43,7 +48,7 @@ public class State implements Serializable {
      * @return signature or null of no mapping exists
      */
     public byte[] getSignature(String path) {
-        return signatures.get(path);
+        return signatures.getSignature(path);
     }
 
     /**
@@ -68,29 +73,25 @@ public class State implements Serializable {
      * @return list of all registered paths
      */
     public List<String> getPaths() {
-        return new ArrayList<>(signatures.keySet());
+        return signatures.getPaths();
     }
 
     /**
      * Load state from resource
+     * A state saved in an older format is discarded
      * @param resource state resource
      * @return {@link State}
      * @throws IOException
      */
     public static State load(IResource resource) throws IOException {
+        if (resource instanceof DefaultResource) {
+            return new State(SignatureTable.open(new File(resource.getAbsPath())));
+        }
         byte[] content = resource.getContent();
         if (content == null) {
             return new State();
         } else {
-            try {
-                ObjectInputStream is = new ObjectInputStream(new ByteArrayInputStream(content));
-                State state = (State) is.readObject();
-                return state;
-            } catch (Throwable e) {
-                System.err.println("Unable to load state");
-                e.printStackTrace();
-                return new State();
-            }
+            return new State(SignatureTable.fromByteArray(content));
         }
     }
 
@@ -100,11 +101,11 @@ public class State implements Serializable {
      * @throws IOException
      */
     public void save(IResource resource) throws IOException {
-        ByteArrayOutputStream bos = new ByteArrayOutputStream(128 * 1024);
-        ObjectOutputStream os = new ObjectOutputStream(bos);
-        os.writeObject(this);
-        os.close();
-        resource.setContent(bos.toByteArray());
+        if (resource instanceof DefaultResource) {
+            signatures.save(new File(resource.getAbsPath()));
+        } else {
+            resource.setContent(signatures.toByteArray());
+        }
     }
 
 }
@@ -41,6 +41,10 @@ public class Task {
     private final Builder builder;
     private boolean cacheable = true;
 
+    // the signature digest is calculated once, see calculateSignatureDigest()
+    private MessageDigest signatureDigest;
+    private byte[] signature;
+
     /**
      * Task builder for create a {@link Task}.
      * @note Not to be confused with {@link Builder}
@@ -149,6 +153,10 @@ public class Task {
         return cacheable;
     }
 
+    public List<String> getExtraCacheKeys() {
+        return Collections.unmodifiableList(extraCacheKeys);
+    }
+
     /**
      * Update a message digest with a list of resources.
      * A copy of the list of resources will be used and the copy will be sorted
@@ -187,7 +195,7 @@ public class Task {
         }
     }
 
-    public MessageDigest calculateSignatureDigest() throws IOException {
+    private MessageDigest createSignatureDigest() throws IOException {
         // TODO: Checksum of builder-class byte-code. Seems to be rather difficult though..
         MessageDigest digest;
         try {
@@ -203,9 +211,37 @@ public class Task {
         return digest;
     }
 
-    public byte[] calculateSignature() throws IOException {
-        MessageDigest digest = calculateSignatureDigest();
-        return digest.digest();
+    private static MessageDigest cloneDigest(MessageDigest digest) {
+        try {
+            return (MessageDigest) digest.clone();
+        } catch (CloneNotSupportedException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Get the signature digest of the task. The digest is calculated the
+     * first time this is called, and must therefore not be called before
+     * the inputs of the task have been created. A copy is returned, which
+     * the caller may update with more data.
+     * @return A copy of the signature digest
+     */
+    public synchronized MessageDigest calculateSignatureDigest() throws IOException {
+        if (signatureDigest == null) {
+            signatureDigest = createSignatureDigest();
+        }
+        return cloneDigest(signatureDigest);
+    }
+
+    /**
+     * Get the signature of the task, see {@link Task#calculateSignatureDigest()}
+     * @return The signature
+     */
+    public synchronized byte[] calculateSignature() throws IOException {
+        if (signature == null) {
+            signature = calculateSignatureDigest().digest();
+        }
+        return signature;
     }
 
     public void setProductOf(Task task) {
@@ -0,0 +1,251 @@
+// Copyright 2020-2024 The Defold Foundation
+// Copyright 2014-2020 King
+// Copyright 2009-2014 Ragnar Svensson, Christian Murray
+// Licensed under the Defold License version 1.0 (the "License"); you may not use
+// this file except in compliance with the License.
+//
+// You may obtain a copy of the License, together with FAQs at
+// https://www.defold.com/license
+//
+// Unless required by applicable law or agreed to in writing, software distributed
+// under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+// CONDITIONS OF ANY KIND, either express or implied. See the License for the
+// specific language governing permissions and limitations under the License.
+
+
+package com.dynamo.bob;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.dynamo.bob.fs.IResource;
+
+/**
+ * Persistent cache of created tasks. For builders where
+ * {@link Builder#isTaskCreationCacheable()} is true the name, inputs,
+ * outputs, extra cache keys and sub-tasks of a created task are stored,
+ * keyed by the input path and builder class. On the next build the task is
+ * recreated from the cache, without calling {@link Builder#create(IResource)},
+ * if the content digest of the input is unchanged.
+ *
+ * The whole cache is discarded if the validity key (engine version, project
+ * options etc) differs from the one the cache was saved with.
+ */
+public class TaskCache {
+
+    private static final int VERSION = 1;
+
+    /**
+     * A task created by another task through {@link Project#createTask(IResource, Class)}
+     */
+    public static class SubTask {
+        final String path;
+        final String builderClass;
+
+        public SubTask(String path, String builderClass) {
+            this.path = path;
+            this.builderClass = builderClass;
+        }
+    }
+
+    private static class Entry {
+        byte[] inputDigest;
+        String name;
+        boolean cacheable;
+        List<String> inputs = new ArrayList<>();
+        List<String> outputs = new ArrayList<>();
+        List<String> extraCacheKeys = new ArrayList<>();
+        List<SubTask> subTasks = new ArrayList<>();
+    }
+
+    private final String validityKey;
+    private Map<String, Entry> entries = new HashMap<>();
+    // entries used or added in this build, only these are saved
+    private final Map<String, Entry> usedEntries = new HashMap<>();
+
+    public TaskCache(String validityKey) {
+        this.validityKey = validityKey;
+    }
+
+    private static String key(IResource input, Builder builder) {
+        return input.getPath() + " " + builder.getClass().getName();
+    }
+
+    /**
+     * Recreate a task from the cache. Sub-tasks are created with
+     * {@link Project#createTask(IResource, Class)}.
+     * @param project The project to create sub-tasks in
+     * @param builder The builder which should build the task
+     * @param input The input resource
+     * @return The task or null if there is no valid entry for the input
+     */
+    @SuppressWarnings("unchecked")
+    public Task get(Project project, Builder builder, IResource input) throws IOException, CompileExceptionError {
+        if (!builder.isTaskCreationCacheable()) {
+            return null;
+        }
+        String key = key(input, builder);
+        Entry entry = entries.get(key);
+        if (entry == null || !input.exists() || !Arrays.equals(entry.inputDigest, input.sha1())) {
+            return null;
+        }
+
+        // Let create() report missing or changed references
+        List<IResource> subTaskInputs = new ArrayList<>(entry.subTasks.size());
+        List<Class<? extends Builder>> subTaskBuilders = new ArrayList<>(entry.subTasks.size());
+        for (SubTask subTask : entry.subTasks) {
+            IResource resource = project.getResource(subTask.path);
+            if (!resource.exists()) {
+                return null;
+            }
+            try {
+                subTaskBuilders.add((Class<? extends Builder>) Class.forName(subTask.builderClass, true, project.getClassLoader()));
+            } catch (ClassNotFoundException e) {
+                return null;
+            }
+            subTaskInputs.add(resource);
+        }
+        for (int i = 0; i < subTaskInputs.size(); ++i) {
+            project.createTask(subTaskInputs.get(i), subTaskBuilders.get(i));
+        }
+
+        Task.TaskBuilder taskBuilder = Task.newBuilder(builder).setName(entry.name);
+        if (!entry.cacheable) {
+            taskBuilder.disableCache();
+        }
+        for (String path : entry.inputs) {
+            taskBuilder.addInput(project.getResource(path));
+        }
+        for (String path : entry.outputs) {
+            taskBuilder.addOutput(project.getResource(path));
+        }
+        for (String extraCacheKey : entry.extraCacheKeys) {
+            taskBuilder.addExtraCacheKey(extraCacheKey);
+        }
+        usedEntries.put(key, entry);
+        return taskBuilder.build();
+    }
+
+    /**
+     * Store a created task in the cache
+     * @param builder The builder which created the task
+     * @param input The input resource
+     * @param task The created task
+     * @param subTasks The tasks created by the builder while creating the task
+     */
+    public void put(Builder builder, IResource input, Task task, List<SubTask> subTasks) throws IOException {
+        if (!builder.isTaskCreationCacheable() || !input.exists()) {
+            return;
+        }
+        Entry entry = new Entry();
+        entry.inputDigest = input.sha1();
+        entry.name = task.getName();
+        entry.cacheable = task.isCacheable();
+        for (IResource r : task.getInputs()) {
+            entry.inputs.add(r.getPath());
+        }
+        for (IResource r : task.getOutputs()) {
+            entry.outputs.add(r.getPath());
+        }
+        entry.extraCacheKeys.addAll(task.getExtraCacheKeys());
+        entry.subTasks.addAll(subTasks);
+        usedEntries.put(key(input, builder), entry);
+    }
+
+    private static void writeStrings(DataOutputStream os, List<String> strings) throws IOException {
+        os.writeInt(strings.size());
+        for (String s : strings) {
+            os.writeUTF(s);
+        }
+    }
+
+    private static List<String> readStrings(DataInputStream is) throws IOException {
+        int count = is.readInt();
+        List<String> strings = new ArrayList<>(count);
+        for (int i = 0; i < count; ++i) {
+            strings.add(is.readUTF());
+        }
+        return strings;
+    }
+
+    /**
+     * Load cache entries from a resource. Nothing is loaded if the resource
+     * doesn't exist, is invalid or was saved with another validity key.
+     * @param resource The resource to load from
+     */
+    public void load(IResource resource) throws IOException {
+        entries = new HashMap<>();
+        byte[] content = resource.getContent();
+        if (content == null) {
+            return;
+        }
+        Map<String, Entry> loaded = new HashMap<>();
+        try (DataInputStream is = new DataInputStream(new ByteArrayInputStream(content))) {
+            if (is.readInt() != VERSION || !is.readUTF().equals(validityKey)) {
+                return;
+            }
+            int count = is.readInt();
+            for (int i = 0; i < count; ++i) {
+                String key = is.readUTF();
+                Entry entry = new Entry();
+                entry.inputDigest = new byte[is.readUnsignedByte()];
+                is.readFully(entry.inputDigest);
+                entry.name = is.readUTF();
+                if (entry.name.isEmpty()) {
+                    entry.name = null;
+                }
+                entry.cacheable = is.readBoolean();
+                entry.inputs = readStrings(is);
+                entry.outputs = readStrings(is);
+                entry.extraCacheKeys = readStrings(is);
+                int subTaskCount = is.readInt();
+                for (int j = 0; j < subTaskCount; ++j) {
+                    entry.subTasks.add(new SubTask(is.readUTF(), is.readUTF()));
+                }
+                loaded.put(key, entry);
+            }
+        } catch (IOException e) {
+            // truncated or corrupt cache, start over
+            return;
+        }
+        entries = loaded;
+    }
+
+    /**
+     * Save the entries used or added in this build
+     * @param resource The resource to save to
+     */
+    public void save(IResource resource) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream(128 * 1024);
+        DataOutputStream os = new DataOutputStream(bos);
+        os.writeInt(VERSION);
+        os.writeUTF(validityKey);
+        os.writeInt(usedEntries.size());
+        for (Map.Entry<String, Entry> e : usedEntries.entrySet()) {
+            Entry entry = e.getValue();
+            os.writeUTF(e.getKey());
+            os.writeByte(entry.inputDigest.length);
+            os.write(entry.inputDigest);
+            os.writeUTF(entry.name != null ? entry.name : "");
+            os.writeBoolean(entry.cacheable);
+            writeStrings(os, entry.inputs);
+            writeStrings(os, entry.outputs);
+            writeStrings(os, entry.extraCacheKeys);
+            os.writeInt(entry.subTasks.size());
+            for (SubTask subTask : entry.subTasks) {
+                os.writeUTF(subTask.path);
+                os.writeUTF(subTask.builderClass);
+            }
+        }
+        os.close();
+        resource.setContent(bos.toByteArray());
+    }
+}
@@ -0,0 +1,199 @@
+// Copyright 2020-2024 The Defold Foundation
+// Copyright 2014-2020 King
+// Copyright 2009-2014 Ragnar Svensson, Christian Murray
+// Licensed under the Defold License version 1.0 (the "License"); you may not use
+// this file except in compliance with the License.
+//
+// You may obtain a copy of the License, together with FAQs at
+// https://www.defold.com/license
+//
+// Unless required by applicable law or agreed to in writing, software distributed
+// under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+// CONDITIONS OF ANY KIND, either express or implied. See the License for the
+// specific language governing permissions and limitations under the License.
+
+
+package com.dynamo.bob;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.dynamo.bob.fs.IResource;
+
+/**
+ * Dependency graph of build tasks. A task depends on the tasks producing its
+ * inputs. The graph keeps a count of unfinished dependencies per task and a
+ * queue of tasks for which all dependencies have completed, so that each task
+ * is only examined once when scheduling a build.
+ * The graph is not thread safe and should only be used from the thread
+ * scheduling the tasks.
+ */
+public class TaskGraph {
+
+    private final List<Task> tasks = new ArrayList<>();
+    private final Map<Task, Integer> taskToIndex = new HashMap<>();
+    private final Map<IResource, Task> outputToTask = new HashMap<>();
+    // tasks which depend on the task at a given index
+    private final List<List<Task>> dependants = new ArrayList<>();
+    // number of tasks at a given index which must complete before the task can run
+    private int[] inDegree = new int[0];
+    private boolean[] done = new boolean[0];
+    private final ArrayDeque<Task> ready = new ArrayDeque<>();
+    private int doneCount = 0;
+
+    /**
+     * Create a graph from a collection of tasks
+     * @param tasks The tasks to add to the graph
+     */
+    public TaskGraph(Collection<Task> tasks) {
+        for (Task task : tasks) {
+            if (taskToIndex.containsKey(task)) {
+                continue;
+            }
+            taskToIndex.put(task, this.tasks.size());
+            this.tasks.add(task);
+            dependants.add(new ArrayList<>());
+            for (IResource output : task.getOutputs()) {
+                outputToTask.put(output, task);
+            }
+        }
+
+        int count = this.tasks.size();
+        inDegree = new int[count];
+        done = new boolean[count];
+        for (int i = 0; i < count; ++i) {
+            Task task = this.tasks.get(i);
+            // a task may have several inputs produced by the same task
+            Set<Task> producers = new LinkedHashSet<>();
+            for (IResource input : task.getInputs()) {
+                Task producer = outputToTask.get(input);
+                if (producer != null && producer != task) {
+                    producers.add(producer);
+                }
+            }
+            inDegree[i] = producers.size();
+            for (Task producer : producers) {
+                dependants.get(taskToIndex.get(producer)).add(task);
+            }
+            if (inDegree[i] == 0) {
+                ready.add(task);
+            }
+        }
+    }
+
+    /**
+     * Get the total number of tasks in the graph
+     * @return number of tasks
+     */
+    public int size() {
+        return tasks.size();
+    }
+
+    /**
+     * Get the number of tasks which are completed or failed
+     * @return number of tasks
+     */
+    public int getDoneCount() {
+        return doneCount;
+    }
+
+    /**
+     * Check if all tasks in the graph are completed or failed
+     * @return true if there is nothing more to do
+     */
+    public boolean isDone() {
+        return doneCount == tasks.size();
+    }
+
+    /**
+     * Get the task producing a resource
+     * @param output The output resource
+     * @return The task or null if the resource isn't produced by any task in the graph
+     */
+    public Task getProducer(IResource output) {
+        return outputToTask.get(output);
+    }
+
+    /**
+     * Check if there are tasks ready to run
+     * @return true if at least one task has all dependencies completed
+     */
+    public boolean hasReadyTasks() {
+        return !ready.isEmpty();
+    }
+
+    /**
+     * Get the next task which has all dependencies completed
+     * @return A task or null if no task is ready
+     */
+    public Task pollReady() {
+        return ready.poll();
+    }
+
+    /**
+     * Put a task which was taken from the ready queue back at the end of the
+     * queue, eg when it must wait for tasks outside of the dependency graph
+     * @param task The task to postpone
+     */
+    public void postpone(Task task) {
+        ready.add(task);
+    }
+
+    private int markDone(Task task) {
+        Integer index = taskToIndex.get(task);
+        if (index == null) {
+            throw new IllegalArgumentException(String.format("Task '%s' is not part of the graph", task));
+        }
+        if (done[index]) {
+            throw new IllegalStateException(String.format("Task '%s' is already completed", task));
+        }
+        done[index] = true;
+        ++doneCount;
+        return index;
+    }
+
+    /**
+     * Mark a task as successfully completed. Dependants that have no other
+     * unfinished dependencies are added to the ready queue.
+     * @param task The completed task
+     */
+    public void complete(Task task) {
+        int index = markDone(task);
+        for (Task dependant : dependants.get(index)) {
+            int dependantIndex = taskToIndex.get(dependant);
+            if (--inDegree[dependantIndex] == 0 && !done[dependantIndex]) {
+                ready.add(dependant);
+            }
+        }
+    }
+
+    /**
+     * Mark a task as failed. All tasks depending directly or indirectly on
+     * the task will also be marked as failed and will never become ready.
+     * @param task The failed task
+     * @return List of dependants that were marked as failed
+     */
+    public List<Task> fail(Task task) {
+        List<Task> failed = new ArrayList<>();
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        queue.add(markDone(task));
+        while (!queue.isEmpty()) {
+            for (Task dependant : dependants.get(queue.poll())) {
+                int dependantIndex = taskToIndex.get(dependant);
+                if (!done[dependantIndex]) {
+                    done[dependantIndex] = true;
+                    ++doneCount;
+                    failed.add(dependant);
+                    queue.add(dependantIndex);
+                }
+            }
+        }
+        return failed;
+    }
+}
@@ -22,9 +22,12 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -33,6 +36,11 @@ import java.util.HashSet;
 import java.util.Set;
 import java.util.Map;
 import java.util.HashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.FilenameUtils;
@@ -65,12 +73,19 @@ public class ArchiveBuilder {
     private List<ArchiveEntry> excludedEntries = new ArrayList<ArchiveEntry>();
     private Set<String> lookup = new HashSet<String>(); // To see if a resource has already been added
     private Map<String, String> hexDigestCache = new HashMap<>();
+    private Map<String, ArchiveEntry> writtenPayloads = new HashMap<>(); // bundled entries keyed on hex digest of their payload
     private String root;
     private ManifestBuilder manifestBuilder = null;
     private LZ4Compressor lz4Compressor;
     private byte[] archiveIndexMD5 = new byte[MD5_HASH_DIGEST_BYTE_LENGTH];
     private int resourcePadding = 4;
     private boolean forceCompression = false; // for building unit tests to create test content
+    private int maxThreads = Runtime.getRuntime().availableProcessors();
+    private File previousArchiveData = null;
+    private ArchiveEntryCache previousEntryCache = null;
+    private FileChannel previousArchiveDataChannel = null;
+    private ArchiveEntryCache entryCache = null;
+    private Map<String, Integer> loadOrder = null;
 
     public ArchiveBuilder(String root, ManifestBuilder manifestBuilder, int resourcePadding) {
         this.root = new File(root).getAbsolutePath();
@@ -159,28 +174,116 @@ public class ArchiveBuilder {
         return excludedEntries;
     }
 
-    public void write(RandomAccessFile archiveIndex, RandomAccessFile archiveData, Path resourcePackDirectory, List<String> excludedResources) throws IOException, CompileExceptionError {
-        // INDEX
-        archiveIndex.writeInt(VERSION); // Version
-        archiveIndex.writeInt(0); // Pad
-        archiveIndex.writeLong(0); // UserData, used in runtime to distinguish between if the index and resources are memory mapped or loaded from disk
-        archiveIndex.writeInt(0); // EntryCount
-        archiveIndex.writeInt(0); // EntryOffset
-        archiveIndex.writeInt(0); // HashOffset
-        archiveIndex.writeInt(0); // HashLength
-        archiveIndex.write(new byte[MD5_HASH_DIGEST_BYTE_LENGTH]);
+    /**
+     * Set the number of threads used to prepare entries in write()
+     * @param maxThreads number of threads
+     */
+    public void setMaxThreads(int maxThreads) {
+        this.maxThreads = maxThreads;
+    }
 
-        int archiveIndexHeaderOffset = (int) archiveIndex.getFilePointer();
+    /**
+     * Lay out the archive data in load order instead of path order, to let
+     * the runtime read the resources of a collection mostly sequentially.
+     * Resources not in the list are placed last.
+     * @param relativePaths resources in the order they are loaded, or null for path order
+     */
+    public void setLoadOrder(List<String> relativePaths) {
+        if (relativePaths == null) {
+            this.loadOrder = null;
+            return;
+        }
+        this.loadOrder = new HashMap<>();
+        for (String relativePath : relativePaths) {
+            this.loadOrder.putIfAbsent(relativePath, this.loadOrder.size());
+        }
+    }
 
-        Collections.sort(entries); // Since it has no hash, it sorts on path
+    /**
+     * Build the archive incrementally. Entries found in the cache of the
+     * previous archive are copied from the previous archive data instead of
+     * being compressed, encrypted and hashed again. A cache for the new
+     * archive is available from getEntryCache() after write().
+     * @param previousArchiveData the previous archive data file, may be null
+     * @param previousEntryCache the cache of the previous archive data file, may be null
+     * @param fingerprint the fingerprint of the build, see ArchiveEntryCache.createFingerprint()
+     */
+    public void setPreviousArchive(File previousArchiveData, ArchiveEntryCache previousEntryCache, String fingerprint) {
+        this.previousArchiveData = previousArchiveData;
+        this.previousEntryCache = previousEntryCache;
+        this.entryCache = new ArchiveEntryCache(manifestBuilder.getResourceHashAlgorithm(), fingerprint);
+    }
 
-        for (int i = entries.size() - 1; i >= 0; --i) {
-            TimeProfiler.start("Write file");
-            ArchiveEntry entry = entries.get(i);
-            TimeProfiler.addData("res", entry.getFilename());
+    /**
+     * Get the cache of the entries written to the archive data file
+     * @return the cache or null if not building incrementally
+     */
+    public ArchiveEntryCache getEntryCache() {
+        return entryCache;
+    }
+
+    /**
+     * An entry loaded, compressed, encrypted and hashed, ready to be written
+     */
+    private static class PreparedEntry {
+        final ArchiveEntry entry;
+        final byte[] buffer; // null if the payload is copied from the previous archive
+        final byte[] hashDigest;
+        final int resourceEntryFlags;
+        final String cacheKey;
+        final ArchiveEntryCache.Entry cached;
+
+        PreparedEntry(ArchiveEntry entry, byte[] buffer, byte[] hashDigest, int resourceEntryFlags, String cacheKey, ArchiveEntryCache.Entry cached) {
+            this.entry = entry;
+            this.buffer = buffer;
+            this.hashDigest = hashDigest;
+            this.resourceEntryFlags = resourceEntryFlags;
+            this.cacheKey = cacheKey;
+            this.cached = cached;
+        }
+    }
 
+    private void setEntryHash(ArchiveEntry entry, byte[] hashDigest) {
+        entry.setHash(new byte[HASH_MAX_LENGTH]);
+        System.arraycopy(hashDigest, 0, entry.getHash(), 0, hashDigest.length);
+        entry.setHexDigest(ManifestBuilder.CryptographicOperations.hexdigest(hashDigest));
+    }
+
+    // Called concurrently for different entries, must only modify the entry
+    private PreparedEntry prepareEntry(ArchiveEntry entry) throws IOException, CompileExceptionError {
+        TimeProfiler.start("Prepare file");
+        TimeProfiler.addData("res", entry.getFilename());
+        try {
             byte[] buffer = this.loadResourceData(entry.getFilename());
 
+            String cacheKey = null;
+            if (entryCache != null) {
+                try {
+                    byte[] sourceDigest = ManifestBuilder.CryptographicOperations.hash(buffer, HashAlgorithm.HASH_SHA1);
+                    cacheKey = ArchiveEntryCache.createKey(sourceDigest, entry.isCompressed(), entry.isEncrypted(), forceCompression);
+                } catch (NoSuchAlgorithmException exception) {
+                    throw new IOException("Unable to create a Resource Pack, the hashing algorithm is not supported!");
+                }
+
+                ArchiveEntryCache.Entry cached = previousEntryCache != null ? previousEntryCache.get(cacheKey) : null;
+                if (cached != null) {
+                    TimeProfiler.addData("reused", true);
+                    int resourceEntryFlags = 0;
+                    if (entry.isCompressed()) {
+                        entry.setCompressedSize(cached.compressedSize);
+                        if (cached.compressedSize != ArchiveEntry.FLAG_UNCOMPRESSED) {
+                            entry.setFlag(ArchiveEntry.FLAG_COMPRESSED);
+                            resourceEntryFlags |= ResourceEntryFlag.COMPRESSED.getNumber();
+                        }
+                    }
+                    if (entry.isEncrypted()) {
+                        resourceEntryFlags |= ResourceEntryFlag.ENCRYPTED.getNumber();
+                    }
+                    setEntryHash(entry, cached.hash);
+                    return new PreparedEntry(entry, null, cached.hash, resourceEntryFlags, cacheKey, cached);
+                }
+            }
+
             int resourceEntryFlags = 0;
 
             if (entry.isCompressed()) {
@@ -207,42 +310,183 @@ public class ArchiveBuilder {
                 TimeProfiler.stop();
             }
 
-            // Add entry to manifest
-            String normalisedPath = FilenameUtils.separatorsToUnix(entry.getRelativeFilename());
-
             // Calculate hash digest values for resource
-            String hexDigest = null;
+            byte[] hashDigest;
             try {
                 TimeProfiler.start("Hex");
-                byte[] hashDigest = ManifestBuilder.CryptographicOperations.hash(buffer, manifestBuilder.getResourceHashAlgorithm());
-                entry.setHash(new byte[HASH_MAX_LENGTH]);
-                System.arraycopy(hashDigest, 0, entry.getHash(), 0, hashDigest.length);
-                hexDigest = ManifestBuilder.CryptographicOperations.hexdigest(hashDigest);
+                hashDigest = ManifestBuilder.CryptographicOperations.hash(buffer, manifestBuilder.getResourceHashAlgorithm());
+                setEntryHash(entry, hashDigest);
                 TimeProfiler.stop();
             } catch (NoSuchAlgorithmException exception) {
                 throw new IOException("Unable to create a Resource Pack, the hashing algorithm is not supported!");
             }
 
-            entry.setHexDigest(hexDigest);
-            hexDigestCache.put(entry.getRelativeFilename(), hexDigest);
+            return new PreparedEntry(entry, buffer, hashDigest, resourceEntryFlags, cacheKey, null);
+        } finally {
+            TimeProfiler.stop();
+        }
+    }
 
-            TimeProfiler.start("Write");
-            // Write resource to resource pack or data archive
-            if (excludedResources.contains(normalisedPath)) {
-                this.writeResourcePack(entry, resourcePackDirectory.toString(), buffer);
-                entries.remove(i);
-                excludedEntries.add(entry);
-                resourceEntryFlags |= ResourceEntryFlag.EXCLUDED.getNumber();
+    private static PreparedEntry getPreparedEntry(Future<PreparedEntry> future) throws IOException, CompileExceptionError {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof CompileExceptionError) {
+                throw (CompileExceptionError) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new RuntimeException(cause);
+        }
+    }
+
+    private byte[] readPreviousArchiveData(ArchiveEntryCache.Entry cached) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(cached.length);
+        while (buffer.hasRemaining()) {
+            if (previousArchiveDataChannel.read(buffer, cached.offset + buffer.position()) < 0) {
+                throw new IOException(String.format("Unexpected end of previous archive data '%s'", previousArchiveData));
+            }
+        }
+        return buffer.array();
+    }
+
+    private void copyPreviousArchiveData(ArchiveEntryCache.Entry cached, FileChannel target) throws IOException {
+        long position = cached.offset;
+        long remaining = cached.length;
+        while (remaining > 0) {
+            long transferred = previousArchiveDataChannel.transferTo(position, remaining, target);
+            if (transferred <= 0) {
+                throw new IOException(String.format("Unexpected end of previous archive data '%s'", previousArchiveData));
+            }
+            position += transferred;
+            remaining -= transferred;
+        }
+    }
+
+    // Write a prepared entry to the resource pack or data archive. Entries
+    // must be written in order.
+    private void writeEntry(PreparedEntry prepared, int index, RandomAccessFile archiveData, Path resourcePackDirectory, Set<String> excludedResources) throws IOException {
+        TimeProfiler.start("Write file");
+        ArchiveEntry entry = prepared.entry;
+        byte[] buffer = prepared.buffer;
+        int resourceEntryFlags = prepared.resourceEntryFlags;
+        TimeProfiler.addData("res", entry.getFilename());
+
+        // Add entry to manifest
+        String normalisedPath = FilenameUtils.separatorsToUnix(entry.getRelativeFilename());
+
+        hexDigestCache.put(entry.getRelativeFilename(), entry.getHexDigest());
+
+        // Write resource to resource pack or data archive
+        if (excludedResources.contains(normalisedPath)) {
+            if (buffer == null) {
+                buffer = readPreviousArchiveData(prepared.cached);
+            }
+            this.writeResourcePack(entry, resourcePackDirectory.toString(), buffer);
+            entries.remove(index);
+            excludedEntries.add(entry);
+            resourceEntryFlags |= ResourceEntryFlag.EXCLUDED.getNumber();
+        } else {
+            long offset;
+            int length = buffer != null ? buffer.length : prepared.cached.length;
+            // identical payloads are stored once and shared by all entries
+            ArchiveEntry written = writtenPayloads.get(entry.getHexDigest());
+            if (written != null) {
+                offset = written.getResourceOffset();
+                entry.setResourceOffset((int) offset);
             } else {
                 alignBuffer(archiveData, this.resourcePadding);
-                entry.setResourceOffset((int) archiveData.getFilePointer());
-                archiveData.write(buffer, 0, buffer.length);
-                resourceEntryFlags |= ResourceEntryFlag.BUNDLED.getNumber();
+                offset = archiveData.getFilePointer();
+                entry.setResourceOffset((int) offset);
+                if (buffer != null) {
+                    archiveData.write(buffer, 0, buffer.length);
+                } else {
+                    copyPreviousArchiveData(prepared.cached, archiveData.getChannel());
+                }
+                writtenPayloads.put(entry.getHexDigest(), entry);
             }
-            TimeProfiler.stop();
+            resourceEntryFlags |= ResourceEntryFlag.BUNDLED.getNumber();
 
-            manifestBuilder.addResourceEntry(normalisedPath, buffer, entry.getSize(), entry.getCompressedSize(), resourceEntryFlags);
-            TimeProfiler.stop();
+            if (entryCache != null) {
+                entryCache.put(prepared.cacheKey, new ArchiveEntryCache.Entry(offset, length, entry.getCompressedSize(), prepared.hashDigest));
+            }
+        }
+
+        manifestBuilder.addResourceEntryWithHash(normalisedPath, prepared.hashDigest, entry.getSize(), entry.getCompressedSize(), resourceEntryFlags);
+        TimeProfiler.stop();
+    }
+
+    public void write(RandomAccessFile archiveIndex, RandomAccessFile archiveData, Path resourcePackDirectory, List<String> excludedResources) throws IOException, CompileExceptionError {
+        // INDEX
+        archiveIndex.writeInt(VERSION); // Version
+        archiveIndex.writeInt(0); // Pad
+        archiveIndex.writeLong(0); // UserData, used in runtime to distinguish between if the index and resources are memory mapped or loaded from disk
+        archiveIndex.writeInt(0); // EntryCount
+        archiveIndex.writeInt(0); // EntryOffset
+        archiveIndex.writeInt(0); // HashOffset
+        archiveIndex.writeInt(0); // HashLength
+        archiveIndex.write(new byte[MD5_HASH_DIGEST_BYTE_LENGTH]);
+
+        int archiveIndexHeaderOffset = (int) archiveIndex.getFilePointer();
+
+        Collections.sort(entries); // Since it has no hash, it sorts on path
+        if (loadOrder != null) {
+            // entries are written from the end of the list, so sort on reverse load order
+            // the sort is stable, so entries not in the load order are still sorted on path
+            entries.sort((a, b) -> Integer.compare(
+                loadOrder.getOrDefault(b.getRelativeFilename(), Integer.MAX_VALUE),
+                loadOrder.getOrDefault(a.getRelativeFilename(), Integer.MAX_VALUE)));
+        }
+        writtenPayloads.clear();
+
+        Set<String> excludedResourcesLookup = new HashSet<String>(excludedResources);
+
+        if (previousEntryCache != null && previousArchiveData != null && previousArchiveData.isFile()) {
+            previousArchiveDataChannel = FileChannel.open(previousArchiveData.toPath(), StandardOpenOption.READ);
+        } else {
+            previousEntryCache = null;
+        }
+
+        // Entries are loaded, compressed, encrypted and hashed in parallel,
+        // and written in order. The number of prepared entries waiting to be
+        // written is bounded to limit the memory used if writing falls behind.
+        ExecutorService executor = maxThreads > 1 ? Executors.newFixedThreadPool(maxThreads) : null;
+        int maxPending = Math.max(1, maxThreads * 2);
+        ArrayDeque<Future<PreparedEntry>> pending = new ArrayDeque<Future<PreparedEntry>>();
+        int next = entries.size() - 1;
+        try {
+            for (int i = entries.size() - 1; i >= 0; --i) {
+                // entries are only removed at the index being written, so
+                // entries with lower indices can be prepared ahead
+                while (next >= 0 && pending.size() < maxPending) {
+                    final ArchiveEntry nextEntry = entries.get(next--);
+                    FutureTask<PreparedEntry> prepareTask = new FutureTask<PreparedEntry>(() -> prepareEntry(nextEntry));
+                    if (executor != null) {
+                        executor.execute(prepareTask);
+                    } else {
+                        prepareTask.run();
+                    }
+                    pending.add(prepareTask);
+                }
+                PreparedEntry prepared = getPreparedEntry(pending.poll());
+                writeEntry(prepared, i, archiveData, resourcePackDirectory, excludedResourcesLookup);
+            }
+        } finally {
+            if (executor != null) {
+                executor.shutdownNow();
+            }
+            if (previousArchiveDataChannel != null) {
+                previousArchiveDataChannel.close();
+                previousArchiveDataChannel = null;
+            }
         }
 
         Collections.sort(entries); // Since it has a hash, it sorts on hash
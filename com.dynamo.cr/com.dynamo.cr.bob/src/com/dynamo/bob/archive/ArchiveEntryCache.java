@@ -0,0 +1,188 @@
+// Copyright 2020-2024 The Defold Foundation
+// Copyright 2014-2020 King
+// Copyright 2009-2014 Ragnar Svensson, Christian Murray
+// Licensed under the Defold License version 1.0 (the "License"); you may not use
+// this file except in compliance with the License.
+//
+// You may obtain a copy of the License, together with FAQs at
+// https://www.defold.com/license
+//
+// Unless required by applicable law or agreed to in writing, software distributed
+// under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+// CONDITIONS OF ANY KIND, either express or implied. See the License for the
+// specific language governing permissions and limitations under the License.
+
+package com.dynamo.bob.archive;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.dynamo.bob.CompileExceptionError;
+import com.dynamo.liveupdate.proto.Manifest.HashAlgorithm;
+
+/**
+ * Sidecar index of the entries stored in an archive data file (.arcd). Maps
+ * the digest of the source data and the entry options to the location and
+ * hash of the processed (compressed and/or encrypted) payload, which lets
+ * unchanged entries be copied from the previous archive instead of being
+ * processed again. The cache is only used by a build with the same version
+ * of bob and the same resource encryption, since neither is part of the keys.
+ */
+public class ArchiveEntryCache {
+
+    private static final int MAGIC = 0x44415243; // DARC
+    private static final int VERSION = 2;
+
+    public static class Entry {
+        public final long offset;
+        public final int length;
+        public final int compressedSize; // ArchiveEntry.FLAG_UNCOMPRESSED if stored uncompressed
+        public final byte[] hash;
+
+        public Entry(long offset, int length, int compressedSize, byte[] hash) {
+            this.offset = offset;
+            this.length = length;
+            this.compressedSize = compressedSize;
+            this.hash = hash;
+        }
+    }
+
+    private final HashAlgorithm hashAlgorithm;
+    private final String fingerprint;
+    private final Map<String, Entry> entries = new HashMap<>();
+
+    /**
+     * Create an empty cache
+     * @param hashAlgorithm the resource hash algorithm of the build
+     * @param fingerprint the settings of the build the payloads are processed with, see createFingerprint()
+     */
+    public ArchiveEntryCache(HashAlgorithm hashAlgorithm, String fingerprint) {
+        this.hashAlgorithm = hashAlgorithm;
+        this.fingerprint = fingerprint;
+    }
+
+    /**
+     * Create the fingerprint of the settings the payloads are processed with
+     * that are not part of the entry keys: the version of bob and the
+     * resource encryption plugin and key.
+     * @return fingerprint
+     */
+    public static String createFingerprint() throws CompileExceptionError {
+        return EngineVersion.sha1 + ":" + ResourceEncryption.getFingerprint();
+    }
+
+    /**
+     * Create the lookup key of an entry
+     * @param sourceDigest digest of the unprocessed source data
+     * @param compress if the entry should be compressed
+     * @param encrypt if the entry should be encrypted
+     * @param forceCompression if compression is forced
+     * @return key
+     */
+    public static String createKey(byte[] sourceDigest, boolean compress, boolean encrypt, boolean forceCompression) {
+        return ManifestBuilder.CryptographicOperations.hexdigest(sourceDigest) + (compress ? "c" : "-") + (encrypt ? "e" : "-") + (forceCompression ? "f" : "-");
+    }
+
+    public HashAlgorithm getHashAlgorithm() {
+        return hashAlgorithm;
+    }
+
+    public String getFingerprint() {
+        return fingerprint;
+    }
+
+    public Entry get(String key) {
+        return entries.get(key);
+    }
+
+    public void put(String key, Entry entry) {
+        entries.put(key, entry);
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Write the cache. The size and modification time of the archive data
+     * file are stored to detect if it is changed or replaced.
+     * @param file the file to write the cache to
+     * @param archiveData the archive data file the entries point into
+     */
+    public void write(File file, File archiveData) throws IOException {
+        File tmp = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(hashAlgorithm.getNumber());
+            out.writeUTF(fingerprint);
+            out.writeLong(archiveData.length());
+            out.writeLong(archiveData.lastModified());
+            out.writeInt(entries.size());
+            for (Map.Entry<String, Entry> e : entries.entrySet()) {
+                Entry entry = e.getValue();
+                out.writeUTF(e.getKey());
+                out.writeLong(entry.offset);
+                out.writeInt(entry.length);
+                out.writeInt(entry.compressedSize);
+                out.writeShort(entry.hash.length);
+                out.write(entry.hash);
+            }
+        }
+        if (!tmp.renameTo(file)) {
+            file.delete();
+            if (!tmp.renameTo(file)) {
+                tmp.delete();
+                throw new IOException(String.format("Unable to write archive entry cache '%s'", file));
+            }
+        }
+    }
+
+    /**
+     * Read a cache previously written for an archive data file
+     * @param file the cache file
+     * @param archiveData the archive data file the entries point into
+     * @param hashAlgorithm the resource hash algorithm of the current build
+     * @param fingerprint the fingerprint of the current build, see createFingerprint()
+     * @return the cache or null if it does not exist, is corrupt, does not
+     * match the archive data file or was written by a build with other settings
+     */
+    public static ArchiveEntryCache read(File file, File archiveData, HashAlgorithm hashAlgorithm, String fingerprint) {
+        if (!file.isFile() || !archiveData.isFile()) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION || in.readInt() != hashAlgorithm.getNumber()) {
+                return null;
+            }
+            if (!in.readUTF().equals(fingerprint)) {
+                return null;
+            }
+            if (in.readLong() != archiveData.length() || in.readLong() != archiveData.lastModified()) {
+                return null;
+            }
+            ArchiveEntryCache cache = new ArchiveEntryCache(hashAlgorithm, fingerprint);
+            int count = in.readInt();
+            for (int i = 0; i < count; ++i) {
+                String key = in.readUTF();
+                long offset = in.readLong();
+                int length = in.readInt();
+                int compressedSize = in.readInt();
+                byte[] hash = new byte[in.readShort()];
+                in.readFully(hash);
+                cache.put(key, new Entry(offset, length, compressedSize, hash));
+            }
+            return cache;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+}
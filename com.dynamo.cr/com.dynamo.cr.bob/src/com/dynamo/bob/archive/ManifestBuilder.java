@@ -14,8 +14,12 @@
 
 package com.dynamo.bob.archive;
 
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringWriter;
 import java.nio.ByteBuffer;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -31,10 +35,12 @@ import java.security.PublicKey;
 import java.security.spec.InvalidKeySpecException;
 import java.security.spec.PKCS8EncodedKeySpec;
 import java.security.spec.X509EncodedKeySpec;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 import java.util.TreeSet;
 
@@ -44,6 +50,9 @@ import javax.crypto.IllegalBlockSizeException;
 import javax.crypto.NoSuchPaddingException;
 import javax.security.auth.DestroyFailedException;
 
+import org.codehaus.jackson.JsonFactory;
+import org.codehaus.jackson.JsonGenerator;
+
 import com.dynamo.bob.pipeline.graph.ResourceNode;
 import com.dynamo.bob.pipeline.graph.ResourceGraph;
 import com.dynamo.bob.util.MurmurHash;
@@ -55,6 +64,7 @@ import com.dynamo.liveupdate.proto.Manifest.ManifestData;
 import com.dynamo.liveupdate.proto.Manifest.ManifestFile;
 import com.dynamo.liveupdate.proto.Manifest.ManifestHeader;
 import com.dynamo.liveupdate.proto.Manifest.ResourceEntry;
+import com.dynamo.liveupdate.proto.Manifest.ResourceEntryFlag;
 import com.dynamo.liveupdate.proto.Manifest.SignAlgorithm;
 import com.google.protobuf.ByteString;
 
@@ -287,7 +297,6 @@ public class ManifestBuilder {
     private boolean outputManifestHash = false;
     private byte[] manifestDataHash = null;
     private byte[] archiveIdentifier = new byte[ArchiveBuilder.MD5_HASH_DIGEST_BYTE_LENGTH];
-    private HashMap<ResourceNode, HashSet<ResourceNode>> pathToDependants = new HashMap<>();
     private HashMap<String, ResourceEntry> urlToResource = new HashMap<>();
     private Set<HashDigest> supportedEngineVersions = new HashSet<HashDigest>();
     private Set<ResourceEntry> resourceEntries = new TreeSet<ResourceEntry>(new Comparator<ResourceEntry>() {
@@ -400,55 +409,32 @@ public class ManifestBuilder {
 
     public void addResourceEntry(String url, byte[] data, int size, int compressed_size, int flags) throws IOException {
         try {
-            ResourceEntry.Builder builder = ResourceEntry.newBuilder();
-            builder.setUrl(url);
-            builder.setUrlHash(MurmurHash.hash64(url)); // sort on this
-            HashDigest hash = CryptographicOperations.createHashDigest(data, this.resourceHashAlgorithm);
-            builder.setHash(hash);
-            builder.setFlags(flags);
-            builder.setSize(size);
-            builder.setCompressedSize(compressed_size);
-            this.resourceEntries.add(builder.buildPartial());
+            byte[] hashDigest = CryptographicOperations.hash(data, this.resourceHashAlgorithm);
+            addResourceEntryWithHash(url, hashDigest, size, compressed_size, flags);
         } catch (NoSuchAlgorithmException exception) {
             throw new IOException("Unable to create Manifest, hashing algorithm is not supported!");
         }
     }
 
-    public HashSet<ResourceNode> getAllDependants(ResourceNode node) throws IOException {
-        /* Once a candidate has been found the children, the children, and so
-           on are added to the list of dependants. If a CollectionProxy is
-           found that resource itself is added to the list of dependants, but
-           it is seen as a leaf and the Collection that it points to is ignored.
-
-           The reason children of a CollectionProxy is ignored is that they are
-           not required to load the parent Collection. This allows us to
-           exclude an entire Collection that is loaded through a CollectionProxy
-           and thus create a partial archive that has to be updated (through
-           LiveUpdate) before that CollectionProxy can be loaded.
-        */
+    // Add a resource entry where the data has already been hashed using the resource hash algorithm
+    public void addResourceEntryWithHash(String url, byte[] hashDigest, int size, int compressed_size, int flags) {
+        ResourceEntry.Builder builder = ResourceEntry.newBuilder();
+        builder.setUrl(url);
+        builder.setUrlHash(MurmurHash.hash64(url)); // sort on this
+        builder.setHash(HashDigest.newBuilder().setData(ByteString.copyFrom(hashDigest)).build());
+        builder.setFlags(flags);
+        builder.setSize(size);
+        builder.setCompressedSize(compressed_size);
+        this.resourceEntries.add(builder.buildPartial());
+    }
 
+    public List<ResourceNode> getAllDependants(ResourceNode node) throws IOException {
         if (node == null) {
-            return new HashSet<ResourceNode>();
-        }
-
-        HashSet<ResourceNode> dependants = pathToDependants.get(node);
-        if (dependants != null) {
-            return dependants;
-        }
-
-        dependants = new HashSet<ResourceNode>();
-
-        for (ResourceNode child : node.getChildren()) {
-            dependants.add(child);
-
-            if (!child.checkType(ResourceNode.Type.CollectionProxy)) {
-                dependants.addAll(getAllDependants(child));
-            }
+            return new ArrayList<ResourceNode>();
         }
-
-        pathToDependants.put(node, dependants);
-
-        return dependants;
+        // computed and cached by the resource graph, the same reachability
+        // walk is used to find the resources referenced from the main bundle
+        return resourceGraph.getAllDependants(node);
     }
 
     public ManifestHeader buildManifestHeader() throws IOException {
@@ -503,7 +489,7 @@ public class ManifestBuilder {
             // We'll only store the dependencies for the collections in the excluded collection proxies
             if (node != null && node.checkType(ResourceNode.Type.ExcludedCollection))
             {
-                HashSet<ResourceNode> allCollectionDependants = this.getAllDependants(node);
+                List<ResourceNode> allCollectionDependants = this.getAllDependants(node);
                 for (ResourceNode dependant : allCollectionDependants) {
                     // Exclude resources referenced from the main bundle
                     if (dependant.isInMainBundle()) {
@@ -567,4 +553,84 @@ public class ManifestBuilder {
         return this.buildManifestFile().toByteArray();
     }
 
+    /**
+     * Get the hex digests of the resources excluded from the archive, i.e.
+     * the resources published in the LiveUpdate resource pack.
+     * @param manifestData The manifest data to get resources from
+     * @return Set of hex digests
+     */
+    public static Set<String> getExcludedResourceHexDigests(ManifestData manifestData) {
+        Set<String> hexDigests = new HashSet<String>();
+        for (ResourceEntry entry : manifestData.getResourcesList()) {
+            if ((entry.getFlags() & ResourceEntryFlag.EXCLUDED.getNumber()) != 0) {
+                hexDigests.add(CryptographicOperations.hexdigest(entry.getHash().getData().toByteArray()));
+            }
+        }
+        return hexDigests;
+    }
+
+    /**
+     * Read the hex digests of the excluded resources of a previously built manifest file
+     * @param manifestFilepath Path to the .dmanifest file
+     * @return Set of hex digests
+     */
+    public static Set<String> readExcludedResourceHexDigests(String manifestFilepath) throws IOException {
+        try (InputStream is = new BufferedInputStream(new FileInputStream(manifestFilepath))) {
+            ManifestFile manifestFile = ManifestFile.parseFrom(is);
+            return getExcludedResourceHexDigests(ManifestData.parseFrom(manifestFile.getData()));
+        }
+    }
+
+    /**
+     * Create a delta between the excluded resources of a previous manifest
+     * and the excluded resources added to this builder. Lists the resources
+     * that are new to the LiveUpdate resource pack, and the hex digests of
+     * the resources no longer used.
+     * @param previousHexDigests Hex digests of the previously excluded resources
+     * @return The delta in JSON format
+     */
+    public String buildResourcePackDelta(Set<String> previousHexDigests) throws IOException {
+        Set<String> currentHexDigests = new HashSet<String>();
+        StringWriter writer = new StringWriter();
+        JsonGenerator generator = (new JsonFactory()).createJsonGenerator(writer);
+        try {
+            generator.useDefaultPrettyPrinter();
+            generator.writeStartObject();
+
+            generator.writeFieldName("added");
+            generator.writeStartArray();
+            for (ResourceEntry entry : this.resourceEntries) {
+                if ((entry.getFlags() & ResourceEntryFlag.EXCLUDED.getNumber()) == 0) {
+                    continue;
+                }
+                String hexDigest = CryptographicOperations.hexdigest(entry.getHash().getData().toByteArray());
+                currentHexDigests.add(hexDigest);
+                if (previousHexDigests.contains(hexDigest)) {
+                    continue;
+                }
+                generator.writeStartObject();
+                generator.writeStringField("url", entry.getUrl());
+                generator.writeStringField("hexDigest", hexDigest);
+                generator.writeNumberField("size", entry.getSize());
+                generator.writeNumberField("compressedSize", entry.getCompressedSize());
+                generator.writeEndObject();
+            }
+            generator.writeEndArray();
+
+            generator.writeFieldName("removed");
+            generator.writeStartArray();
+            for (String hexDigest : new TreeSet<String>(previousHexDigests)) {
+                if (!currentHexDigests.contains(hexDigest)) {
+                    generator.writeString(hexDigest);
+                }
+            }
+            generator.writeEndArray();
+
+            generator.writeEndObject();
+        } finally {
+            generator.close();
+        }
+        return writer.toString();
+    }
+
 }
@@ -0,0 +1,237 @@
+// Copyright 2020-2024 The Defold Foundation
+// Copyright 2014-2020 King
+// Copyright 2009-2014 Ragnar Svensson, Christian Murray
+// Licensed under the Defold License version 1.0 (the "License"); you may not use
+// this file except in compliance with the License.
+//
+// You may obtain a copy of the License, together with FAQs at
+// https://www.defold.com/license
+//
+// Unless required by applicable law or agreed to in writing, software distributed
+// under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+// CONDITIONS OF ANY KIND, either express or implied. See the License for the
+// specific language governing permissions and limitations under the License.
+
+package com.dynamo.bob.archive;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4SafeDecompressor;
+
+/**
+ * Read only access to an archive index (.arci) and data (.arcd) file. Both
+ * files are memory mapped and entries are read in place when requested, so
+ * opening an archive doesn't depend on the number of entries. Entries are
+ * identified by their index in the hash sorted index, which can be found from
+ * a resource hash using find().
+ */
+public class MappedArchiveReader implements Closeable {
+
+    private static final int HEADER_SIZE = 48;
+    private static final int ENTRY_SIZE = 4 * 4;
+
+    private ByteBuffer index;
+    private ByteBuffer data;
+    private final int entryCount;
+    private final int entryOffset;
+    private final int hashOffset;
+    private final int hashLength;
+
+    public MappedArchiveReader(File archiveIndex, File archiveData) throws IOException {
+        this.index = map(archiveIndex);
+        this.data = map(archiveData);
+
+        if (index.limit() < HEADER_SIZE) {
+            throw new IOException(String.format("Archive index '%s' is truncated", archiveIndex));
+        }
+        int version = index.getInt(0);
+        if (version != ArchiveReader.VERSION) {
+            throw new IOException("Unsupported archive index version: " + version);
+        }
+        // 4 bytes pad and 8 bytes user data
+        this.entryCount = index.getInt(16);
+        this.entryOffset = index.getInt(20);
+        this.hashOffset = index.getInt(24);
+        this.hashLength = index.getInt(28);
+
+        if (hashLength > ArchiveBuilder.HASH_MAX_LENGTH
+            || (long) hashOffset + (long) entryCount * ArchiveBuilder.HASH_MAX_LENGTH > index.limit()
+            || (long) entryOffset + (long) entryCount * ENTRY_SIZE > index.limit()) {
+            throw new IOException(String.format("Archive index '%s' is corrupt", archiveIndex));
+        }
+    }
+
+    private static ByteBuffer map(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            // the mapping stays valid after the channel is closed
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    public int getEntryCount() {
+        return entryCount;
+    }
+
+    public int getHashLength() {
+        return hashLength;
+    }
+
+    private void checkIndex(int i) {
+        if (i < 0 || i >= entryCount) {
+            throw new IndexOutOfBoundsException(String.format("Entry %d out of range [0, %d)", i, entryCount));
+        }
+    }
+
+    private int compareHash(int i, byte[] hash) {
+        int offset = hashOffset + i * ArchiveBuilder.HASH_MAX_LENGTH;
+        for (int j = 0; j < hashLength; ++j) {
+            int a = index.get(offset + j) & 0xff;
+            int b = j < hash.length ? (hash[j] & 0xff) : 0;
+            if (a != b) {
+                return a - b;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Find an entry by binary searching the sorted hashes of the index
+     * @param hash the resource hash, at least getHashLength() bytes
+     * @return the entry index or -1 if not found
+     */
+    public int find(byte[] hash) {
+        int low = 0;
+        int high = entryCount - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = compareHash(mid, hash);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Get the hash of an entry
+     * @param i the entry index
+     * @return a read only view of the getHashLength() bytes of the hash
+     */
+    public ByteBuffer getHash(int i) {
+        checkIndex(i);
+        return slice(index, hashOffset + i * ArchiveBuilder.HASH_MAX_LENGTH, hashLength);
+    }
+
+    public int getResourceOffset(int i) {
+        checkIndex(i);
+        return index.getInt(entryOffset + i * ENTRY_SIZE);
+    }
+
+    public int getSize(int i) {
+        checkIndex(i);
+        return index.getInt(entryOffset + i * ENTRY_SIZE + 4);
+    }
+
+    public int getCompressedSize(int i) {
+        checkIndex(i);
+        return index.getInt(entryOffset + i * ENTRY_SIZE + 8);
+    }
+
+    public int getFlags(int i) {
+        checkIndex(i);
+        return index.getInt(entryOffset + i * ENTRY_SIZE + 12);
+    }
+
+    public boolean isCompressed(int i) {
+        return (getFlags(i) & ArchiveEntry.FLAG_COMPRESSED) != 0;
+    }
+
+    public boolean isEncrypted(int i) {
+        return (getFlags(i) & ArchiveEntry.FLAG_ENCRYPTED) != 0;
+    }
+
+    /**
+     * Get the payload of an entry as stored in the archive data
+     * @param i the entry index
+     * @return a read only view of the (compressed and/or encrypted) payload
+     */
+    public ByteBuffer getPayload(int i) throws IOException {
+        int length = isCompressed(i) ? getCompressedSize(i) : getSize(i);
+        int offset = getResourceOffset(i);
+        if (offset < 0 || length < 0 || (long) offset + length > data.limit()) {
+            throw new IOException(String.format("Entry %d is outside of the archive data", i));
+        }
+        return slice(data, offset, length);
+    }
+
+    /**
+     * Get the content of an entry, decrypted and decompressed. Only the
+     * default resource encryption is supported.
+     * @param i the entry index
+     * @return the resource content
+     */
+    public byte[] getContent(int i) throws IOException {
+        ByteBuffer payload = getPayload(i);
+        if (isEncrypted(i)) {
+            byte[] encrypted = new byte[payload.remaining()];
+            payload.get(encrypted);
+            payload = ByteBuffer.wrap(ResourceEncryption.decrypt(encrypted));
+        }
+        if (isCompressed(i)) {
+            int size = getSize(i);
+            LZ4SafeDecompressor decompressor = LZ4Factory.fastestInstance().safeDecompressor();
+            byte[] content = new byte[size];
+            int decompressedSize = decompressor.decompress(payload, payload.position(), payload.remaining(), ByteBuffer.wrap(content), 0, size);
+            if (decompressedSize != size) {
+                throw new IOException(String.format("Entry %d decompressed to %d bytes, expected %d", i, decompressedSize, size));
+            }
+            return content;
+        }
+        byte[] content = new byte[payload.remaining()];
+        payload.get(content);
+        return content;
+    }
+
+    /**
+     * Create an entry with the index information of an entry
+     * @param i the entry index
+     * @return the entry
+     */
+    public ArchiveEntry getEntry(int i) throws IOException {
+        ArchiveEntry entry = new ArchiveEntry("");
+        byte[] hash = new byte[ArchiveBuilder.HASH_MAX_LENGTH];
+        getHash(i).get(hash, 0, hashLength);
+        entry.setHash(hash);
+        entry.setHexDigest(ManifestBuilder.CryptographicOperations.hexdigest(Arrays.copyOf(hash, hashLength)));
+        entry.setResourceOffset(getResourceOffset(i));
+        entry.setSize(getSize(i));
+        entry.setCompressedSize(getCompressedSize(i));
+        entry.setFlags(getFlags(i));
+        return entry;
+    }
+
+    private static ByteBuffer slice(ByteBuffer buffer, int offset, int length) {
+        ByteBuffer view = buffer.duplicate();
+        view.limit(offset + length);
+        view.position(offset);
+        return view.slice().asReadOnlyBuffer();
+    }
+
+    @Override
+    public void close() {
+        // mappings are released when garbage collected
+        index = null;
+        data = null;
+    }
+}
@@ -28,6 +28,10 @@ public class ResourceEncryption {
 		public byte[] encrypt(byte[] resource) throws Exception {
 			return Crypt.encryptCTR(resource, KEY);
 		}
+
+		public byte[] decrypt(byte[] resource) {
+			return Crypt.decryptCTR(resource, KEY);
+		}
 	}
 
 	private static ResourceEncryptionPlugin encryptionPlugin;
@@ -54,4 +58,39 @@ public class ResourceEncryption {
 			throw new CompileExceptionError("Unable to encrypt resource", e);
 		}
 	}
+
+	/**
+	 * Get a fingerprint of the encryption in use. The fingerprint changes if
+	 * the encryption plugin or its key changes, since it contains a fixed
+	 * block of data encrypted by the plugin.
+	 * @return Fingerprint of the encryption
+	 */
+	public static String getFingerprint() throws CompileExceptionError {
+		try {
+			ResourceEncryptionPlugin encryptionPlugin = PluginScanner.getOrCreatePlugin("com.dynamo.bob.archive", ResourceEncryptionPlugin.class);
+			encryptionPlugin = encryptionPlugin == null ? defaultEncryption : encryptionPlugin;
+
+			byte[] probe = new byte[32];
+			for (int i = 0; i < probe.length; ++i) {
+				probe[i] = (byte)i;
+			}
+			return encryptionPlugin.getClass().getName() + ":" + ManifestBuilder.CryptographicOperations.hexdigest(encryptionPlugin.encrypt(probe));
+		}
+		catch (CompileExceptionError e) {
+			throw e;
+		}
+		catch (Exception e) {
+			throw new CompileExceptionError("Unable to create the resource encryption fingerprint", e);
+		}
+	}
+
+	/**
+	 * Decrypt a resource encrypted with the default encryption. Resources
+	 * encrypted by a custom encryption plugin can't be decrypted.
+	 * @param resource Bytes of encrypted resource data
+	 * @return Bytes of decrypted resource data
+	 */
+	public static byte[] decrypt(byte[] resource) {
+		return defaultEncryption.decrypt(resource);
+	}
 }
\ No newline at end of file
@@ -16,21 +16,21 @@ package com.dynamo.bob.archive.publisher;
 
 import java.io.File;
 import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipOutputStream;
 
 import org.apache.commons.io.IOUtils;
 
 import com.dynamo.bob.CompileExceptionError;
+import com.dynamo.bob.Project;
 import com.dynamo.bob.fs.IResource;
-import com.dynamo.bob.util.FileUtil;
+import com.dynamo.bob.util.ParallelZipWriter;
 
 public class ZipPublisher extends Publisher {
 
@@ -59,21 +59,30 @@ public class ZipPublisher extends Publisher {
                 outputName = this.filename;
             }
 
-            FileOutputStream resourcePackOutputStream = new FileOutputStream(this.resourcePackZip);
-            ZipOutputStream zipOutputStream = new ZipOutputStream(resourcePackOutputStream);
+            // sort the entries to get the same zip file for the same resources
+            List<File> files = new ArrayList<File>(this.getEntries().keySet());
+            Collections.sort(files, new Comparator<File>() {
+                public int compare(File a, File b) {
+                    return a.getName().compareTo(b.getName());
+                }
+            });
+
+            ParallelZipWriter zipWriter = null;
             try {
-                for (File fhandle : this.getEntries().keySet()) {
-                    ZipEntry currentEntry = new ZipEntry(fhandle.getName());
-                    zipOutputStream.putNextEntry(currentEntry);
-                    FileUtil.writeToStream(fhandle, zipOutputStream);
-                    zipOutputStream.closeEntry();
+                zipWriter = new ParallelZipWriter(this.resourcePackZip, Project.getDefaultMaxCpuThreads());
+                for (File fhandle : files) {
+                    // the resources are typically already compressed, if they
+                    // don't get any smaller when deflated they are stored
+                    zipWriter.putFile(fhandle.getName(), fhandle);
                 }
-            } catch (FileNotFoundException exception) {
+                zipWriter.close();
+                zipWriter = null;
+            } catch (FileNotFoundException | NoSuchFileException exception) {
                 throw new CompileExceptionError("Unable to find required file for liveupdate resources: " + exception.getMessage(), exception);
             } catch (IOException exception) {
                 throw new CompileExceptionError("Unable to write to zip archive for liveupdate resources: " + exception.getMessage(), exception);
             } finally {
-                IOUtils.closeQuietly(zipOutputStream);
+                IOUtils.closeQuietly(zipWriter);
             }
 
             File exportFilehandle = new File(this.getPublisherSettings().getZipFilepath(), outputName);
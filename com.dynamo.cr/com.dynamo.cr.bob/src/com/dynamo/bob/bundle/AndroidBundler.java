@@ -600,7 +600,7 @@ public class AndroidBundler implements IBundler {
                     File source = new File(buildDir, name);
                     File dest = new File(assetsDir, name);
                     logger.info("Copying asset " + source + " to " + dest);
-                    FileUtils.copyFile(source, dest);
+                    BundleHelper.copyArchiveFile(source, dest);
                     BundleHelper.throwIfCanceled(canceled);
                 }
             }
@@ -664,7 +664,7 @@ public class AndroidBundler implements IBundler {
             }
             baseZip.createNewFile();
             TimeProfiler.start("Create base zip");
-            ZipUtil.zipDirRecursive(baseDir, baseZip, canceled);
+            ZipUtil.zipDirRecursive(baseDir, baseZip, project.getMaxCpuThreads(), canceled);
             TimeProfiler.stop();
             BundleHelper.throwIfCanceled(canceled);
             return baseZip;
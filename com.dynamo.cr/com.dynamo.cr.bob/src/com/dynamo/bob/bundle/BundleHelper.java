@@ -132,6 +132,22 @@ public class BundleHelper {
         return ARCHIVE_FILE_NAMES;
     }
 
+    /**
+     * Copy an archive file from the build directory into a bundle. The archive
+     * index and data are always replaced and never written in place by the
+     * build, so they are hard linked when possible instead of copied.
+     * @param source the archive file in the build directory
+     * @param target the file in the bundle
+     */
+    public static void copyArchiveFile(File source, File target) throws IOException {
+        String name = source.getName();
+        if (name.equals("game.arci") || name.equals("game.arcd")) {
+            FileUtil.linkOrCopyFile(source, target);
+        } else {
+            FileUtils.copyFile(source, target);
+        }
+    }
+
     public static String projectNameToBinaryName(String projectName) {
         String projectNameNoAccents = StringUtils.stripAccents(projectName);
         String output = projectNameNoAccents.replaceAll("[^a-zA-Z0-9_]", "");
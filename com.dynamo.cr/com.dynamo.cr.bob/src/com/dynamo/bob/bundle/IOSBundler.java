@@ -372,7 +372,7 @@ public class IOSBundler implements IBundler {
         if (BundleHelper.isArchiveIncluded(project)) {
             // Copy archive and game.projectc
             for (String name : BundleHelper.getArchiveFilenames(buildDir)) {
-                FileUtils.copyFile(new File(buildDir, name), new File(appDir, name));
+                BundleHelper.copyArchiveFile(new File(buildDir, name), new File(appDir, name));
             }
         }
 
@@ -135,7 +135,7 @@ public class MacOSBundler implements IBundler {
         if (BundleHelper.isArchiveIncluded(project)) {
             // Copy archive and game.projectc
             for (String name : BundleHelper.getArchiveFilenames(buildDir)) {
-                FileUtils.copyFile(new File(buildDir, name), new File(resourcesDir, name));
+                BundleHelper.copyArchiveFile(new File(buildDir, name), new File(resourcesDir, name));
             }
         }
 
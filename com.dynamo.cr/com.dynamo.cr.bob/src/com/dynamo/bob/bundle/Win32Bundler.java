@@ -95,7 +95,7 @@ public class Win32Bundler implements IBundler {
         if (BundleHelper.isArchiveIncluded(project)) {
             // Copy archive and game.projectc
             for (String name : BundleHelper.getArchiveFilenames(buildDir)) {
-                FileUtils.copyFile(new File(buildDir, name), new File(appDir, name));
+                BundleHelper.copyArchiveFile(new File(buildDir, name), new File(appDir, name));
             }
         }
 
@@ -16,15 +16,10 @@ package com.dynamo.bob.bundle;
 
 import java.io.File;
 import java.io.IOException;
-import java.io.FileOutputStream;
+import java.util.Arrays;
 
-import org.apache.commons.io.IOUtils;
-
-import java.util.zip.CRC32;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipOutputStream;
-
-import com.dynamo.bob.util.FileUtil;
+import com.dynamo.bob.Project;
+import com.dynamo.bob.util.ParallelZipWriter;
 
 
 public class ZipUtil {
@@ -43,32 +38,20 @@ public class ZipUtil {
 		return strippedPath;
 	}
 
-	private static void zipFile(ZipOutputStream zipOut, File baseDir, File file) throws IOException {
+	private static void zipFile(ParallelZipWriter zipOut, File baseDir, File file) throws IOException {
 		final String filePath = stripBaseDir(baseDir, file).replace('\\', '/');
-		final long fileSize = file.length();
-
-		ZipEntry ze = new ZipEntry(filePath);
-		ze.setSize(fileSize);
 
 		// Some files need to be STORED instead of DEFLATED to
 		// get "correct" memory mapping at runtime.
 		boolean isAsset = filePath.startsWith("assets");
-		if (isAsset) {
-			// Set up an uncompressed file, unfortunately need to calculate crc32 and other data for this to work.
-			// https://www.infoworld.com/article/2071337/creating-zip-and-jar-files.html
-			CRC32 crc = FileUtil.calculateCrc32(file);
-			ze.setCrc(crc.getValue());
-			ze.setCompressedSize(fileSize);
-		}
-		ze.setMethod(isAsset ? ZipEntry.STORED : ZipEntry.DEFLATED);
-
-		zipOut.putNextEntry(ze);
-		FileUtil.writeToStream(file, zipOut);
-		zipOut.closeEntry();
+		zipOut.putFile(filePath, file, isAsset || ParallelZipWriter.isCompressedFile(filePath));
 	}
 
-	private static void zipDir(ZipOutputStream zipOut, File baseDir, File dir, ICanceled canceled) throws IOException {
-		for (File f : dir.listFiles()) {
+	private static void zipDir(ParallelZipWriter zipOut, File baseDir, File dir, ICanceled canceled) throws IOException {
+		File[] files = dir.listFiles();
+		// sort to get the same zip file regardless of file system order
+		Arrays.sort(files);
+		for (File f : files) {
 			if (f.isDirectory()) {
 				zipDir(zipOut, baseDir, f, canceled);
 			}
@@ -83,13 +66,16 @@ public class ZipUtil {
 	* Zip a all files and folders (recursively) in a dir
 	*/
 	public static void zipDirRecursive(File inDir, File outFile, ICanceled canceled) throws IOException {
-		ZipOutputStream zipOut = null;
-		try {
-			zipOut = new ZipOutputStream(new FileOutputStream(outFile));
+		zipDirRecursive(inDir, outFile, Project.getDefaultMaxCpuThreads(), canceled);
+	}
+
+	/**
+	* Zip a all files and folders (recursively) in a dir, deflating the files
+	* on up to maxThreads threads
+	*/
+	public static void zipDirRecursive(File inDir, File outFile, int maxThreads, ICanceled canceled) throws IOException {
+		try (ParallelZipWriter zipOut = new ParallelZipWriter(outFile, maxThreads)) {
 			zipDir(zipOut, inDir, inDir, canceled);
 		}
-		finally {
-			IOUtils.closeQuietly(zipOut);
-		}
 	}
 }
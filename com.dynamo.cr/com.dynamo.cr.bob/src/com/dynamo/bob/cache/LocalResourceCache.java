@@ -0,0 +1,360 @@
+// Copyright 2020-2024 The Defold Foundation
+// Copyright 2014-2020 King
+// Copyright 2009-2014 Ragnar Svensson, Christian Murray
+// Licensed under the Defold License version 1.0 (the "License"); you may not use
+// this file except in compliance with the License.
+//
+// You may obtain a copy of the License, together with FAQs at
+// https://www.defold.com/license
+//
+// Unless required by applicable law or agreed to in writing, software distributed
+// under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+// CONDITIONS OF ANY KIND, either express or implied. See the License for the
+// specific language governing permissions and limitations under the License.
+
+
+package com.dynamo.bob.cache;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.dynamo.bob.logging.Logger;
+
+/**
+ * Local part of the resource cache. Entries are stored one file per key in
+ * subdirectories named after the first two characters of the key. Files are
+ * written to a temporary file and renamed into place so that several
+ * processes can share the same cache directory.
+ *
+ * The access time and size of all entries is tracked in an index file. When
+ * a size budget is set the least recently used entries are evicted when the
+ * index is flushed.
+ */
+public class LocalResourceCache {
+
+	private static Logger logger = Logger.getLogger(LocalResourceCache.class.getName());
+
+	private static final String INDEX_FILE = "index";
+	private static final String LOCK_FILE = "index.lock";
+	private static final int INDEX_MAGIC = 0x44524358;
+	private static final int INDEX_VERSION = 1;
+
+	// evict down to this fraction of the budget to avoid evicting on every flush
+	private static final double EVICTION_TARGET = 0.9;
+
+	private static class Entry {
+		final long size;
+		volatile long lastAccess;
+
+		Entry(long size, long lastAccess) {
+			this.size = size;
+			this.lastAccess = lastAccess;
+		}
+	}
+
+	private final Path dir;
+	private final long maxSize;
+	private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+	private final AtomicLong totalSize = new AtomicLong();
+	private volatile boolean dirty = false;
+
+	/**
+	 * Create a local cache in a directory. The directory is created if needed.
+	 * @param dir The cache directory
+	 * @param maxSize Size budget in bytes. 0 for an unbounded cache
+	 */
+	public LocalResourceCache(File dir, long maxSize) throws IOException {
+		this.dir = dir.toPath();
+		this.maxSize = maxSize;
+		Files.createDirectories(this.dir);
+		try {
+			entries.putAll(readIndex());
+		} catch (IOException e) {
+			logger.fine("Unable to read the local cache index, rebuilding it");
+			entries.putAll(scan());
+			dirty = true;
+		}
+		for (Entry e : entries.values()) {
+			totalSize.addAndGet(e.size);
+		}
+	}
+
+	/**
+	 * Get the total size of all entries in the cache
+	 * @return size in bytes
+	 */
+	public long getSize() {
+		return totalSize.get();
+	}
+
+	/**
+	 * Get the file an entry is stored in
+	 * @param key The key of the entry
+	 * @return The file of the entry. The file may not exist.
+	 */
+	public File getFile(String key) {
+		return pathFromKey(key).toFile();
+	}
+
+	private Path pathFromKey(String key) {
+		String shard = key.length() >= 2 ? key.substring(0, 2) : "00";
+		return dir.resolve(shard).resolve(key);
+	}
+
+	// entries written before the cache was sharded are moved into their shard
+	private boolean migrateLegacyEntry(String key, Path path) {
+		Path legacy = dir.resolve(key);
+		if (!Files.isRegularFile(legacy)) {
+			return false;
+		}
+		try {
+			Files.createDirectories(path.getParent());
+			Files.move(legacy, path, StandardCopyOption.ATOMIC_MOVE);
+			return true;
+		} catch (IOException e) {
+			return Files.exists(path);
+		}
+	}
+
+	private void touch(String key, long size) {
+		long now = System.currentTimeMillis();
+		Entry e = entries.get(key);
+		if (e != null) {
+			e.lastAccess = now;
+		} else if (entries.putIfAbsent(key, new Entry(size, now)) == null) {
+			// written by another process or before the index was used
+			totalSize.addAndGet(size);
+		}
+		dirty = true;
+	}
+
+	/**
+	 * Check if the cache contains an entry
+	 * @param key The key of the entry
+	 * @return true if the entry exists
+	 */
+	public boolean contains(String key) {
+		Path path = pathFromKey(key);
+		return Files.exists(path) || migrateLegacyEntry(key, path);
+	}
+
+	/**
+	 * Get the data of an entry and mark it as recently used
+	 * @param key The key of the entry
+	 * @return The data or null if no entry exists
+	 */
+	public byte[] get(String key) throws IOException {
+		Path path = pathFromKey(key);
+		if (!Files.exists(path) && !migrateLegacyEntry(key, path)) {
+			return null;
+		}
+		byte[] data;
+		try {
+			data = Files.readAllBytes(path);
+		} catch (NoSuchFileException e) {
+			// evicted by another process
+			return null;
+		}
+		touch(key, data.length);
+		return data;
+	}
+
+	/**
+	 * Create a temporary file which can later be committed as an entry using
+	 * {@link LocalResourceCache#commit(String, File)}
+	 * @param key The key of the entry the file will be committed as
+	 * @return A new temporary file in the cache directory
+	 */
+	public File createTempFile(String key) throws IOException {
+		Path path = pathFromKey(key);
+		Files.createDirectories(path.getParent());
+		return Files.createTempFile(path.getParent(), key, ".tmp").toFile();
+	}
+
+	/**
+	 * Atomically move a temporary file into place as an entry. If the entry
+	 * already exists the temporary file is deleted.
+	 * @param key The key of the entry
+	 * @param tmp The file created by {@link LocalResourceCache#createTempFile(String)}
+	 */
+	public void commit(String key, File tmp) throws IOException {
+		Path path = pathFromKey(key);
+		long size = tmp.length();
+		try {
+			try {
+				Files.move(tmp.toPath(), path, StandardCopyOption.ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(tmp.toPath(), path);
+			}
+		} catch (FileAlreadyExistsException e) {
+			// another process was quicker, the content is the same
+		} finally {
+			Files.deleteIfExists(tmp.toPath());
+		}
+		touch(key, size);
+	}
+
+	/**
+	 * Put data in the cache. Nothing happens if the entry already exists.
+	 * @param key The key of the entry
+	 * @param data The data to store
+	 */
+	public void put(String key, byte[] data) throws IOException {
+		if (contains(key)) {
+			return;
+		}
+		File tmp = createTempFile(key);
+		try {
+			Files.write(tmp.toPath(), data);
+		} catch (IOException e) {
+			Files.deleteIfExists(tmp.toPath());
+			throw e;
+		}
+		commit(key, tmp);
+	}
+
+	private Map<String, Entry> readIndex() throws IOException {
+		Map<String, Entry> result = new HashMap<>();
+		Path index = dir.resolve(INDEX_FILE);
+		if (!Files.exists(index)) {
+			throw new NoSuchFileException(index.toString());
+		}
+		try (DataInputStream is = new DataInputStream(new BufferedInputStream(Files.newInputStream(index)))) {
+			if (is.readInt() != INDEX_MAGIC || is.readInt() != INDEX_VERSION) {
+				throw new IOException("Unknown local cache index format");
+			}
+			int count = is.readInt();
+			for (int i = 0; i < count; ++i) {
+				String key = is.readUTF();
+				long size = is.readLong();
+				long lastAccess = is.readLong();
+				result.put(key, new Entry(size, lastAccess));
+			}
+		}
+		return result;
+	}
+
+	private void writeIndex(Map<String, Entry> index) throws IOException {
+		Path tmp = Files.createTempFile(dir, INDEX_FILE, ".tmp");
+		try {
+			try (DataOutputStream os = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+				os.writeInt(INDEX_MAGIC);
+				os.writeInt(INDEX_VERSION);
+				os.writeInt(index.size());
+				for (Map.Entry<String, Entry> e : index.entrySet()) {
+					os.writeUTF(e.getKey());
+					os.writeLong(e.getValue().size);
+					os.writeLong(e.getValue().lastAccess);
+				}
+			}
+			try {
+				Files.move(tmp, dir.resolve(INDEX_FILE), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(tmp, dir.resolve(INDEX_FILE), StandardCopyOption.REPLACE_EXISTING);
+			}
+		} finally {
+			Files.deleteIfExists(tmp);
+		}
+	}
+
+	// rebuild the index from the files in the cache directory
+	private Map<String, Entry> scan() throws IOException {
+		Map<String, Entry> result = new HashMap<>();
+		try (DirectoryStream<Path> shards = Files.newDirectoryStream(dir)) {
+			for (Path shard : shards) {
+				if (!Files.isDirectory(shard)) {
+					continue;
+				}
+				try (DirectoryStream<Path> files = Files.newDirectoryStream(shard)) {
+					for (Path file : files) {
+						String name = file.getFileName().toString();
+						if (name.endsWith(".tmp")) {
+							continue;
+						}
+						result.put(name, new Entry(Files.size(file), Files.getLastModifiedTime(file).toMillis()));
+					}
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Merge the entries with the index on disk, evict the least recently used
+	 * entries if the cache is larger than its budget and write the index.
+	 * The index is locked while this happens so that several processes can
+	 * flush the same cache.
+	 */
+	public synchronized void flush() throws IOException {
+		if (!dirty && (maxSize <= 0 || totalSize.get() <= maxSize)) {
+			return;
+		}
+		try (FileChannel channel = FileChannel.open(dir.resolve(LOCK_FILE), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+			 FileLock lock = channel.lock()) {
+			Map<String, Entry> index;
+			try {
+				index = readIndex();
+			} catch (IOException e) {
+				index = new HashMap<>();
+			}
+
+			// entries only known by this process must still exist, they may
+			// have been evicted by another process
+			for (Map.Entry<String, Entry> e : entries.entrySet()) {
+				Entry onDisk = index.get(e.getKey());
+				if (onDisk != null) {
+					onDisk.lastAccess = Math.max(onDisk.lastAccess, e.getValue().lastAccess);
+				} else if (Files.exists(pathFromKey(e.getKey()))) {
+					index.put(e.getKey(), e.getValue());
+				}
+			}
+
+			long size = 0;
+			for (Entry e : index.values()) {
+				size += e.size;
+			}
+
+			if (maxSize > 0 && size > maxSize) {
+				List<Map.Entry<String, Entry>> lru = new ArrayList<>(index.entrySet());
+				lru.sort((a, b) -> Long.compare(a.getValue().lastAccess, b.getValue().lastAccess));
+				long target = (long) (maxSize * EVICTION_TARGET);
+				for (Map.Entry<String, Entry> e : lru) {
+					if (size <= target) {
+						break;
+					}
+					Files.deleteIfExists(pathFromKey(e.getKey()));
+					index.remove(e.getKey());
+					size -= e.getValue().size;
+				}
+				logger.fine("Evicted entries from the local cache, size is now %d bytes", size);
+			}
+
+			writeIndex(index);
+
+			entries.clear();
+			entries.putAll(index);
+			totalSize.set(size);
+			dirty = false;
+		}
+	}
+}
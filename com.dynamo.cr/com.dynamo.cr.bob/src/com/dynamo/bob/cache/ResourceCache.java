@@ -18,7 +18,20 @@ import java.io.File;
 import java.io.IOException;
 import java.net.URL;
 import java.net.MalformedURLException;
-import java.nio.file.Files;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import com.dynamo.bob.util.HttpUtil;
 import com.dynamo.bob.logging.Logger;
@@ -27,79 +40,181 @@ public class ResourceCache {
 
 	private static Logger logger = Logger.getLogger(ResourceCache.class.getName());
 
-	private String localCacheDir;
+	// number of concurrent requests to the remote cache
+	private static final int REMOTE_THREADS = 8;
+
+	// number of uploads that may be queued before put() blocks and uploads inline
+	private static final int UPLOAD_QUEUE_SIZE = 256;
 
 	private String remoteCacheUrl;
 
+	private LocalResourceCache localCache;
+
 	private HttpUtil http = new HttpUtil();
 
 	private boolean enabled = false;
 
+	// lookups in the remote cache, started or completed. The future returns
+	// true if the resource existed and has been downloaded to the local cache
+	private Map<String, Future<Boolean>> remoteFetches = new ConcurrentHashMap<>();
+
+	private volatile ExecutorService fetchExecutor;
+
+	private volatile ExecutorService uploadExecutor;
+
 	public ResourceCache() {}
 
 	public void init(String localCacheDir, String remoteCacheUrl) {
+		init(localCacheDir, remoteCacheUrl, 0);
+	}
+
+	/**
+	 * Initialise the resource cache
+	 * @param localCacheDir Path to the local cache or null to disable the cache
+	 * @param remoteCacheUrl URL to the remote cache or null
+	 * @param localCacheMaxSize Size budget of the local cache in bytes. 0 for an unbounded cache
+	 */
+	public void init(String localCacheDir, String remoteCacheUrl, long localCacheMaxSize) {
 		logger.fine("Initialising resource cache with local cache dir '%s' and remote '%s'", localCacheDir, remoteCacheUrl);
-		this.localCacheDir = localCacheDir;
+		shutdownRemote();
 		this.remoteCacheUrl = remoteCacheUrl;
-		this.enabled = localCacheDir != null;
+		this.localCache = null;
 		if (localCacheDir != null) {
-			File f = new File(localCacheDir);
-			if (!f.exists()) {
-				f.mkdirs();
+			try {
+				this.localCache = new LocalResourceCache(new File(localCacheDir), localCacheMaxSize);
+			} catch (IOException e) {
+				logger.warning("Unable to create the local resource cache in '%s': %s", localCacheDir, e.getMessage());
 			}
 		}
+		this.enabled = localCache != null;
+		if (isRemoteCacheEnabled()) {
+			fetchExecutor = Executors.newFixedThreadPool(REMOTE_THREADS, createThreadFactory("resource-cache-fetch"));
+			// when the queue is full the thread calling put() does the upload
+			uploadExecutor = new ThreadPoolExecutor(REMOTE_THREADS, REMOTE_THREADS, 0L, TimeUnit.MILLISECONDS,
+					new ArrayBlockingQueue<Runnable>(UPLOAD_QUEUE_SIZE), createThreadFactory("resource-cache-upload"),
+					new ThreadPoolExecutor.CallerRunsPolicy());
+		}
 	}
 
-	private File fileFromKey(String key) {
-		return new File(localCacheDir, key);
+	private static ThreadFactory createThreadFactory(String name) {
+		return r -> {
+			Thread thread = new Thread(r, name);
+			thread.setDaemon(true);
+			return thread;
+		};
 	}
 
-	private URL urlFromFile(File file) throws MalformedURLException {
-		return new URL(remoteCacheUrl + "/" + file.getName());
+	private URL urlFromKey(String key) throws MalformedURLException {
+		return new URL(remoteCacheUrl + "/" + key);
 	}
 
-	private void saveToLocalCache(File file, byte[] data) throws IOException {
-		logger.fine("Resource '%s' saved to the local cache", file);
-		Files.write(file.toPath(), data);
+	private void uploadToRemoteCache(String key) {
+		File file = localCache.getFile(key);
+		if (!file.exists()) {
+			return;
+		}
+		try {
+			URL url = urlFromKey(key);
+			if (isKnownMissing(key) || !http.exists(url)) {
+				http.uploadFile(url, file);
+				logger.fine("Resource '%s' uploaded to the remote cache", file);
+			}
+			else {
+				logger.fine("Resource '%s' already exists in the remote cache", file);
+			}
+		} catch (Exception e) {
+			// a failed upload only means that the resource isn't shared
+			logger.warning("Unable to upload resource '%s' to the remote cache: %s", key, e.getMessage());
+		}
 	}
 
-	private byte[] loadFromLocalCache(File file) throws IOException {
-		if (file.exists()) {
-			logger.fine("Resource '%s' loaded from the local cache", file);
-			return Files.readAllBytes(file.toPath());
+	// fetch a resource straight away without asking if it exists first
+	private boolean downloadFromRemoteCache(String key) throws IOException {
+		File tmp = localCache.createTempFile(key);
+		boolean found;
+		try {
+			found = http.downloadToFileIfExists(urlFromKey(key), tmp);
+		} catch (RuntimeException e) {
+			tmp.delete();
+			throw e;
 		}
-		return null;
+		if (!found) {
+			tmp.delete();
+			logger.fine("Resource '%s' does not exist in the remote cache", key);
+			return false;
+		}
+		localCache.commit(key, tmp);
+		logger.fine("Resource '%s' downloaded from the remote cache", key);
+		return true;
 	}
 
-	private void uploadToRemoteCache(File file) throws MalformedURLException {
-		if (remoteCacheUrl == null) {
-			return;
+	private Future<Boolean> fetchFromRemoteCache(String key) {
+		Future<Boolean> fetch = remoteFetches.get(key);
+		if (fetch == null) {
+			FutureTask<Boolean> task = new FutureTask<>(() -> downloadFromRemoteCache(key));
+			fetch = remoteFetches.putIfAbsent(key, task);
+			if (fetch == null) {
+				fetch = task;
+				ExecutorService executor = fetchExecutor;
+				if (executor != null) {
+					executor.execute(task);
+				}
+				else {
+					task.run();
+				}
+			}
 		}
-		if (!file.exists()) {
-			return;
+		return fetch;
+	}
+
+	private boolean awaitRemoteFetch(String key) throws IOException {
+		try {
+			return fetchFromRemoteCache(key).get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException(e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			}
+			throw new IOException(cause);
 		}
-		URL url = urlFromFile(file);
-		if (!http.exists(url)) {
-			http.uploadFile(url, file);
-			logger.fine("Resource '%s' uploaded to the remote cache", file);
+	}
+
+	// true if a lookup has already shown that the remote cache doesn't have the resource
+	private boolean isKnownMissing(String key) {
+		Future<Boolean> fetch = remoteFetches.get(key);
+		if (fetch == null || !fetch.isDone()) {
+			return false;
 		}
-		else {
-			logger.fine("Resource '%s' already exists in the remote cache", file);
+		try {
+			return !fetch.get();
+		} catch (InterruptedException | ExecutionException e) {
+			return false;
 		}
 	}
 
-	private void downloadFromRemoteCache(File file) throws MalformedURLException {
-		if (remoteCacheUrl == null) {
-			return;
-		}
-		URL url = urlFromFile(file);
-		if (http.exists(url)) {
-			http.downloadToFile(url, file);
-			logger.fine("Resource '%s' downloaded from the remote cache", file);
+	private void shutdownRemote() {
+		ExecutorService uploads = uploadExecutor;
+		uploadExecutor = null;
+		if (uploads != null) {
+			uploads.shutdown();
+			try {
+				uploads.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
 		}
-		else {
-			logger.fine("Resource '%s' does not exist in the remote cache", file);
+		ExecutorService fetches = fetchExecutor;
+		fetchExecutor = null;
+		if (fetches != null) {
+			fetches.shutdownNow();
 		}
+		remoteFetches.clear();
 	}
 
 	/**
@@ -108,7 +223,15 @@ public class ResourceCache {
 	 * @return true if resource cache is enabled
 	 */
 	public boolean isCacheEnabled() {
-		return localCacheDir != null;
+		return enabled;
+	}
+
+	/**
+	 * Check if the resource cache uses a remote cache
+	 * @return true if a remote cache is used
+	 */
+	public boolean isRemoteCacheEnabled() {
+		return enabled && remoteCacheUrl != null;
 	}
 
 	/**
@@ -124,7 +247,8 @@ public class ResourceCache {
 	}
 
 	/**
-	 * Put data in the resource cache
+	 * Put data in the resource cache. The data is written to the local cache
+	 * immediately and uploaded to the remote cache in the background.
 	 * @param key Key to associate data with
 	 * @param data The data to store
 	 */
@@ -132,15 +256,22 @@ public class ResourceCache {
 		if (!enabled) {
 			return;
 		}
-		File file = fileFromKey(key);
-		if (file.exists()) {
+		if (localCache.contains(key)) {
 			// file is already in the local cache
 			return;
 		}
 
-		logger.fine("Caching resource '%s'", file);
-		saveToLocalCache(file, data);
-		uploadToRemoteCache(file);
+		logger.fine("Caching resource '%s'", key);
+		localCache.put(key, data);
+		if (isRemoteCacheEnabled()) {
+			ExecutorService executor = uploadExecutor;
+			if (executor != null) {
+				executor.execute(() -> uploadToRemoteCache(key));
+			}
+			else {
+				uploadToRemoteCache(key);
+			}
+		}
 	}
 
 	/**
@@ -152,12 +283,32 @@ public class ResourceCache {
 		if (!enabled) {
 			return null;
 		}
-		File file = fileFromKey(key);
-		if (!file.exists()) {
-			downloadFromRemoteCache(file);
+		if (!localCache.contains(key) && isRemoteCacheEnabled()) {
+			awaitRemoteFetch(key);
 		}
 
-		return loadFromLocalCache(file);
+		byte[] data = localCache.get(key);
+		if (data != null) {
+			logger.fine("Resource '%s' loaded from the local cache", key);
+		}
+		return data;
+	}
+
+	/**
+	 * Start downloading resources from the remote cache to the local cache in
+	 * the background. Resources which are already in the local cache or don't
+	 * exist in the remote cache are ignored.
+	 * @param keys The keys of the resources which will be needed
+	 */
+	public void prefetch(Collection<String> keys) {
+		if (!isRemoteCacheEnabled()) {
+			return;
+		}
+		for (String key : keys) {
+			if (!localCache.contains(key)) {
+				fetchFromRemoteCache(key);
+			}
+		}
 	}
 
 	/**
@@ -169,7 +320,39 @@ public class ResourceCache {
 		if (!enabled) {
 			return false;
 		}
-		File f = fileFromKey(key);
-		return f.exists() || (remoteCacheUrl != null && http.exists(urlFromFile(f)));
+		return localCache.contains(key) || (isRemoteCacheEnabled() && awaitRemoteFetch(key));
+	}
+
+	/**
+	 * Check which of a number of resources the cache contains. Resources that
+	 * are only in the remote cache are fetched concurrently.
+	 * @param keys The keys to check for in the cache
+	 * @return The keys of the resources which exist
+	 */
+	public Set<String> contains(Collection<String> keys) throws IOException {
+		Set<String> result = new HashSet<String>();
+		if (!enabled) {
+			return result;
+		}
+		prefetch(keys);
+		for (String key : keys) {
+			if (contains(key)) {
+				result.add(key);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Wait for background uploads to finish, write the index of the local
+	 * cache and evict entries if the cache is larger than its size budget.
+	 * Call once the build has finished.
+	 */
+	public void flush() throws IOException {
+		if (!enabled) {
+			return;
+		}
+		shutdownRemote();
+		localCache.flush();
 	}
 }
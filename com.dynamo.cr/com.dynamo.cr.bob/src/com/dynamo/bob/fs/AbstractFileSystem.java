@@ -17,9 +17,9 @@ package com.dynamo.bob.fs;
 import java.io.File;
 import java.io.IOException;
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.Map;
 import java.util.Vector;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.commons.io.FilenameUtils;
 
@@ -27,7 +27,7 @@ public abstract class AbstractFileSystem<F extends IFileSystem, R extends IResou
     protected F fileSystem;
     protected String rootDirectory;
     protected String buildDirectory;
-    protected Map<String, R> resources = new HashMap<String, R>();
+    protected Map<String, R> resources = new ConcurrentHashMap<String, R>();
     protected Vector<IMountPoint> mountPoints;
 
     @SuppressWarnings("unchecked")
@@ -27,7 +27,7 @@ public abstract class AbstractResource<F extends IFileSystem> implements IResour
     protected F fileSystem;
     protected String path;
     private boolean cacheable = true;
-    private byte[] sha1DigestCache;
+    private volatile byte[] sha1DigestCache;
 
     public AbstractResource(F fileSystem, String path) {
         this.fileSystem = fileSystem;
@@ -137,4 +137,9 @@ public abstract class AbstractResource<F extends IFileSystem> implements IResour
     public boolean isCacheable() {
         return isOutput() && cacheable;
     }
+
+    @Override
+    public void invalidate() {
+        sha1DigestCache = null;
+    }
 }
@@ -14,103 +14,118 @@
 
 package com.dynamo.bob.fs;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
-import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
-import java.util.HashMap;
-import java.util.Map;
 
 import org.apache.commons.io.FilenameUtils;
-import org.apache.commons.io.IOUtils;
+
+import com.dynamo.bob.util.SignatureTable;
 
 
 public class DefaultFileSystem extends AbstractFileSystem<DefaultFileSystem, DefaultResource> {
 
-    static class CacheEntry implements Serializable {
-        private static final long serialVersionUID = 1L;
-        long mTime;
-        byte[] sha1;
-    }
+    private static final int DIGEST_BUFFER_SIZE = 256 * 1024;
+
+    // Files are streamed through a reused direct buffer when calculating
+    // digests instead of being read into a heap array in full
+    private static final ThreadLocal<ByteBuffer> digestBuffer = ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(DIGEST_BUFFER_SIZE));
 
-    private Map<String, CacheEntry> cache = new HashMap<String, DefaultFileSystem.CacheEntry>();
+    // path -> sha1 digest, file modification time and size
+    private SignatureTable cache = new SignatureTable();
 
     @Override
     public IResource get(String path) {
         // Paths are always root relative.
         if (path.startsWith("/"))
             path = path.substring(1);
-        IResource resource = getFromMountPoints(path);
-        if (resource != null) {
-            return resource;
+        IResource mountedResource = getFromMountPoints(path);
+        if (mountedResource != null) {
+            return mountedResource;
         }
-        return new DefaultResource(this, path);
+        // Resources are interned so that the file status cached on each
+        // instance is shared between all users of the same path
+        DefaultResource resource = resources.get(path);
+        if (resource == null) {
+            resource = resources.computeIfAbsent(path, p -> new DefaultResource(this, p));
+        }
+        return resource;
+    }
+
+    @Override
+    public void setRootDirectory(String rootDirectory) {
+        super.setRootDirectory(rootDirectory);
+        resources.clear();
+    }
+
+    @Override
+    public void setBuildDirectory(String buildDirectory) {
+        super.setBuildDirectory(buildDirectory);
+        resources.clear();
     }
 
     private byte[] calcSha1(DefaultResource resource) throws IOException {
-        byte[] content = resource.getContent();
-        if (content == null) {
-            throw new IllegalArgumentException(String.format("Resource '%s' is not created", resource.getPath()));
-        }
         MessageDigest sha1;
         try {
             sha1 = MessageDigest.getInstance("SHA1");
         } catch (NoSuchAlgorithmException e) {
             throw new RuntimeException(e);
         }
-        sha1.update(content);
+        ByteBuffer buffer = digestBuffer.get();
+        buffer.clear();
+        try (FileChannel channel = FileChannel.open(Paths.get(resource.getAbsPath()), StandardOpenOption.READ)) {
+            while (channel.read(buffer) != -1) {
+                buffer.flip();
+                sha1.update(buffer);
+                buffer.clear();
+            }
+        } catch (NoSuchFileException e) {
+            throw new IllegalArgumentException(String.format("Resource '%s' is not created", resource.getPath()));
+        }
         return sha1.digest();
     }
 
     byte[] sha1(DefaultResource resource) throws IOException {
-        String absPath = resource.getAbsPath();
-        File file = new File(absPath);
-        CacheEntry e = cache.get(resource.getPath());
-        if (e != null && file.lastModified() == e.mTime) {
-            return e.sha1;
+        DefaultResource.Stat stat = resource.stat();
+        if (stat == null) {
+            throw new IllegalArgumentException(String.format("Resource '%s' is not created", resource.getPath()));
+        }
+        SignatureTable.Entry e = cache.get(resource.getPath());
+        if (e != null && stat.lastModified == e.mtime && stat.size == e.size) {
+            return e.signature;
         } else {
-            e = new CacheEntry();
-            e.mTime = file.lastModified();
-            e.sha1 = calcSha1(resource);
-            cache.put(resource.getPath(), e);
-            return e.sha1;
+            byte[] sha1 = calcSha1(resource);
+            cache.put(resource.getPath(), sha1, stat.lastModified, stat.size);
+            return sha1;
         }
     }
 
-    @SuppressWarnings("unchecked")
+    private File getCacheFile() {
+        return new File(FilenameUtils.concat(FilenameUtils.concat(this.rootDirectory, this.buildDirectory), "digest_cache"));
+    }
+
     @Override
     public void loadCache() {
-        cache = new HashMap<String, DefaultFileSystem.CacheEntry>();
-        String fileName = FilenameUtils.concat(FilenameUtils.concat(this.rootDirectory, this.buildDirectory), "digest_cache");
-        ObjectInputStream is = null;
+        // Start each build from a fresh view of the disk
+        resources.clear();
         try {
-            is = new ObjectInputStream(new BufferedInputStream(new FileInputStream(fileName)));
-            cache = (Map<String, CacheEntry>) is.readObject();
-            is.close();
+            cache = SignatureTable.open(getCacheFile());
         } catch (IOException e) {
-        } catch (ClassNotFoundException e) {
-        } finally {
-            IOUtils.closeQuietly(is);
+            cache = new SignatureTable();
         }
     }
 
     @Override
     public void saveCache() {
-        String fileName = FilenameUtils.concat(FilenameUtils.concat(this.rootDirectory, this.buildDirectory), "digest_cache");
-        ObjectOutputStream os = null;
         try {
-            os = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(fileName)));
-            os.writeObject(cache);
+            cache.save(getCacheFile());
         } catch (IOException e) {
-        } finally {
-            IOUtils.closeQuietly(os);
         }
     }
 
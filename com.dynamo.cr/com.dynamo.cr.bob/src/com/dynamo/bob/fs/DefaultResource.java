@@ -27,10 +27,42 @@ import org.apache.commons.io.FilenameUtils;
 
 public class DefaultResource extends AbstractResource<DefaultFileSystem> {
 
+    /**
+     * Snapshot of the file status. Only taken for existing files so that
+     * outputs created outside of setContent() are picked up on the next query.
+     */
+    static final class Stat {
+        final long size;
+        final long lastModified;
+
+        Stat(long size, long lastModified) {
+            this.size = size;
+            this.lastModified = lastModified;
+        }
+    }
+
+    private volatile Stat stat;
+
     public DefaultResource(DefaultFileSystem fileSystem, String path) {
         super(fileSystem, path);
     }
 
+    /**
+     * Get the cached file status, querying the file system if needed.
+     * @return file status or null if the file doesn't exist
+     */
+    Stat stat() {
+        Stat s = stat;
+        if (s == null) {
+            File f = new File(getAbsPath());
+            if (f.isFile()) {
+                s = new Stat(f.length(), f.lastModified());
+                stat = s;
+            }
+        }
+        return s;
+    }
+
     @Override
     public byte[] getContent() throws IOException {
         File f = new File(getAbsPath());
@@ -64,6 +96,7 @@ public class DefaultResource extends AbstractResource<DefaultFileSystem> {
             os.write(content);
         } finally {
             os.close();
+            invalidate();
         }
     }
 
@@ -82,9 +115,17 @@ public class DefaultResource extends AbstractResource<DefaultFileSystem> {
             FileUtils.copyInputStreamToFile(stream, f);
         } finally {
             stream.close();
+            invalidate();
         }
     }
 
+    @Override
+    public byte[] sha1(boolean allowCached) throws IOException {
+        // the file system digest cache is validated against the stat cache
+        // so it is cheap to query and never stale
+        return this.fileSystem.sha1(this);
+    }
+
     @Override
     public byte[] sha1() throws IOException {
         return this.fileSystem.sha1(this);
@@ -92,24 +133,30 @@ public class DefaultResource extends AbstractResource<DefaultFileSystem> {
 
     @Override
     public boolean exists() {
-        File file = new File(getAbsPath());
-        return file.exists() && file.isFile();
+        return stat() != null;
     }
 
     @Override
     public void remove() {
         new File(getAbsPath()).delete();
+        invalidate();
     }
 
     @Override
     public long getLastModified() {
-        return new File(getAbsPath()).lastModified();
+        Stat s = stat();
+        return s != null ? s.lastModified : 0;
     }
 
     @Override
     public boolean isFile() {
-        File f = new File(getAbsPath());
-        return f.isFile();
+        return stat() != null;
+    }
+
+    @Override
+    public void invalidate() {
+        super.invalidate();
+        stat = null;
     }
 
 }
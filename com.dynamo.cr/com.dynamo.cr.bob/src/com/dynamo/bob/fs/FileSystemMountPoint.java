@@ -149,5 +149,10 @@ public class FileSystemMountPoint implements IMountPoint {
         public boolean isCacheable() {
             return resource.isCacheable();
         }
+
+        @Override
+        public void invalidate() {
+            resource.invalidate();
+        }
     }
 }
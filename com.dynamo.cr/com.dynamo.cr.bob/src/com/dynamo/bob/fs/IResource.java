@@ -135,4 +135,11 @@ public interface IResource {
      * @return True if resource can be cached. Defaults to true
      */
     boolean isCacheable();
+
+    /**
+     * Drop any cached state (digest, file status) for this resource. Call this
+     * when the underlying data may have been changed without going through
+     * {@link IResource#setContent(byte[])} or {@link IResource#remove()}
+     */
+    void invalidate();
 }
@@ -34,6 +34,7 @@ import com.dynamo.bob.ProtoParams;
 import com.dynamo.bob.Task.TaskBuilder;
 import com.dynamo.bob.fs.IResource;
 import com.dynamo.bob.textureset.TextureSetGenerator.TextureSetResult;
+import com.dynamo.bob.textureset.TextureSetLayoutState;
 import com.dynamo.bob.logging.Logger;
 import com.dynamo.bob.util.TextureUtil;
 import com.dynamo.graphics.proto.Graphics.TextureImage;
@@ -96,7 +97,17 @@ public class AtlasBuilder extends ProtoBuilder<Atlas.Builder> {
     @Override
     public void build(Task task) throws CompileExceptionError, IOException {
         Atlas.Builder builder = getSrcBuilder(task.firstInput());
-        TextureSetResult result            = AtlasUtil.generateTextureSet(this.project, task.firstInput(), builder);
+
+        // The layout of the previous build is kept next to the outputs, it is not an output
+        // itself since it only affects where the images are placed
+        boolean incrementalLayout = project.option("atlas-incremental-layout", "false").equals("true");
+        IResource layoutStateResource = task.firstInput().changeExt(".atlaslayout");
+        TextureSetLayoutState previousLayoutState = incrementalLayout ? TextureSetLayoutState.load(layoutStateResource) : null;
+
+        TextureSetResult result            = AtlasUtil.generateTextureSet(this.project, task.firstInput(), builder, previousLayoutState);
+        if (incrementalLayout) {
+            result.layoutState.save(layoutStateResource);
+        }
         TextureImage.Type textureImageType = getTexureType(builder);
 
         int buildDirLen         = project.getBuildDirectory().length();
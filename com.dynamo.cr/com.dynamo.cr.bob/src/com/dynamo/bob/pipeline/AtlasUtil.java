@@ -37,6 +37,7 @@ import com.dynamo.bob.textureset.TextureSetGenerator;
 import com.dynamo.bob.textureset.TextureSetGenerator.AnimDesc;
 import com.dynamo.bob.textureset.TextureSetGenerator.AnimIterator;
 import com.dynamo.bob.textureset.TextureSetGenerator.TextureSetResult;
+import com.dynamo.bob.textureset.TextureSetLayoutState;
 import com.dynamo.gamesys.proto.AtlasProto.Atlas;
 import com.dynamo.gamesys.proto.AtlasProto.AtlasAnimation;
 import com.dynamo.gamesys.proto.AtlasProto.AtlasImage;
@@ -316,6 +317,16 @@ public class AtlasUtil {
     }
 
     public static TextureSetResult generateTextureSet(final Project project, IResource atlasResource, Atlas.Builder builder) throws IOException, CompileExceptionError {
+        return generateTextureSet(project, atlasResource, builder, null);
+    }
+
+    /**
+     * Generate the texture set of an atlas
+     * @param previousLayoutState the layout of a previous build of the atlas to keep the image placements of, or null
+     * @return {@link TextureSetResult}
+     */
+    public static TextureSetResult generateTextureSet(final Project project, IResource atlasResource, Atlas.Builder builder,
+                                                      TextureSetLayoutState previousLayoutState) throws IOException, CompileExceptionError {
         TimeProfiler.start("generateTextureSet");
         Atlas atlas = builder.build();
 
@@ -337,7 +348,7 @@ public class AtlasUtil {
             imageTrimModes.add(image.getSpriteTrimMode());
         }
         List<IResource> imageResources = toResources(atlasResource, imageResourcePaths);
-        List<BufferedImage> images = TextureUtil.loadImages(imageResources);
+        List<BufferedImage> images = TextureUtil.loadImages(project, imageResources);
 
         List<String> imageNames = new ArrayList<String>();
         int imageCount = imageResourcePaths.size();
@@ -355,7 +366,8 @@ public class AtlasUtil {
                 Math.max(0, atlas.getInnerPadding()),
                 Math.max(0, atlas.getExtrudeBorders()),
                 true, false, null,
-                atlas.getMaxPageWidth(), atlas.getMaxPageHeight());
+                atlas.getMaxPageWidth(), atlas.getMaxPageHeight(),
+                previousLayoutState);
 
             TimeProfiler.stop();
             return result;
@@ -257,6 +257,10 @@ public class ExtenderUtil {
             return false;
         }
 
+        @Override
+        public void invalidate() {
+        }
+
     }
 
     // Used to rename a resource in the multipart request and prefix the content with a base variant
@@ -48,6 +48,7 @@ import com.dynamo.bob.Task;
 import com.dynamo.bob.Task.TaskBuilder;
 import com.dynamo.bob.archive.ArchiveBuilder;
 import com.dynamo.bob.archive.ArchiveEntry;
+import com.dynamo.bob.archive.ArchiveEntryCache;
 import com.dynamo.bob.archive.EngineVersion;
 import com.dynamo.bob.archive.ManifestBuilder;
 import com.dynamo.bob.archive.publisher.Publisher;
@@ -232,7 +233,7 @@ public class GameProjectBuilder extends Builder {
         return resourcePadding;
     }
 
-    private void createArchive(ArchiveBuilder archiveBuilder, Collection<IResource> resources, RandomAccessFile archiveIndex, RandomAccessFile archiveData, List<String> excludedResources, Path resourcePackDirectory) throws IOException, CompileExceptionError {
+    private void createArchive(ArchiveBuilder archiveBuilder, Collection<IResource> resources, RandomAccessFile archiveIndex, RandomAccessFile archiveData, List<String> excludedResources, Path resourcePackDirectory, Set<String> previousResourcePack) throws IOException, CompileExceptionError {
         TimeProfiler.start("createArchive");
         logger.info("GameProjectBuilder.createArchive");
         long tstart = System.currentTimeMillis();
@@ -260,6 +261,10 @@ public class GameProjectBuilder extends Builder {
         Publisher publisher = project.getPublisher();
         List<ArchiveEntry> excluded = archiveBuilder.getExcludedEntries();
         for (ArchiveEntry entry : excluded) {
+            // only publish resources not in the previous resource pack when creating a delta
+            if (previousResourcePack != null && previousResourcePack.contains(entry.getHexDigest())) {
+                continue;
+            }
             File f = new File(resourcePackDirectory.toAbsolutePath().toString(), entry.getHexDigest());
             publisher.AddEntry(f, entry);
         }
@@ -394,8 +399,6 @@ public class GameProjectBuilder extends Builder {
 
     @Override
     public void build(Task task) throws CompileExceptionError, IOException {
-        FileInputStream archiveIndexInputStream = null;
-        FileInputStream archiveDataInputStream = null;
         FileInputStream publicKeyInputStream = null;
 
         IResource input = task.input(0);
@@ -443,26 +446,55 @@ public class GameProjectBuilder extends Builder {
                 // Create output for the data archive
                 String platform = project.option("platform", "generic");
                 project.getPublisher().setPlatform(platform);
-                File archiveIndexHandle = File.createTempFile("defold.index_", ".arci");
+                // the archive is written next to its final path and moved in place
+                // once complete, instead of being copied from a temp directory
+                File archiveIndexOutput = new File(task.getOutputs().get(1).getAbsPath());
+                File archiveDataOutput = new File(task.getOutputs().get(2).getAbsPath());
+                archiveDataOutput.getParentFile().mkdirs();
+                File archiveIndexHandle = File.createTempFile("game.arci_", ".tmp", archiveIndexOutput.getParentFile());
                 RandomAccessFile archiveIndex = createRandomAccessFile(archiveIndexHandle);
-                File archiveDataHandle = File.createTempFile("defold.data_", ".arcd");
+                File archiveDataHandle = File.createTempFile("game.arcd_", ".tmp", archiveDataOutput.getParentFile());
                 RandomAccessFile archiveData = createRandomAccessFile(archiveDataHandle);
                 Path resourcePackDirectory = Files.createTempDirectory("defold.resourcepack_");
 
                 // create the archive and manifest
                 ManifestBuilder manifestBuilder = createManifestBuilder(resourceGraph);
                 ArchiveBuilder archiveBuilder = new ArchiveBuilder(root, manifestBuilder, getResourcePadding());
-                createArchive(archiveBuilder, resources, archiveIndex, archiveData, excludedResources, resourcePackDirectory);
+                archiveBuilder.setMaxThreads(project.getMaxCpuThreads());
+                if (project.option("archive-layout", "path").equals("load-order")) {
+                    archiveBuilder.setLoadOrder(resourceGraph.createLoadOrderList());
+                }
+
+                // reuse unchanged entries from the previous game.arcd
+                File archiveEntryCacheFile = new File(archiveDataOutput.getPath() + ".cache");
+                // the cache is discarded if bob or the resource encryption changed
+                String archiveFingerprint = ArchiveEntryCache.createFingerprint();
+                ArchiveEntryCache previousEntryCache = ArchiveEntryCache.read(archiveEntryCacheFile, archiveDataOutput, manifestBuilder.getResourceHashAlgorithm(), archiveFingerprint);
+                archiveBuilder.setPreviousArchive(archiveDataOutput, previousEntryCache, archiveFingerprint);
+
+                // create a delta resource pack if a manifest of a previous build is given
+                Set<String> previousResourcePack = null;
+                String previousManifest = project.option("liveupdate-previous-manifest", null);
+                if (shouldPublishLU && previousManifest != null) {
+                    previousResourcePack = ManifestBuilder.readExcludedResourceHexDigests(previousManifest);
+                }
+                createArchive(archiveBuilder, resources, archiveIndex, archiveData, excludedResources, resourcePackDirectory, previousResourcePack);
                 byte[] manifestFile = manifestBuilder.buildManifest();
 
                 // Write outputs to the build system
                 // game.arci
-                archiveIndexInputStream = new FileInputStream(archiveIndexHandle);
-                task.getOutputs().get(1).setContent(archiveIndexInputStream);
+                FileUtil.moveFile(archiveIndexHandle, archiveIndexOutput);
+                task.getOutputs().get(1).invalidate();
 
                 // game.arcd
-                archiveDataInputStream = new FileInputStream(archiveDataHandle);
-                task.getOutputs().get(2).setContent(archiveDataInputStream);
+                FileUtil.moveFile(archiveDataHandle, archiveDataOutput);
+                task.getOutputs().get(2).invalidate();
+                try {
+                    archiveBuilder.getEntryCache().write(archiveEntryCacheFile, archiveDataOutput);
+                } catch (IOException e) {
+                    archiveEntryCacheFile.delete();
+                    logger.warning("Unable to write the archive entry cache: %s", e.getMessage());
+                }
 
                 // game.dmanifest
                 task.getOutputs().get(3).setContent(manifestFile);
@@ -488,6 +520,14 @@ public class GameProjectBuilder extends Builder {
 
                 ArchiveEntry manifestArchiveEntry = new ArchiveEntry(root, manifestTmpFileHandle.getAbsolutePath());
                 project.getPublisher().AddEntry(manifestTmpFileHandle, manifestArchiveEntry);
+
+                // Add the changes since the previous resource pack to a delta resource pack
+                File deltaTmpFileHandle = null;
+                if (previousResourcePack != null) {
+                    deltaTmpFileHandle = new File(FilenameUtils.concat(manifestFileHandle.getParent(), "liveupdate.game.delta.json"));
+                    FileUtils.writeStringToFile(deltaTmpFileHandle, manifestBuilder.buildResourcePackDelta(previousResourcePack));
+                    project.getPublisher().AddEntry(deltaTmpFileHandle, new ArchiveEntry(root, deltaTmpFileHandle.getAbsolutePath()));
+                }
                 project.getPublisher().Publish();
 
                 // Copy SSL public keys if specified
@@ -501,6 +541,9 @@ public class GameProjectBuilder extends Builder {
                 }
 
                 manifestTmpFileHandle.delete();
+                if (deltaTmpFileHandle != null) {
+                    deltaTmpFileHandle.delete();
+                }
                 File resourcePackDirectoryHandle = new File(resourcePackDirectory.toAbsolutePath().toString());
                 if (resourcePackDirectoryHandle.exists() && resourcePackDirectoryHandle.isDirectory()) {
                     FileUtils.deleteDirectory(resourcePackDirectoryHandle);
@@ -516,8 +559,6 @@ public class GameProjectBuilder extends Builder {
             transformGameProjectFile(properties);
             task.getOutputs().get(0).setContent(properties.serialize().getBytes());
         } finally {
-            IOUtils.closeQuietly(archiveIndexInputStream);
-            IOUtils.closeQuietly(archiveDataInputStream);
             IOUtils.closeQuietly(publicKeyInputStream);
         }
     }
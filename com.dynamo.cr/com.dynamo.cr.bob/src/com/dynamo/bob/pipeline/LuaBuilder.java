@@ -74,6 +74,28 @@ public abstract class LuaBuilder extends Builder {
 
     private LuaScanner luaScanner;
 
+    private static synchronized List<ILuaPreprocessor> getLuaPreprocessors() throws CompileExceptionError {
+        if (luaPreprocessors == null) {
+            luaPreprocessors = PluginScanner.getOrCreatePlugins("com.defold.extension.pipeline", ILuaPreprocessor.class);
+
+            if (luaPreprocessors == null) {
+                luaPreprocessors = new ArrayList<ILuaPreprocessor>(0);
+            }
+        }
+        return luaPreprocessors;
+    }
+
+    private static synchronized List<ILuaObfuscator> getLuaObfuscators() throws CompileExceptionError {
+        if (luaObfuscators == null) {
+            luaObfuscators = PluginScanner.getOrCreatePlugins("com.defold.extension.pipeline", ILuaObfuscator.class);
+
+            if (luaObfuscators == null) {
+                luaObfuscators = new ArrayList<ILuaObfuscator>(0);
+            }
+        }
+        return luaObfuscators;
+    }
+
     /**
      * Get a LuaScanner instance for a resource
      * This will cache the LuaScanner instance per resource to avoid parsing the
@@ -89,15 +111,7 @@ public abstract class LuaBuilder extends Builder {
             String script = new String(scriptBytes, "UTF-8");
 
             // Create and run preprocessors if some exists.
-            if (luaPreprocessors == null) {
-                luaPreprocessors = PluginScanner.getOrCreatePlugins("com.defold.extension.pipeline", ILuaPreprocessor.class);
-
-                if (luaPreprocessors == null) {
-                    luaPreprocessors = new ArrayList<ILuaPreprocessor>(0);
-                }
-            }
-
-            for (ILuaPreprocessor luaPreprocessor : luaPreprocessors) {
+            for (ILuaPreprocessor luaPreprocessor : getLuaPreprocessors()) {
                 try {
                     script = luaPreprocessor.preprocess(script, path, variant);
                 }
@@ -116,6 +130,16 @@ public abstract class LuaBuilder extends Builder {
         return luaScanner;
     }
 
+    // Preprocessors may change the script in ways the task cache can't track
+    @Override
+    public boolean isTaskCreationCacheable() {
+        try {
+            return isCreateDeclaredBy(LuaBuilder.class) && getLuaPreprocessors().isEmpty();
+        } catch (CompileExceptionError e) {
+            return false;
+        }
+    }
+
     @Override
     public Task create(IResource input) throws IOException, CompileExceptionError {
         Task.TaskBuilder taskBuilder = Task.newBuilder(this)
@@ -430,19 +454,11 @@ public abstract class LuaBuilder extends Builder {
         builder.addAllPropertyResources(propertyResources);
 
         // Create and run obfuscators if some exists.
-        if (luaObfuscators == null) {
-            luaObfuscators = PluginScanner.getOrCreatePlugins("com.defold.extension.pipeline", ILuaObfuscator.class);
-
-            if (luaObfuscators == null) {
-                luaObfuscators = new ArrayList<ILuaObfuscator>(0);
-            }
-        }
-
         final IResource sourceResource = task.firstInput();
         final String sourcePath = sourceResource.getAbsPath();
         final String variant = project.option("variant", Bob.VARIANT_RELEASE);
 
-        for (ILuaObfuscator luaObfuscator : luaObfuscators) {
+        for (ILuaObfuscator luaObfuscator : getLuaObfuscators()) {
             try {
                 script = luaObfuscator.obfuscate(script, sourcePath, variant);
             }
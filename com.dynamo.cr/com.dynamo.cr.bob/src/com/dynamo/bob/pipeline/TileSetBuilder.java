@@ -16,11 +16,8 @@ package com.dynamo.bob.pipeline;
 
 import java.awt.Graphics2D;
 import java.awt.image.BufferedImage;
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
 
-import javax.imageio.ImageIO;
-
 import com.dynamo.bob.ProtoBuilder;
 import com.dynamo.bob.ProtoParams;
 import com.dynamo.bob.BuilderParams;
@@ -106,7 +103,7 @@ public class TileSetBuilder extends ProtoBuilder<TileSet.Builder> {
 
         BufferedImage image = null;
         if (imageRes.exists()) {
-            image = ImageIO.read(new ByteArrayInputStream(imageRes.getContent()));
+            image = TextureUtil.readImage(this.project, imageRes.getContent());
         }
         if (image != null && (image.getWidth() < tileSet.getTileWidth() || image.getHeight() < tileSet.getTileHeight())) {
             throw new CompileExceptionError(task.firstInput(), -1, String.format(
@@ -116,7 +113,7 @@ public class TileSetBuilder extends ProtoBuilder<TileSet.Builder> {
 
         BufferedImage collisionImage = null;
         if (collisionRes.exists()) {
-            BufferedImage origImage = ImageIO.read(new ByteArrayInputStream(collisionRes.getContent()));
+            BufferedImage origImage = TextureUtil.readImage(this.project, collisionRes.getContent());
             collisionImage = new BufferedImage(origImage.getWidth(), origImage.getHeight(),
                     BufferedImage.TYPE_4BYTE_ABGR);
             Graphics2D g2d = collisionImage.createGraphics();
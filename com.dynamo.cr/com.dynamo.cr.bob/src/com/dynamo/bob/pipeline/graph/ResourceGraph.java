@@ -14,6 +14,9 @@
 
 package com.dynamo.bob.pipeline.graph;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Set;
 import java.util.HashSet;
 import java.util.LinkedHashSet;
@@ -22,6 +25,8 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.LinkedList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Queue;
 
 import java.io.Writer;
 import java.io.StringWriter;
@@ -54,6 +59,12 @@ public class ResourceGraph implements IResourceVisitor {
     // set of all resource nodes in the graph
     private Set<ResourceNode> resourceNodes = new LinkedHashSet<>();
 
+    // all resource nodes in the graph, indexed on ResourceNode.getIndex()
+    private List<ResourceNode> indexedNodes = new ArrayList<>();
+
+    // cache of the dependants of a resource node (see getAllDependants())
+    private Map<ResourceNode, List<ResourceNode>> nodeToDependants = new HashMap<>();
+
     // lookup between IResource and ResourceNode
     private Map<IResource, ResourceNode> resourceToNodeLookup = new HashMap<>();
 
@@ -88,7 +99,7 @@ public class ResourceGraph implements IResourceVisitor {
 
         // create a new node since we are only visiting new resources (see check in shouldVisit)
         ResourceNode currentNode = new ResourceNode(resource);
-        resourceNodes.add(currentNode);
+        addResourceNode(currentNode);
 
         // add resource node to lookup tables
         resourceToNodeLookup.put(resource, currentNode);
@@ -127,6 +138,12 @@ public class ResourceGraph implements IResourceVisitor {
         ResourceWalker.walk(project, rootResource, this);
     }
 
+    private void addResourceNode(ResourceNode node) {
+        node.setIndex(indexedNodes.size());
+        indexedNodes.add(node);
+        resourceNodes.add(node);
+    }
+
     private void addNodeToParent(ResourceNode parentNode, ResourceNode childNode) {
         if (parentNode.checkType(ResourceNode.Type.ExcludedCollectionProxy)) {
             childNode.setType(ResourceNode.Type.ExcludedCollection);
@@ -143,7 +160,7 @@ public class ResourceGraph implements IResourceVisitor {
             currentNode = new ResourceNode(resourcePath);
             resourceToNodeLookup.put(currentResource, currentNode);
             pathToNodeLookup.put("/" + currentResource.getPath(), currentNode);
-            resourceNodes.add(currentNode);
+            addResourceNode(currentNode);
             if (currentResource.getPath().endsWith("collectionproxyc")) {
                 currentNode.setType(ResourceNode.Type.CollectionProxy);
             }
@@ -192,18 +209,33 @@ public class ResourceGraph implements IResourceVisitor {
         }
     }
 
-    private void flagAllNonExcludedResources(ResourceNode node, HashSet<ResourceNode> visited) {
-        for (ResourceNode child : node.getChildren()) {
-            if (visited.contains(child)) {
-                continue;
-            }
-            child.flagAsUsedInMainBundle();
-            visited.add(child);
-            if (child.checkType(ResourceNode.Type.ExcludedCollectionProxy)) {
-                continue;
+    /**
+     * Find all resource nodes reachable from a node. The children of nodes of
+     * the leaf type are not visited, but the leaf nodes themselves are
+     * included in the result.
+     * @param node The node to start from. The node itself is not included
+     * unless it is reachable from one of its children.
+     * @param leafType The type of nodes whose children should not be visited
+     * @return Set of reachable nodes, indexed on ResourceNode.getIndex()
+     */
+    private BitSet findReachableNodes(ResourceNode node, ResourceNode.Type leafType) {
+        BitSet reachable = new BitSet(indexedNodes.size());
+        ArrayDeque<ResourceNode> stack = new ArrayDeque<>();
+        stack.push(node);
+        while (!stack.isEmpty()) {
+            ResourceNode current = stack.pop();
+            for (ResourceNode child : current.getChildren()) {
+                int index = child.getIndex();
+                if (reachable.get(index)) {
+                    continue;
+                }
+                reachable.set(index);
+                if (!child.checkType(leafType)) {
+                    stack.push(child);
+                }
             }
-            flagAllNonExcludedResources(child, visited);
         }
+        return reachable;
     }
 
     /**
@@ -212,7 +244,36 @@ public class ResourceGraph implements IResourceVisitor {
      * and moved to a live update archive
      */
     public void findAllResourcesReferencedFromMainCollection() {
-        flagAllNonExcludedResources(root, new HashSet<ResourceNode>());
+        BitSet reachable = findReachableNodes(root, ResourceNode.Type.ExcludedCollectionProxy);
+        for (int i = reachable.nextSetBit(0); i >= 0; i = reachable.nextSetBit(i + 1)) {
+            indexedNodes.get(i).flagAsUsedInMainBundle();
+        }
+    }
+
+    /**
+     * Get all resources required to load a resource. The children of the
+     * resource, their children and so on are all dependants. A collection
+     * proxy is a dependant, but the collection it points to is not, since it
+     * is not required to load the parent collection. This allows an entire
+     * collection loaded through a collection proxy to be excluded and
+     * downloaded (through LiveUpdate) before the proxy is loaded.
+     * The result is computed once per node and cached.
+     * @param node The node to get dependants for
+     * @return List of dependants, in the order they were added to the graph
+     */
+    public List<ResourceNode> getAllDependants(ResourceNode node) {
+        List<ResourceNode> dependants = nodeToDependants.get(node);
+        if (dependants != null) {
+            return dependants;
+        }
+        BitSet reachable = findReachableNodes(node, ResourceNode.Type.CollectionProxy);
+        dependants = new ArrayList<>(reachable.cardinality());
+        for (int i = reachable.nextSetBit(0); i >= 0; i = reachable.nextSetBit(i + 1)) {
+            dependants.add(indexedNodes.get(i));
+        }
+        dependants = Collections.unmodifiableList(dependants);
+        nodeToDependants.put(node, dependants);
+        return dependants;
     }
 
     /**
@@ -234,6 +295,40 @@ public class ResourceGraph implements IResourceVisitor {
         return excludedResources;
     }
 
+    private void addInLoadOrder(ResourceNode node, List<String> loadOrder, Set<ResourceNode> visited, Queue<ResourceNode> collectionProxies) {
+        for (ResourceNode child : node.getChildren()) {
+            if (!visited.add(child)) {
+                continue;
+            }
+            loadOrder.add(child.getPath());
+            if (child.checkType(ResourceNode.Type.CollectionProxy)) {
+                // the resources of the proxy are loaded separately
+                collectionProxies.add(child);
+                continue;
+            }
+            addInLoadOrder(child, loadOrder, visited, collectionProxies);
+        }
+    }
+
+    /**
+     * Create a list of all resources in the order they are expected to be
+     * loaded. Resources are listed depth first from the root, except for the
+     * resources loaded through collection proxies. These are listed after the
+     * resources of the collection containing the proxy, grouped per proxy.
+     * A resource is listed once, with the first collection that loads it.
+     * @return List of resources in load order
+     */
+    public List<String> createLoadOrderList() {
+        List<String> loadOrder = new ArrayList<>();
+        Set<ResourceNode> visited = new HashSet<>();
+        Queue<ResourceNode> collectionProxies = new ArrayDeque<>();
+        collectionProxies.add(root);
+        while (!collectionProxies.isEmpty()) {
+            addInLoadOrder(collectionProxies.poll(), loadOrder, visited, collectionProxies);
+        }
+        return loadOrder;
+    }
+
     public void writeJSON(ResourceNode node, JsonGenerator generator, boolean shouldPublishLU) throws IOException {
         generator.writeStartObject();
         generator.writeFieldName("path");
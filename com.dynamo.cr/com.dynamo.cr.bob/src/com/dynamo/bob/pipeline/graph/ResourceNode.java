@@ -33,6 +33,7 @@ public class ResourceNode {
     private IResource resource;
     private String hexDigest = null;
     private Type nodeType = Type.None;
+    private int index = -1;
     protected boolean inMainBundle = false;
     private final List<ResourceNode> children = new ArrayList<ResourceNode>();
 
@@ -78,6 +79,14 @@ public class ResourceNode {
         this.hexDigest = hexDigest;
     }
 
+    public int getIndex() {
+        return this.index;
+    }
+
+    void setIndex(int index) {
+        this.index = index;
+    }
+
     public boolean isInMainBundle() {
         return this.inMainBundle;
     }
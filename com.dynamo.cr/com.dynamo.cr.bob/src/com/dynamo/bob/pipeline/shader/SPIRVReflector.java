@@ -21,7 +21,7 @@ import java.io.IOException;
 import java.util.*;
 
 public class SPIRVReflector {
-    private static JsonNode root;
+    private final JsonNode root;
 
     public SPIRVReflector(String json) throws IOException {
         this.root = (new ObjectMapper()).readTree(json);
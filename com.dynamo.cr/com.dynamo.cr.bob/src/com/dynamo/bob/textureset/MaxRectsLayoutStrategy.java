@@ -15,7 +15,11 @@
 package com.dynamo.bob.textureset;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
 
 import com.dynamo.bob.textureset.TextureSetLayout.Layout;
 import com.dynamo.bob.textureset.TextureSetLayout.Rect;
@@ -39,8 +43,10 @@ public class MaxRectsLayoutStrategy implements TextureSetLayoutStrategy {
         public boolean square;
     }
 
+    // Pack the heuristics of a page size in parallel when there are at least this many rects
+    private static final int PARALLEL_THRESHOLD = 64;
+
     private Settings settings;
-    private MaxRects maxRects = new MaxRects();
     private FreeRectChoiceHeuristic[] methods = FreeRectChoiceHeuristic.values();
 
     public MaxRectsLayoutStrategy(Settings settings) {
@@ -67,23 +73,94 @@ public class MaxRectsLayoutStrategy implements TextureSetLayoutStrategy {
         // Repackage into layouts.
         ArrayList<Layout> result = new ArrayList<Layout>(pages.size());
         for(Page page : pages) {
-            ArrayList<Rect> rects = new ArrayList<Rect>(page.outputRects.size());
-            for(RectNode node : page.outputRects) {
-                Rect finalRect = new Rect(node.rect.getId(), node.rect.getIndex(), node.rect.getPage(),
-                                           node.rect.getX() + settings.paddingX, node.rect.getY() + settings.paddingY,
-                                           node.rect.getWidth() - settings.paddingX, node.rect.getHeight() - settings.paddingY,
-                                           node.rect.getRotated());
-                rects.add(finalRect);
-            }
             int layoutWidth = 1 << getExponentNextOrMatchingPowerOfTwo(page.width);
             int layoutHeight = 1 << getExponentNextOrMatchingPowerOfTwo(page.height);
-            Layout layout = new Layout(layoutWidth, layoutHeight, rects);
-            result.add(layout);
+            result.add(createLayout(page, layoutWidth, layoutHeight));
         }
 
         return result;
     }
 
+    /**
+     * Packs the rects into the pages of a previous layout. A rect keeps its previous
+     * placement if it still fits there, the other rects are packed into the free space
+     * of the pages.
+     * @param srcRects the rects to pack
+     * @param previousLayouts the layouts from a previous pack, with the same settings
+     * @return the layouts, with the same page sizes as the previous layouts, or null if a rect doesn't fit in the free space
+     */
+    public List<Layout> createLayout(List<Rect> srcRects, List<Layout> previousLayouts) {
+        Map<String, Rect> previousRects = new HashMap<String, Rect>();
+        for (int i = 0; i < previousLayouts.size(); ++i) {
+            for (Rect r : previousLayouts.get(i).getRectangles()) {
+                Rect previous = new Rect(r);
+                previous.setPage(i);
+                previousRects.put(r.getId(), previous);
+            }
+        }
+
+        ArrayList<MaxRects> pages = new ArrayList<MaxRects>(previousLayouts.size());
+        for (Layout layout : previousLayouts) {
+            MaxRects maxRects = new MaxRects();
+            maxRects.init(layout.getWidth(), layout.getHeight());
+            pages.add(maxRects);
+        }
+
+        ArrayList<RectNode> newNodes = new ArrayList<RectNode>();
+        for (Rect r : srcRects) {
+            RectNode n = new RectNode(r);
+            // Each previous placement is only used once, even if an id is listed twice
+            Rect previous = previousRects.remove(r.getId());
+            boolean rotated = previous != null && previous.getRotated();
+            int width = rotated ? r.getHeight() : r.getWidth();
+            int height = rotated ? r.getWidth() : r.getHeight();
+            if (previous != null && width <= previous.getWidth() && height <= previous.getHeight()) {
+                n.rect.setX(previous.getX() - settings.paddingX);
+                n.rect.setY(previous.getY() - settings.paddingY);
+                n.rect.setWidth(width + settings.paddingX);
+                n.rect.setHeight(height + settings.paddingY);
+                n.rect.setRotated(rotated);
+                pages.get(previous.getPage()).placeRect(n);
+            } else {
+                n.rect.setWidth(r.getWidth() + settings.paddingX);
+                n.rect.setHeight(r.getHeight() + settings.paddingY);
+                newNodes.add(n);
+            }
+        }
+
+        for (RectNode n : newNodes) {
+            boolean placed = false;
+            for (MaxRects maxRects : pages) {
+                if (maxRects.insert(n, FreeRectChoiceHeuristic.BestShortSideFit) != null) {
+                    placed = true;
+                    break;
+                }
+            }
+            if (!placed) {
+                return null;
+            }
+        }
+
+        ArrayList<Layout> result = new ArrayList<Layout>(pages.size());
+        for (int i = 0; i < pages.size(); ++i) {
+            Layout previousLayout = previousLayouts.get(i);
+            result.add(createLayout(pages.get(i).getResult(), previousLayout.getWidth(), previousLayout.getHeight()));
+        }
+        return result;
+    }
+
+    private Layout createLayout(Page page, int layoutWidth, int layoutHeight) {
+        ArrayList<Rect> rects = new ArrayList<Rect>(page.outputRects.size());
+        for(RectNode node : page.outputRects) {
+            Rect finalRect = new Rect(node.rect.getId(), node.rect.getIndex(), node.rect.getPage(),
+                                       node.rect.getX() + settings.paddingX, node.rect.getY() + settings.paddingY,
+                                       node.rect.getWidth() - settings.paddingX, node.rect.getHeight() - settings.paddingY,
+                                       node.rect.getRotated());
+            rects.add(finalRect);
+        }
+        return new Layout(layoutWidth, layoutHeight, rects);
+    }
+
     private Page packPage(ArrayList<RectNode> inputRects) {
         // Find min size.
         int minWidth = Integer.MAX_VALUE;
@@ -163,23 +240,17 @@ public class MaxRectsLayoutStrategy implements TextureSetLayoutStrategy {
      *           rects may be packed.
      **/
     private Page packAtSize(boolean fully, int width, int height, ArrayList<RectNode> inputRects) {
-        Page bestResult = null;
-        for (int i = 0, n = methods.length; i < n; i++) {
-            maxRects.init(width, height);
-            Page result;
-
-            ArrayList<RectNode> remaining = new ArrayList<RectNode>();
-            for (int ii = 0, nn = inputRects.size(); ii < nn; ii++) {
-                RectNode rect = inputRects.get(ii);
-                if (maxRects.insert(rect, methods[i]) == null) {
-                    while (ii < nn) {
-                        remaining.add(inputRects.get(ii++));
-                    }
-                }
-            }
-            result = maxRects.getResult();
-            result.remainingRects = remaining;
+        // The heuristics are independent, each is packed with its own MaxRects.
+        // The best result is picked in heuristic order, so the result is the
+        // same regardless of which heuristic finishes first.
+        IntStream indices = IntStream.range(0, methods.length);
+        if (inputRects.size() >= PARALLEL_THRESHOLD) {
+            indices = indices.parallel();
+        }
+        Page[] results = indices.mapToObj(i -> packWithMethod(methods[i], width, height, inputRects)).toArray(Page[]::new);
 
+        Page bestResult = null;
+        for (Page result : results) {
             if (fully && result.remainingRects.size() > 0) {
                 continue;
             }
@@ -191,6 +262,24 @@ public class MaxRectsLayoutStrategy implements TextureSetLayoutStrategy {
         return bestResult;
     }
 
+    private Page packWithMethod(FreeRectChoiceHeuristic method, int width, int height, ArrayList<RectNode> inputRects) {
+        MaxRects maxRects = new MaxRects();
+        maxRects.init(width, height);
+
+        ArrayList<RectNode> remaining = new ArrayList<RectNode>();
+        for (int ii = 0, nn = inputRects.size(); ii < nn; ii++) {
+            RectNode rect = inputRects.get(ii);
+            if (maxRects.insert(rect, method) == null) {
+                while (ii < nn) {
+                    remaining.add(inputRects.get(ii++));
+                }
+            }
+        }
+        Page result = maxRects.getResult();
+        result.remainingRects = remaining;
+        return result;
+    }
+
     private Page getBest (Page result1, Page result2) {
         if (result1 == null) return result2;
         if (result2 == null) return result1;
@@ -272,27 +361,335 @@ public class MaxRectsLayoutStrategy implements TextureSetLayoutStrategy {
         public int width, height;
     }
 
+    /** Growable list of ints, used by the spatial indices of MaxRects */
+    static class IntList {
+        int[] data = new int[8];
+        int size = 0;
+
+        void add(int value) {
+            if (size == data.length) {
+                data = Arrays.copyOf(data, size * 2);
+            }
+            data[size++] = value;
+        }
+
+        void removeValue(int value) {
+            for (int i = 0; i < size; ++i) {
+                if (data[i] == value) {
+                    data[i] = data[--size];
+                    return;
+                }
+            }
+        }
+    }
+
     /** Maximal rectangles bin packing algorithm. Adapted from this C++ public domain source:
      * http://clb.demon.fi/projects/even-more-rectangle-bin-packing
      * @author Jukka Jyl�nki
-     * @author Nathan Sweet */
+     * @author Nathan Sweet
+     *
+     * The free rectangles are stored in primitive arrays and indexed by a grid
+     * over the bin, so that splitting and pruning only visit the free
+     * rectangles near the placed rectangle. A second grid over the sizes of
+     * the free rectangles is used when searching for a position, which skips
+     * the cells where the rectangle can't fit or can't beat the best score
+     * found so far. The edges of the used rectangles
+     * are indexed for the contact point rule. Ties between free rectangles are
+     * resolved in the order the free rectangles were added, which gives the
+     * same result as keeping them in a list. */
     class MaxRects {
+        private static final int MAX_GRID_SIZE = 16;
+        private static final int NO_ORDER = -1;
+
         private int binWidth;
         private int binHeight;
-        private int newFreeRectanglesLastSize;
         private final ArrayList<RectNode> usedRectangles = new ArrayList<RectNode>();
-        private final ArrayList<RectNode> freeRectangles = new ArrayList<RectNode>();
-        private final ArrayList<RectNode> newFreeRectangles = new ArrayList<RectNode>();
+
+        // The free rectangles, stored in slots. The slot of a removed free
+        // rectangle is reused. freeOrder is the order in which the free
+        // rectangles were added, or NO_ORDER for an unused slot.
+        private int[] freeX = new int[64];
+        private int[] freeY = new int[64];
+        private int[] freeW = new int[64];
+        private int[] freeH = new int[64];
+        private int[] freeOrder = new int[64];
+        private int numSlots;
+        private int nextOrder;
+        private final IntList unusedSlots = new IntList();
+
+        // Grid of cells, each with the slots of the free rectangles overlapping the cell.
+        // A cell is created when the first free rectangle is added to it.
+        private int cellShift;
+        private int gridWidth;
+        private int gridHeight;
+        private IntList[] cells;
+
+        // The slots of the free rectangles in a grid over their sizes, with the
+        // bounds of the sizes and positions in each cell. The bounds of a cell
+        // are recalculated when it's searched after a free rectangle was
+        // removed from it.
+        private IntList[] sizeCells;
+        private int sizeGridSize;
+        private int[] sizeCellMaxW;
+        private int[] sizeCellMaxH;
+        private int[] sizeCellMinW;
+        private int[] sizeCellMinH;
+        private int[] sizeCellMinArea;
+        private int[] sizeCellMinY;
+        private boolean[] sizeCellDirty;
+        // The cells to search for a position, packed as the lower bound of the first key and the cell
+        private long[] candidateCells;
+
+        // Used to visit each free rectangle once when querying multiple cells
+        private int[] slotVisited = new int[64];
+        private int visitId;
+        private final IntList queryResult = new IntList();
+
+        // The free rectangles created by the rectangle being placed, as {x, y, width, height}
+        private int newFreeRectanglesLastSize;
+        private final ArrayList<int[]> newFreeRectangles = new ArrayList<int[]>();
+
+        // The edges of the used rectangles, as pairs of the start and end of the edge
+        private final HashMap<Integer, IntList> usedByMinX = new HashMap<Integer, IntList>();
+        private final HashMap<Integer, IntList> usedByMaxX = new HashMap<Integer, IntList>();
+        private final HashMap<Integer, IntList> usedByMinY = new HashMap<Integer, IntList>();
+        private final HashMap<Integer, IntList> usedByMaxY = new HashMap<Integer, IntList>();
 
         public void init (int width, int height) {
             binWidth = width;
             binHeight = height;
 
             usedRectangles.clear();
-            freeRectangles.clear();
+            usedByMinX.clear();
+            usedByMaxX.clear();
+            usedByMinY.clear();
+            usedByMaxY.clear();
             newFreeRectangles.clear();
-            RectNode n = new RectNode(new Rect(null, 0, 0, 0, width, height));
-            freeRectangles.add(n);
+
+            cellShift = 0;
+            while ((width >> cellShift) >= MAX_GRID_SIZE || (height >> cellShift) >= MAX_GRID_SIZE) {
+                ++cellShift;
+            }
+            gridWidth = Math.max(1, (width >> cellShift) + 1);
+            gridHeight = Math.max(1, (height >> cellShift) + 1);
+            cells = new IntList[gridWidth * gridHeight];
+
+            sizeGridSize = sizeClass(Math.max(width, height)) + 1;
+            int sizeCellCount = sizeGridSize * sizeGridSize;
+            sizeCells = new IntList[sizeCellCount];
+            sizeCellMaxW = new int[sizeCellCount];
+            sizeCellMaxH = new int[sizeCellCount];
+            sizeCellMinW = new int[sizeCellCount];
+            sizeCellMinH = new int[sizeCellCount];
+            sizeCellMinArea = new int[sizeCellCount];
+            sizeCellMinY = new int[sizeCellCount];
+            sizeCellDirty = new boolean[sizeCellCount];
+            candidateCells = new long[sizeCellCount];
+
+            numSlots = 0;
+            nextOrder = 0;
+            unusedSlots.size = 0;
+            addFreeRect(0, 0, width, height);
+        }
+
+        /** Two size classes per power of two */
+        private int sizeClass(int size) {
+            if (size <= 1) {
+                return 0;
+            }
+            int bit = 31 - Integer.numberOfLeadingZeros(size);
+            return 2 * bit - 1 + ((size >> (bit - 1)) & 1);
+        }
+
+        private int sizeCell(int width, int height) {
+            return sizeClass(width) + sizeClass(height) * sizeGridSize;
+        }
+
+        private int cellMinX(int x) {
+            return Math.min(Math.max(x >> cellShift, 0), gridWidth - 1);
+        }
+
+        private int cellMinY(int y) {
+            return Math.min(Math.max(y >> cellShift, 0), gridHeight - 1);
+        }
+
+        private int cellMaxX(int x, int width) {
+            return cellMinX(x + Math.max(width, 1) - 1);
+        }
+
+        private int cellMaxY(int y, int height) {
+            return cellMinY(y + Math.max(height, 1) - 1);
+        }
+
+        private void addFreeRect(int x, int y, int width, int height) {
+            int slot;
+            if (unusedSlots.size > 0) {
+                slot = unusedSlots.data[--unusedSlots.size];
+            } else {
+                if (numSlots == freeX.length) {
+                    int capacity = numSlots * 2;
+                    freeX = Arrays.copyOf(freeX, capacity);
+                    freeY = Arrays.copyOf(freeY, capacity);
+                    freeW = Arrays.copyOf(freeW, capacity);
+                    freeH = Arrays.copyOf(freeH, capacity);
+                    freeOrder = Arrays.copyOf(freeOrder, capacity);
+                    slotVisited = Arrays.copyOf(slotVisited, capacity);
+                }
+                slot = numSlots++;
+            }
+            freeX[slot] = x;
+            freeY[slot] = y;
+            freeW[slot] = width;
+            freeH[slot] = height;
+            freeOrder[slot] = nextOrder++;
+
+            int sizeCell = sizeCell(width, height);
+            IntList sizeSlots = sizeCells[sizeCell];
+            if (sizeSlots == null) {
+                sizeSlots = new IntList();
+                sizeCells[sizeCell] = sizeSlots;
+            }
+            if (sizeSlots.size == 0) {
+                sizeCellMaxW[sizeCell] = width;
+                sizeCellMaxH[sizeCell] = height;
+                sizeCellMinW[sizeCell] = width;
+                sizeCellMinH[sizeCell] = height;
+                sizeCellMinArea[sizeCell] = width * height;
+                sizeCellMinY[sizeCell] = y;
+                sizeCellDirty[sizeCell] = false;
+            } else if (!sizeCellDirty[sizeCell]) {
+                sizeCellMaxW[sizeCell] = Math.max(sizeCellMaxW[sizeCell], width);
+                sizeCellMaxH[sizeCell] = Math.max(sizeCellMaxH[sizeCell], height);
+                sizeCellMinW[sizeCell] = Math.min(sizeCellMinW[sizeCell], width);
+                sizeCellMinH[sizeCell] = Math.min(sizeCellMinH[sizeCell], height);
+                sizeCellMinArea[sizeCell] = Math.min(sizeCellMinArea[sizeCell], width * height);
+                sizeCellMinY[sizeCell] = Math.min(sizeCellMinY[sizeCell], y);
+            }
+            sizeSlots.add(slot);
+
+            for (int cy = cellMinY(y), cy1 = cellMaxY(y, height); cy <= cy1; ++cy) {
+                for (int cx = cellMinX(x), cx1 = cellMaxX(x, width); cx <= cx1; ++cx) {
+                    IntList cell = cells[cx + cy * gridWidth];
+                    if (cell == null) {
+                        cell = new IntList();
+                        cells[cx + cy * gridWidth] = cell;
+                    }
+                    cell.add(slot);
+                }
+            }
+        }
+
+        private void removeFreeRect(int slot) {
+            int x = freeX[slot];
+            int y = freeY[slot];
+            for (int cy = cellMinY(y), cy1 = cellMaxY(y, freeH[slot]); cy <= cy1; ++cy) {
+                for (int cx = cellMinX(x), cx1 = cellMaxX(x, freeW[slot]); cx <= cx1; ++cx) {
+                    cells[cx + cy * gridWidth].removeValue(slot);
+                }
+            }
+            int sizeCell = sizeCell(freeW[slot], freeH[slot]);
+            sizeCells[sizeCell].removeValue(slot);
+            sizeCellDirty[sizeCell] = true;
+            freeOrder[slot] = NO_ORDER;
+            unusedSlots.add(slot);
+        }
+
+        private void updateSizeCellBounds(int sizeCell) {
+            IntList sizeSlots = sizeCells[sizeCell];
+            int maxW = 0, maxH = 0;
+            int minW = Integer.MAX_VALUE, minH = Integer.MAX_VALUE, minArea = Integer.MAX_VALUE, minY = Integer.MAX_VALUE;
+            for (int i = 0; i < sizeSlots.size; ++i) {
+                int slot = sizeSlots.data[i];
+                maxW = Math.max(maxW, freeW[slot]);
+                maxH = Math.max(maxH, freeH[slot]);
+                minW = Math.min(minW, freeW[slot]);
+                minH = Math.min(minH, freeH[slot]);
+                minArea = Math.min(minArea, freeW[slot] * freeH[slot]);
+                minY = Math.min(minY, freeY[slot]);
+            }
+            sizeCellMaxW[sizeCell] = maxW;
+            sizeCellMaxH[sizeCell] = maxH;
+            sizeCellMinW[sizeCell] = minW;
+            sizeCellMinH[sizeCell] = minH;
+            sizeCellMinArea[sizeCell] = minArea;
+            sizeCellMinY[sizeCell] = minY;
+            sizeCellDirty[sizeCell] = false;
+        }
+
+        /** Finds the free rectangles intersecting a rectangle, sorted in the order they were added */
+        private IntList queryIntersecting(int x, int y, int width, int height) {
+            queryResult.size = 0;
+            if (++visitId == 0) {
+                Arrays.fill(slotVisited, 0);
+                visitId = 1;
+            }
+            for (int cy = cellMinY(y), cy1 = cellMaxY(y, height); cy <= cy1; ++cy) {
+                for (int cx = cellMinX(x), cx1 = cellMaxX(x, width); cx <= cx1; ++cx) {
+                    IntList cell = cells[cx + cy * gridWidth];
+                    if (cell == null) {
+                        continue;
+                    }
+                    for (int i = 0; i < cell.size; ++i) {
+                        int slot = cell.data[i];
+                        if (slotVisited[slot] == visitId) {
+                            continue;
+                        }
+                        slotVisited[slot] = visitId;
+                        if (x >= freeX[slot] + freeW[slot] || x + width <= freeX[slot]
+                            || y >= freeY[slot] + freeH[slot] || y + height <= freeY[slot]) {
+                            continue;
+                        }
+                        queryResult.add(slot);
+                    }
+                }
+            }
+            // insertion sort on the order, there are typically only a few intersecting rectangles
+            int[] slots = queryResult.data;
+            for (int i = 1; i < queryResult.size; ++i) {
+                int slot = slots[i];
+                int j = i - 1;
+                while (j >= 0 && freeOrder[slots[j]] > freeOrder[slot]) {
+                    slots[j + 1] = slots[j];
+                    --j;
+                }
+                slots[j + 1] = slot;
+            }
+            return queryResult;
+        }
+
+        /** Checks if a rectangle is contained in any of the free rectangles */
+        private boolean isContainedInFreeRect(int x, int y, int width, int height) {
+            // a free rectangle containing the rectangle overlaps the cell of its corner
+            IntList cell = cells[cellMinX(x) + cellMinY(y) * gridWidth];
+            if (cell == null) {
+                return false;
+            }
+            for (int i = 0; i < cell.size; ++i) {
+                int slot = cell.data[i];
+                if (x >= freeX[slot] && y >= freeY[slot] && x + width <= freeX[slot] + freeW[slot] && y + height <= freeY[slot] + freeH[slot]) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private void addUsedEdge(HashMap<Integer, IntList> edges, int key, int start, int end) {
+            IntList list = edges.get(key);
+            if (list == null) {
+                list = new IntList();
+                edges.put(key, list);
+            }
+            list.add(start);
+            list.add(end);
+        }
+
+        private void addUsedRect(RectNode node) {
+            usedRectangles.add(node);
+            Rect r = node.rect;
+            addUsedEdge(usedByMinX, r.getX(), r.getY(), r.getY() + r.getHeight());
+            addUsedEdge(usedByMaxX, r.getX() + r.getWidth(), r.getY(), r.getY() + r.getHeight());
+            addUsedEdge(usedByMinY, r.getY(), r.getX(), r.getX() + r.getWidth());
+            addUsedEdge(usedByMaxY, r.getY() + r.getHeight(), r.getX(), r.getX() + r.getWidth());
         }
 
         /** Packs a single image. Order is defined externally. */
@@ -300,16 +697,7 @@ public class MaxRectsLayoutStrategy implements TextureSetLayoutStrategy {
             RectNode newNode = scoreRect(rect, method);
             if (newNode.rect.getHeight() == 0) return null;
 
-            int numRectanglesToProcess = freeRectangles.size();
-            for (int i = 0; i < numRectanglesToProcess; ++i) {
-                if (splitFreeNode(freeRectangles.get(i), newNode)) {
-                    freeRectangles.remove(i);
-                    --i;
-                    --numRectanglesToProcess;
-                }
-            }
-
-            pruneFreeList();
+            splitFreeRects(newNode.rect);
 
             RectNode bestNode = new RectNode(rect);
             bestNode.score1 = newNode.score1;
@@ -318,7 +706,7 @@ public class MaxRectsLayoutStrategy implements TextureSetLayoutStrategy {
             bestNode.rect.setId(rect.rect.getId());
             bestNode.rect.setIndex(rect.rect.getIndex());
 
-            usedRectangles.add(bestNode);
+            addUsedRect(bestNode);
             return bestNode;
         }
 
@@ -374,21 +762,19 @@ public class MaxRectsLayoutStrategy implements TextureSetLayoutStrategy {
         }
 
         private void placeRect (RectNode node) {
-            int numRectanglesToProcess = freeRectangles.size();
-            for (int i = 0; i < numRectanglesToProcess;) {
-                if (splitFreeNode(freeRectangles.get(i), node)) {
-                    freeRectangles.remove(i);
-                    --numRectanglesToProcess;
-                }
-                else
-                {
-                    ++i;
-                }
-            }
+            splitFreeRects(node.rect);
+            addUsedRect(node);
+        }
 
+        /** Splits the free rectangles intersecting a used rectangle, and prunes the new free rectangles */
+        private void splitFreeRects (Rect usedRect) {
+            IntList intersecting = queryIntersecting(usedRect.getX(), usedRect.getY(), usedRect.getWidth(), usedRect.getHeight());
+            int[] slots = Arrays.copyOf(intersecting.data, intersecting.size);
+            for (int slot : slots) {
+                splitFreeNode(slot, usedRect);
+                removeFreeRect(slot);
+            }
             pruneFreeList();
-
-            usedRectangles.add(node);
         }
 
         private RectNode scoreRect (RectNode node, FreeRectChoiceHeuristic method) {
@@ -397,25 +783,9 @@ public class MaxRectsLayoutStrategy implements TextureSetLayoutStrategy {
             int rotatedWidth = height - settings.paddingY + settings.paddingX;
             int rotatedHeight = width - settings.paddingX + settings.paddingY;
             boolean rotate = /*node.rect.canRotate &&*/ settings.rotation;
-
-            RectNode newNode = null;
-            switch (method) {
-            case BestShortSideFit:
-                newNode = findPositionForNewNodeBestShortSideFit(width, height, rotatedWidth, rotatedHeight, rotate);
-                break;
-            case BottomLeftRule:
-                newNode = findPositionForNewNodeBottomLeft(width, height, rotatedWidth, rotatedHeight, rotate);
-                break;
-            case ContactPointRule:
-                newNode = findPositionForNewNodeContactPoint(width, height, rotatedWidth, rotatedHeight, rotate);
+            RectNode newNode = findPositionForNewNode(method, width, height, rotatedWidth, rotatedHeight, rotate);
+            if (method == FreeRectChoiceHeuristic.ContactPointRule) {
                 newNode.score1 = -newNode.score1; // Reverse since we are minimizing, but for contact point score bigger is better.
-                break;
-            case BestLongSideFit:
-                newNode = findPositionForNewNodeBestLongSideFit(width, height, rotatedWidth, rotatedHeight, rotate);
-                break;
-            case BestAreaFit:
-                newNode = findPositionForNewNodeBestAreaFit(width, height, rotatedWidth, rotatedHeight, rotate);
-                break;
             }
 
             // Cannot fit the current rectangle.
@@ -435,151 +805,149 @@ public class MaxRectsLayoutStrategy implements TextureSetLayoutStrategy {
             return (float)usedSurfaceArea / (binWidth * binHeight);
         }
 
-        private RectNode findPositionForNewNodeBottomLeft (int width, int height, int rotatedWidth, int rotatedHeight, boolean rotate) {
-            RectNode bestNode = new RectNode();
-            bestNode.rect = new Rect(null, 0,0,0,0,0);
-            bestNode.score1 = Integer.MAX_VALUE; // best y, score2 is best x
-
-            for (int i = 0; i < freeRectangles.size(); i++) {
-                // Try to place the rectangle in upright (non-rotated) orientation.
-                RectNode currentNode = freeRectangles.get(i);
-                if (currentNode.rect.getWidth() >= width && currentNode.rect.getHeight() >= height) {
-                    int topSideY = currentNode.rect.getY() + height;
-                    if (topSideY < bestNode.score1 || (topSideY == bestNode.score1 && currentNode.rect.getX() < bestNode.score2)) {
-                        bestNode.rect = new Rect(currentNode.rect.getId(), currentNode.rect.getIndex(), currentNode.rect.getX(), currentNode.rect.getY(), width, height);
-                        bestNode.score1 = topSideY;
-                        bestNode.score2 = currentNode.rect.getX();
-                    }
-                }
-                if (rotate && currentNode.rect.getWidth() >= rotatedWidth && currentNode.rect.getHeight() >= rotatedHeight) {
-                    int topSideY = currentNode.rect.getY() + rotatedHeight;
-                    if (topSideY < bestNode.score1 || (topSideY == bestNode.score1 && currentNode.rect.getX() < bestNode.score2)) {
-                        bestNode.rect = new Rect(currentNode.rect.getId(), currentNode.rect.getIndex(), currentNode.rect.getX(), currentNode.rect.getY(), rotatedWidth, rotatedHeight);
-                        bestNode.score1 = topSideY;
-                        bestNode.score2 = currentNode.rect.getX();
-                        bestNode.rect.setRotated(true);
-                    }
-                }
+        // Best position found by findPositionForNewNode()
+        private int bestKey1;
+        private int bestKey2;
+        private int bestOrder;
+        private int bestX;
+        private int bestY;
+        private int bestWidth;
+        private int bestHeight;
+        private boolean bestRotated;
+
+        /** Keeps the position if its keys are lower than the best position. Ties go to the free rectangle added first. */
+        private void tryPosition (int key1, int key2, int slot, int width, int height, boolean rotated) {
+            int order = freeOrder[slot];
+            if (key1 < bestKey1 || (key1 == bestKey1 && (key2 < bestKey2 || (key2 == bestKey2 && order < bestOrder)))) {
+                bestKey1 = key1;
+                bestKey2 = key2;
+                bestOrder = order;
+                bestX = freeX[slot];
+                bestY = freeY[slot];
+                bestWidth = width;
+                bestHeight = height;
+                bestRotated = rotated;
             }
-            return bestNode;
         }
 
-        private RectNode findPositionForNewNodeBestShortSideFit (int width, int height, int rotatedWidth, int rotatedHeight,
-            boolean rotate) {
-            RectNode bestNode = new RectNode();
-            bestNode.rect = new Rect(null, 0,0,0,0,0);
-            bestNode.score1 = Integer.MAX_VALUE;
-
-            for (int i = 0; i < freeRectangles.size(); i++) {
-                // Try to place the rectangle in upright (non-rotated) orientation.
-                RectNode currentNode = freeRectangles.get(i);
-                if (currentNode.rect.getWidth() >= width && currentNode.rect.getHeight() >= height) {
-                    int leftoverHoriz = Math.abs(currentNode.rect.getWidth() - width);
-                    int leftoverVert = Math.abs(currentNode.rect.getHeight() - height);
-                    int shortSideFit = Math.min(leftoverHoriz, leftoverVert);
-                    int longSideFit = Math.max(leftoverHoriz, leftoverVert);
-
-                    if (shortSideFit < bestNode.score1 || (shortSideFit == bestNode.score1 && longSideFit < bestNode.score2)) {
-                        bestNode.rect = new Rect(currentNode.rect.getId(), currentNode.rect.getIndex(), currentNode.rect.getX(), currentNode.rect.getY(), width, height);
-                        bestNode.score1 = shortSideFit;
-                        bestNode.score2 = longSideFit;
-                    }
-                }
-
-                if (rotate && currentNode.rect.getWidth() >= rotatedWidth && currentNode.rect.getHeight() >= rotatedHeight) {
-                    int flippedLeftoverHoriz = Math.abs(currentNode.rect.getWidth() - rotatedWidth);
-                    int flippedLeftoverVert = Math.abs(currentNode.rect.getHeight() - rotatedHeight);
-                    int flippedShortSideFit = Math.min(flippedLeftoverHoriz, flippedLeftoverVert);
-                    int flippedLongSideFit = Math.max(flippedLeftoverHoriz, flippedLeftoverVert);
-
-                    if (flippedShortSideFit < bestNode.score1
-                        || (flippedShortSideFit == bestNode.score1 && flippedLongSideFit < bestNode.score2)) {
-                        bestNode.rect = new Rect(currentNode.rect.getId(), currentNode.rect.getIndex(), currentNode.rect.getX(), currentNode.rect.getY(), rotatedWidth, rotatedHeight);
-                        bestNode.score1 = flippedShortSideFit;
-                        bestNode.score2 = flippedLongSideFit;
-                        bestNode.rect.setRotated(true);
-                    }
-                }
+        private void tryPosition (FreeRectChoiceHeuristic method, int slot, int width, int height, int area, boolean rotated) {
+            int leftoverHoriz = Math.abs(freeW[slot] - width);
+            int leftoverVert = Math.abs(freeH[slot] - height);
+            int shortSideFit = Math.min(leftoverHoriz, leftoverVert);
+            int longSideFit = Math.max(leftoverHoriz, leftoverVert);
+            switch (method) {
+            case BestShortSideFit:
+                tryPosition(shortSideFit, longSideFit, slot, width, height, rotated);
+                break;
+            case BestLongSideFit:
+                tryPosition(longSideFit, shortSideFit, slot, width, height, rotated);
+                break;
+            case BestAreaFit:
+                int areaFit = freeW[slot] * freeH[slot] - area;
+                tryPosition(areaFit, shortSideFit, slot, width, height, rotated);
+                break;
+            case BottomLeftRule:
+                tryPosition(freeY[slot] + height, freeX[slot], slot, width, height, rotated);
+                break;
+            case ContactPointRule:
+                tryPosition(-contactPointScoreNode(freeX[slot], freeY[slot], width, height), 0, slot, width, height, rotated);
+                break;
             }
+        }
 
-            return bestNode;
+        /** A lower bound of the first key of a position in the free rectangles of a size cell */
+        private int minKey1 (FreeRectChoiceHeuristic method, int sizeCell, int width, int height, int area) {
+            switch (method) {
+            case BestShortSideFit:
+                return Math.min(sizeCellMinW[sizeCell] - width, sizeCellMinH[sizeCell] - height);
+            case BestLongSideFit:
+                return Math.max(sizeCellMinW[sizeCell] - width, sizeCellMinH[sizeCell] - height);
+            case BestAreaFit:
+                return sizeCellMinArea[sizeCell] - area;
+            case BottomLeftRule:
+                return sizeCellMinY[sizeCell] + height;
+            default:
+                return Integer.MIN_VALUE;
+            }
         }
 
-        private RectNode findPositionForNewNodeBestLongSideFit (int width, int height, int rotatedWidth, int rotatedHeight,
-            boolean rotate) {
-            RectNode bestNode = new RectNode();
-            bestNode.rect = new Rect(null, 0,0,0,0,0);
-            bestNode.score2 = Integer.MAX_VALUE;
-
-            for (int i = 0; i < freeRectangles.size(); i++) {
-                // Try to place the rectangle in upright (non-rotated) orientation.
-                RectNode currentNode = freeRectangles.get(i);
-                if (currentNode.rect.getWidth() >= width && currentNode.rect.getHeight() >= height) {
-                    int leftoverHoriz = Math.abs(currentNode.rect.getWidth() - width);
-                    int leftoverVert = Math.abs(currentNode.rect.getHeight() - height);
-                    int shortSideFit = Math.min(leftoverHoriz, leftoverVert);
-                    int longSideFit = Math.max(leftoverHoriz, leftoverVert);
-
-                    if (longSideFit < bestNode.score2 || (longSideFit == bestNode.score2 && shortSideFit < bestNode.score1)) {
-                        bestNode.rect = new Rect(currentNode.rect.getId(), currentNode.rect.getIndex(), currentNode.rect.getX(), currentNode.rect.getY(), width, height);
-                        bestNode.rect.setRotated(currentNode.rect.getRotated());
-                        bestNode.score1 = shortSideFit;
-                        bestNode.score2 = longSideFit;
-                    }
+        private RectNode findPositionForNewNode (FreeRectChoiceHeuristic method, int width, int height, int rotatedWidth, int rotatedHeight, boolean rotate) {
+            bestKey1 = Integer.MAX_VALUE;
+            bestKey2 = Integer.MAX_VALUE;
+            bestOrder = Integer.MAX_VALUE;
+            bestWidth = 0;
+            bestHeight = 0;
+
+            // The position with the lowest keys wins, and ties go to the free rectangle added
+            // first, so the free rectangles can be searched in any order. The size cells are
+            // searched by the lower bound of the first key, and the search stops at the first
+            // cell that can't have a lower first key than the best position so far.
+            // the area fit is measured against the upright rectangle in both orientations
+            int area = width * height;
+            int candidateCount = 0;
+            for (int sizeCell = 0; sizeCell < sizeCells.length; ++sizeCell) {
+                IntList sizeSlots = sizeCells[sizeCell];
+                if (sizeSlots == null || sizeSlots.size == 0) {
+                    continue;
                 }
-
-                if (rotate && currentNode.rect.getWidth() >= rotatedWidth && currentNode.rect.getHeight() >= rotatedHeight) {
-                    int leftoverHoriz = Math.abs(currentNode.rect.getWidth() - rotatedWidth);
-                    int leftoverVert = Math.abs(currentNode.rect.getHeight() - rotatedHeight);
-                    int shortSideFit = Math.min(leftoverHoriz, leftoverVert);
-                    int longSideFit = Math.max(leftoverHoriz, leftoverVert);
-
-                    if (longSideFit < bestNode.score2 || (longSideFit == bestNode.score2 && shortSideFit < bestNode.score1)) {
-                        bestNode.rect = new Rect(currentNode.rect.getId(), currentNode.rect.getIndex(), currentNode.rect.getX(), currentNode.rect.getY(), rotatedWidth, rotatedHeight);
-                        bestNode.score1 = shortSideFit;
-                        bestNode.score2 = longSideFit;
-                        bestNode.rect.setRotated(true);
-                    }
+                if (sizeCellDirty[sizeCell]) {
+                    updateSizeCellBounds(sizeCell);
                 }
+                boolean fitsUpright = sizeCellMaxW[sizeCell] >= width && sizeCellMaxH[sizeCell] >= height;
+                boolean fitsRotated = rotate && sizeCellMaxW[sizeCell] >= rotatedWidth && sizeCellMaxH[sizeCell] >= rotatedHeight;
+                if (!fitsUpright && !fitsRotated) {
+                    continue;
+                }
+                int minKey1 = Integer.MAX_VALUE;
+                if (fitsUpright) {
+                    minKey1 = minKey1(method, sizeCell, width, height, area);
+                }
+                if (fitsRotated) {
+                    minKey1 = Math.min(minKey1, minKey1(method, sizeCell, rotatedWidth, rotatedHeight, area));
+                }
+                candidateCells[candidateCount++] = ((long) minKey1 << 32) | sizeCell;
             }
-            return bestNode;
-        }
 
-        private RectNode findPositionForNewNodeBestAreaFit (int width, int height, int rotatedWidth, int rotatedHeight, boolean rotate) {
-            RectNode bestNode = new RectNode();
-            bestNode.rect = new Rect(null, 0,0,0,0,0);
-            bestNode.score1 = Integer.MAX_VALUE; // best area fit, score2 is best short side fit
-
-            for (int i = 0; i < freeRectangles.size(); i++) {
-                RectNode currentNode = freeRectangles.get(i);
-                int areaFit = currentNode.rect.getArea() - width * height;
-
-                // Try to place the rectangle in upright (non-rotated) orientation.
-                if (currentNode.rect.getWidth() >= width && currentNode.rect.getHeight() >= height) {
-                    int leftoverHoriz = Math.abs(currentNode.rect.getWidth() - width);
-                    int leftoverVert = Math.abs(currentNode.rect.getHeight() - height);
-                    int shortSideFit = Math.min(leftoverHoriz, leftoverVert);
-
-                    if (areaFit < bestNode.score1 || (areaFit == bestNode.score1 && shortSideFit < bestNode.score2)) {
-                        bestNode.rect = new Rect(currentNode.rect.getId(), currentNode.rect.getIndex(), currentNode.rect.getX(), currentNode.rect.getY(), width, height);
-                        bestNode.score2 = shortSideFit;
-                        bestNode.score1 = areaFit;
-                    }
+            Arrays.sort(candidateCells, 0, candidateCount);
+            for (int c = 0; c < candidateCount; ++c) {
+                if ((int) (candidateCells[c] >> 32) > bestKey1) {
+                    break;
                 }
-
-                if (rotate && currentNode.rect.getWidth() >= rotatedWidth && currentNode.rect.getHeight() >= rotatedHeight) {
-                    int leftoverHoriz = Math.abs(currentNode.rect.getWidth() - rotatedWidth);
-                    int leftoverVert = Math.abs(currentNode.rect.getHeight() - rotatedHeight);
-                    int shortSideFit = Math.min(leftoverHoriz, leftoverVert);
-
-                    if (areaFit < bestNode.score1 || (areaFit == bestNode.score1 && shortSideFit < bestNode.score2)) {
-                        bestNode.rect = new Rect(currentNode.rect.getId(), currentNode.rect.getIndex(), currentNode.rect.getX(), currentNode.rect.getY(), rotatedWidth, rotatedHeight);
-                        bestNode.score2 = shortSideFit;
-                        bestNode.score1 = areaFit;
-                        bestNode.rect.setRotated(true);
+                IntList sizeSlots = sizeCells[(int) candidateCells[c]];
+                for (int i = 0; i < sizeSlots.size; ++i) {
+                    int slot = sizeSlots.data[i];
+                    // Try to place the rectangle in upright (non-rotated) orientation.
+                    if (freeW[slot] >= width && freeH[slot] >= height) {
+                        tryPosition(method, slot, width, height, area, false);
+                    }
+                    if (rotate && freeW[slot] >= rotatedWidth && freeH[slot] >= rotatedHeight) {
+                        tryPosition(method, slot, rotatedWidth, rotatedHeight, area, true);
                     }
                 }
             }
+
+            RectNode bestNode = new RectNode();
+            if (bestHeight == 0) {
+                bestNode.rect = new Rect(null, 0, 0, 0, 0, 0);
+                return bestNode;
+            }
+            bestNode.rect = new Rect(null, 0, bestX, bestY, bestWidth, bestHeight);
+            bestNode.rect.setRotated(bestRotated);
+            switch (method) {
+            case BestShortSideFit:
+            case BestAreaFit:
+            case BottomLeftRule:
+                bestNode.score1 = bestKey1;
+                bestNode.score2 = bestKey2;
+                break;
+            case BestLongSideFit:
+                bestNode.score1 = bestKey2;
+                bestNode.score2 = bestKey1;
+                break;
+            case ContactPointRule:
+                bestNode.score1 = -bestKey1;
+                break;
+            }
             return bestNode;
         }
 
@@ -589,112 +957,81 @@ public class MaxRectsLayoutStrategy implements TextureSetLayoutStrategy {
             return Math.min(i1end, i2end) - Math.max(i1start, i2start);
         }
 
+        private int commonEdgeLength (HashMap<Integer, IntList> edges, int key, int start, int end) {
+            IntList list = edges.get(key);
+            if (list == null) {
+                return 0;
+            }
+            int length = 0;
+            for (int i = 0; i < list.size; i += 2) {
+                length += commonIntervalLength(list.data[i], list.data[i + 1], start, end);
+            }
+            return length;
+        }
+
         private int contactPointScoreNode (int x, int y, int width, int height) {
             int score = 0;
 
             if (x == 0 || x + width == binWidth) score += height;
             if (y == 0 || y + height == binHeight) score += width;
 
-            for (int i = 0; i < usedRectangles.size(); i++) {
-                RectNode currentNode = usedRectangles.get(i);
-                if (currentNode.rect.getX() == x + width || currentNode.rect.getX() + currentNode.rect.getWidth() == x)
-                    score += commonIntervalLength(currentNode.rect.getY(), currentNode.rect.getY() + currentNode.rect.getHeight(), y,
-                        y + height);
-                if (currentNode.rect.getY() == y + height || currentNode.rect.getY() + currentNode.rect.getHeight() == y)
-                    score += commonIntervalLength(currentNode.rect.getX(), currentNode.rect.getX() + currentNode.rect.getWidth(), x, x
-                        + width);
-            }
+            // used rectangles touching the left or right side
+            score += commonEdgeLength(usedByMinX, x + width, y, y + height);
+            score += commonEdgeLength(usedByMaxX, x, y, y + height);
+            // used rectangles touching the top or bottom side
+            score += commonEdgeLength(usedByMinY, y + height, x, x + width);
+            score += commonEdgeLength(usedByMaxY, y, x, x + width);
             return score;
         }
 
-        private RectNode findPositionForNewNodeContactPoint (int width, int height, int rotatedWidth, int rotatedHeight, boolean rotate) {
-            RectNode bestNode = new RectNode();
-            bestNode.rect = new Rect(null, 0,0,0,0,0);
-            bestNode.score1 = -1; // best contact score
-
-            for (int i = 0; i < freeRectangles.size(); i++) {
-                // Try to place the rectangle in upright (non-rotated) orientation.
-                RectNode currentNode = freeRectangles.get(i);
-                if (currentNode.rect.getWidth() >= width && currentNode.rect.getHeight() >= height) {
-                    int score = contactPointScoreNode(currentNode.rect.getX(), currentNode.rect.getY(), width, height);
-                    if (score > bestNode.score1) {
-                        bestNode.rect = new Rect(currentNode.rect.getId(), currentNode.rect.getIndex(), currentNode.rect.getX(), currentNode.rect.getY(), width, height);
-                        bestNode.score1 = score;
-                    }
-                }
-                if (rotate && currentNode.rect.getWidth() >= rotatedWidth && currentNode.rect.getHeight() >= rotatedHeight) {
-                    // This was width,height -- bug fixed?
-                    int score = contactPointScoreNode(currentNode.rect.getX(), currentNode.rect.getY(), rotatedWidth, rotatedHeight);
-                    if (score > bestNode.score1) {
-                        bestNode.rect = new Rect(currentNode.rect.getId(), currentNode.rect.getIndex(), currentNode.rect.getX(), currentNode.rect.getY(), rotatedWidth, rotatedHeight);
-                        bestNode.score1 = score;
-                        bestNode.rect.setRotated(true);
-                    }
-                }
-            }
-            return bestNode;
-        }
-
-        private boolean splitFreeNode (RectNode freeNode, RectNode usedNode) {
-            Rect freeRect = freeNode.rect;
-            Rect usedRect = usedNode.rect;
-            // Test with SAT if the rectangles even intersect.
-            if (usedRect.getX() >= freeRect.getX() + freeRect.getWidth() || usedRect.getX() + usedRect.getWidth() <= freeRect.getX()
-                || usedRect.getY() >= freeRect.getY() + freeRect.getHeight() || usedRect.getY() + usedRect.getHeight() <= freeRect.getY())
-                    return false;
+        private void splitFreeNode (int slot, Rect usedRect) {
+            int freeRectX = freeX[slot];
+            int freeRectY = freeY[slot];
+            int freeRectWidth = freeW[slot];
+            int freeRectHeight = freeH[slot];
 
             // We add up to four new free rectangles to the free rectangles list below. None of these
             // four newly added free rectangles can overlap any other three, so keep a mark of them
             // to avoid testing them against each other.
             newFreeRectanglesLastSize = newFreeRectangles.size();
 
-            if (usedRect.getX() < freeRect.getX() + freeRect.getWidth() && usedRect.getX() + usedRect.getWidth() > freeRect.getX()) {
+            if (usedRect.getX() < freeRectX + freeRectWidth && usedRect.getX() + usedRect.getWidth() > freeRectX) {
                 // New node at the top side of the used node.
-                if (usedRect.getY() > freeRect.getY() && usedRect.getY() < freeRect.getY() + freeRect.getHeight()) {
-                    RectNode newNode = new RectNode(freeNode);
-                    newNode.rect.setHeight(usedRect.getY() - newNode.rect.getY());
-                    insertNewFreeRectangle(newNode);
+                if (usedRect.getY() > freeRectY && usedRect.getY() < freeRectY + freeRectHeight) {
+                    insertNewFreeRectangle(new int[] { freeRectX, freeRectY, freeRectWidth, usedRect.getY() - freeRectY });
                 }
 
                 // New node at the bottom side of the used node.
-                if (usedRect.getY() + usedRect.getHeight() < freeRect.getY() + freeRect.getHeight()) {
-                    RectNode newNode = new RectNode(freeNode);
-                    newNode.rect.setY(usedRect.getY() + usedRect.getHeight());
-                    newNode.rect.setHeight(freeRect.getY() + freeRect.getHeight() - (usedRect.getY() + usedRect.getHeight()));
-                    insertNewFreeRectangle(newNode);
+                if (usedRect.getY() + usedRect.getHeight() < freeRectY + freeRectHeight) {
+                    int y = usedRect.getY() + usedRect.getHeight();
+                    insertNewFreeRectangle(new int[] { freeRectX, y, freeRectWidth, freeRectY + freeRectHeight - y });
                 }
             }
 
-            if (usedRect.getY() < freeRect.getY() + freeRect.getHeight() && usedRect.getY() + usedRect.getHeight() > freeRect.getY()) {
+            if (usedRect.getY() < freeRectY + freeRectHeight && usedRect.getY() + usedRect.getHeight() > freeRectY) {
                 // New node at the left side of the used node.
-                if (usedRect.getX() > freeRect.getX() && usedRect.getX() < freeRect.getX() + freeRect.getWidth()) {
-                    RectNode newNode = new RectNode(freeNode);
-                    newNode.rect.setWidth(usedRect.getX() - newNode.rect.getX());
-                    insertNewFreeRectangle(newNode);
+                if (usedRect.getX() > freeRectX && usedRect.getX() < freeRectX + freeRectWidth) {
+                    insertNewFreeRectangle(new int[] { freeRectX, freeRectY, usedRect.getX() - freeRectX, freeRectHeight });
                 }
 
                 // New node at the right side of the used node.
-                if (usedRect.getX() + usedRect.getWidth() < freeRect.getX() + freeRect.getWidth()) {
-                    RectNode newNode = new RectNode(freeNode);
-                    newNode.rect.setX(usedRect.getX() + usedRect.getWidth());
-                    newNode.rect.setWidth(freeRect.getX() + freeRect.getWidth() - (usedRect.getX() + usedRect.getWidth()));
-                    insertNewFreeRectangle(newNode);
+                if (usedRect.getX() + usedRect.getWidth() < freeRectX + freeRectWidth) {
+                    int x = usedRect.getX() + usedRect.getWidth();
+                    insertNewFreeRectangle(new int[] { x, freeRectY, freeRectX + freeRectWidth - x, freeRectHeight });
                 }
             }
-
-            return true;
         }
 
-        private void insertNewFreeRectangle(RectNode newFreeRect)
+        private void insertNewFreeRectangle(int[] newFreeRect)
         {
             for(int i = 0; i < newFreeRectanglesLastSize;)
             {
                 // This new free rectangle is already accounted for?
-                if (isContainedIn(newFreeRect.rect, newFreeRectangles.get(i).rect))
+                if (isContainedIn(newFreeRect, newFreeRectangles.get(i)))
                     return;
 
                 // Does this new free rectangle obsolete a previous new free rectangle?
-                if (isContainedIn(newFreeRectangles.get(i).rect, newFreeRect.rect))
+                if (isContainedIn(newFreeRectangles.get(i), newFreeRect))
                 {
                     // Remove i'th new free rectangle, but do so by retaining the order
                     // of the older vs newest free rectangles that we may still be placing
@@ -712,28 +1049,24 @@ public class MaxRectsLayoutStrategy implements TextureSetLayoutStrategy {
 
         private void pruneFreeList () {
             // Test all newly introduced free rectangles against old free rectangles.
-            for(int i = 0; i < freeRectangles.size(); ++i)
-            {
-                for(int j = 0; j < newFreeRectangles.size();)
-                {
-                    if (isContainedIn(newFreeRectangles.get(j).rect, freeRectangles.get(i).rect))
-                    {
-                        newFreeRectangles.remove(j);
-                    }
-                    else
-                    {
-                        ++j;
-                    }
+            for (int i = 0; i < newFreeRectangles.size();) {
+                int[] r = newFreeRectangles.get(i);
+                if (isContainedInFreeRect(r[0], r[1], r[2], r[3])) {
+                    newFreeRectangles.remove(i);
+                } else {
+                    ++i;
                 }
             }
 
             // Merge new and old free rectangles to the group of old free rectangles.
-            freeRectangles.addAll(newFreeRectangles);
+            for (int[] r : newFreeRectangles) {
+                addFreeRect(r[0], r[1], r[2], r[3]);
+            }
             newFreeRectangles.clear();
         }
 
-        private boolean isContainedIn (Rect a, Rect b) {
-            return a.getX() >= b.getX() && a.getY() >= b.getY() && a.getX() + a.getWidth() <= b.getX() + b.getWidth() && a.getY() + a.getHeight() <= b.getY() + b.getHeight();
+        private boolean isContainedIn (int[] a, int[] b) {
+            return a[0] >= b[0] && a[1] >= b[1] && a[0] + a[2] <= b[0] + b[2] && a[1] + a[3] <= b[1] + b[3];
         }
     }
 
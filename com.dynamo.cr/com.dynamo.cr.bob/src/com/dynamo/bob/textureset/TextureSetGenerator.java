@@ -37,9 +37,8 @@ import javax.vecmath.Point2d;
 import javax.vecmath.Vector2d;
 
 import java.awt.Color;
-import java.awt.Graphics2D;
-import java.awt.geom.AffineTransform;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
 import java.awt.image.Raster;
 
 import java.nio.ByteBuffer;
@@ -47,6 +46,7 @@ import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 /*
@@ -58,6 +58,10 @@ import javax.imageio.ImageIO;
 
 public class TextureSetGenerator {
 
+    // The fraction of the occupancy of the last layout packed from scratch that an
+    // incremental layout may lose before the images are packed from scratch again
+    private static final float MAX_LAYOUT_FRAGMENTATION = 0.25f;
+
     private static class Pair<L, R> {
         public Pair(L left, R right) {
             this.left = left;
@@ -153,11 +157,18 @@ public class TextureSetGenerator {
         public final List<Layout> layouts;
         public final int innerPadding;
         public final int extrudeBorders;
+        // The occupancy of the last layout packed from scratch
+        public final float referenceOccupancy;
 
-        public LayoutResult(List<Layout> layouts, int innerPadding, int extrudeBorders) {
+        public LayoutResult(List<Layout> layouts, int innerPadding, int extrudeBorders, float referenceOccupancy) {
             this.layouts = layouts;
             this.innerPadding = innerPadding;
             this.extrudeBorders = extrudeBorders;
+            this.referenceOccupancy = referenceOccupancy;
+        }
+
+        public LayoutResult(List<Layout> layouts, int innerPadding, int extrudeBorders) {
+            this(layouts, innerPadding, extrudeBorders, getOccupancy(layouts));
         }
 
         @Override
@@ -178,6 +189,7 @@ public class TextureSetGenerator {
         public List<BufferedImage> images;
         public final List<UVTransform> uvTransforms;
         public final LayoutResult layoutResult;
+        public TextureSetLayoutState layoutState;
 
         public TextureSetResult(TextureSet.Builder builder, List<UVTransform> uvTransforms, LayoutResult layoutResult) {
             this.builder = builder;
@@ -375,6 +387,16 @@ public class TextureSetGenerator {
      */
     public static LayoutResult calculateLayoutResult(List<Rect> images, int margin, int innerPadding, int extrudeBorders,
                                                     boolean rotate, boolean useTileGrid, Grid gridSize, float maxPageSizeW, float maxPageSizeH) {
+        return calculateLayoutResult(images, margin, innerPadding, extrudeBorders, rotate, useTileGrid, gridSize, maxPageSizeW, maxPageSizeH, null);
+    }
+
+    /* Calculate the layout of a set of images, keeping the placement of the images from a previous layout
+     * if they still fit there. The images are packed from scratch if the previous layout can't be used,
+     * if the images don't fit in its pages, or if the pages become too fragmented.
+     */
+    public static LayoutResult calculateLayoutResult(List<Rect> images, int margin, int innerPadding, int extrudeBorders,
+                                                    boolean rotate, boolean useTileGrid, Grid gridSize, float maxPageSizeW, float maxPageSizeH,
+                                                    TextureSetLayoutState previousLayoutState) {
         TimeProfiler.start("calculateLayoutResult");
 
         int totalSizeIncrease = 2 * (innerPadding + extrudeBorders);
@@ -393,14 +415,26 @@ public class TextureSetGenerator {
             resizedImages.get(i).setIndex(i);
         }
 
-        List<Layout> layouts;
+        List<Layout> layouts = null;
+        float referenceOccupancy = 0.0f;
 
         if (useTileGrid) {
             Layout layout = TextureSetLayout.gridLayout(margin, resizedImages, gridSize);
             layouts = new ArrayList<Layout>();
             layouts.add(layout);
+            referenceOccupancy = getOccupancy(layouts);
         } else {
-            layouts = TextureSetLayout.packedLayout(margin, resizedImages, rotate, maxPageSizeW, maxPageSizeH);
+            if (previousLayoutState != null && previousLayoutState.isCompatible(margin, innerPadding, extrudeBorders, rotate, maxPageSizeW, maxPageSizeH)) {
+                layouts = TextureSetLayout.createMaxRectsLayout(margin, resizedImages, rotate, previousLayoutState.layouts);
+                referenceOccupancy = previousLayoutState.referenceOccupancy;
+                if (layouts != null && getOccupancy(layouts) < referenceOccupancy * (1.0f - MAX_LAYOUT_FRAGMENTATION)) {
+                    layouts = null;
+                }
+            }
+            if (layouts == null) {
+                layouts = TextureSetLayout.packedLayout(margin, resizedImages, rotate, maxPageSizeW, maxPageSizeH);
+                referenceOccupancy = getOccupancy(layouts);
+            }
         }
 
         // Update the page indices
@@ -413,12 +447,25 @@ public class TextureSetGenerator {
             pageIndex++;
         }
 
-        LayoutResult result = new LayoutResult(layouts, innerPadding, extrudeBorders);
+        LayoutResult result = new LayoutResult(layouts, innerPadding, extrudeBorders, referenceOccupancy);
 
         TimeProfiler.stop();
         return result;
     }
 
+    // The fraction of the page area covered by the rects
+    private static float getOccupancy(List<Layout> layouts) {
+        long usedArea = 0;
+        long pageArea = 0;
+        for (Layout layout : layouts) {
+            pageArea += (long)layout.getWidth() * layout.getHeight();
+            for (Rect r : layout.getRectangles()) {
+                usedArea += r.getArea();
+            }
+        }
+        return pageArea > 0 ? (float)((double)usedArea / pageArea) : 0.0f;
+    }
+
     /**
      * Generate an atlas for individual images and animations. The basic steps of the algorithm are:
      * Create vertex data for each frame (image) in each animation
@@ -503,27 +550,7 @@ public class TextureSetGenerator {
     }
 
     public static BufferedImage layoutImages(Layout layout, int innerPadding, int extrudeBorders, Map<String, BufferedImage> images) {
-        BufferedImage packedImage = new BufferedImage(layout.getWidth(), layout.getHeight(), BufferedImage.TYPE_4BYTE_ABGR);
-        Graphics2D g = packedImage.createGraphics();
-        for (Rect r : layout.getRectangles()) {
-            BufferedImage image = images.get(r.getId());
-
-            if (innerPadding > 0) {
-                image = TextureUtil.createPaddedImage(image, innerPadding, paddingColour);
-            }
-
-            if (extrudeBorders > 0) {
-                image = TextureUtil.extrudeBorders(image, extrudeBorders);
-            }
-
-            if (r.getRotated()) {
-                image = rotateImage(image);
-            }
-
-            g.drawImage(image, r.getX(), r.getY(), null);
-        }
-        g.dispose();
-        return packedImage;
+        return composite(layout, innerPadding, extrudeBorders, r -> images.get(r.getId()));
     }
 
     // static int debugImageCount = 0;
@@ -545,6 +572,20 @@ public class TextureSetGenerator {
     public static TextureSetResult generate(List<BufferedImage> images, List<SpriteTrimmingMode> imageTrimModes, List<String> paths, AnimIterator iterator,
             int margin, int innerPadding, int extrudeBorders, boolean rotate, boolean useTileGrid, Grid gridSize,
             float maxPageSizeW, float maxPageSizeH) {
+        return generate(images, imageTrimModes, paths, iterator, margin, innerPadding, extrudeBorders, rotate, useTileGrid, gridSize,
+                        maxPageSizeW, maxPageSizeH, null);
+    }
+
+    /**
+     * Generate an atlas, keeping the placement of the images in a previous layout if possible.
+     * The layout of the atlas is returned in {@link TextureSetResult#layoutState} to be passed to the next generate.
+     *
+     * @param previousLayoutState the layout of a previous generate, or null to pack the images from scratch
+     * @return {@link AtlasMap}
+     */
+    public static TextureSetResult generate(List<BufferedImage> images, List<SpriteTrimmingMode> imageTrimModes, List<String> paths, AnimIterator iterator,
+            int margin, int innerPadding, int extrudeBorders, boolean rotate, boolean useTileGrid, Grid gridSize,
+            float maxPageSizeW, float maxPageSizeH, TextureSetLayoutState previousLayoutState) {
 
         List<Rect> imageRects = rectanglesFromImages(images, paths);
 
@@ -559,30 +600,13 @@ public class TextureSetGenerator {
         }
 
         // The layout step will expand the rect, and possibly rotate them
-        TextureSetResult result = calculateLayout(imageRects, imageHulls, useGeometries, iterator,
-            margin, innerPadding, extrudeBorders, rotate, useTileGrid, gridSize, maxPageSizeW, maxPageSizeH);
+        LayoutResult layoutResult = calculateLayoutResult(imageRects, margin, innerPadding, extrudeBorders, rotate,
+            useTileGrid, gridSize, maxPageSizeW, maxPageSizeH, previousLayoutState);
+        TextureSetResult result = calculateTextureSetResult(layoutResult, imageHulls, useGeometries, iterator);
+        result.layoutState = new TextureSetLayoutState(margin, rotate, maxPageSizeW, maxPageSizeH, layoutResult);
 
         for (Layout layout : result.layoutResult.layouts) {
-            List<BufferedImage> layoutImages = new ArrayList<>();
-            List<Rect> layoutRects           = layout.getRectangles();
-
-            for (Rect rect : layoutRects) {
-                BufferedImage image = images.get(rect.getIndex());
-
-                if (innerPadding > 0) {
-                    image = TextureUtil.createPaddedImage(image, innerPadding, paddingColour);
-                }
-                if (extrudeBorders > 0) {
-                    image = TextureUtil.extrudeBorders(image, extrudeBorders);
-                }
-                if (rect.getRotated()) {
-                    image = rotateImage(image);
-                }
-
-                layoutImages.add(image);
-            }
-
-            BufferedImage imgOut = composite(layoutImages, layout.getWidth(), layout.getHeight(), layoutRects);
+            BufferedImage imgOut = composite(layout, innerPadding, extrudeBorders, r -> images.get(r.getIndex()));
             result.images.add(imgOut);
             /*
             // For debugging page generation
@@ -600,26 +624,6 @@ public class TextureSetGenerator {
         return result;
     }
 
-    private static BufferedImage rotateImage(BufferedImage src) {
-        int width = src.getWidth();
-        int height = src.getHeight();
-
-        BufferedImage rotated = new BufferedImage(height, width, BufferedImage.TYPE_INT_ARGB);
-
-        AffineTransform tx = new AffineTransform();
-        // Centre on canvas
-        tx.translate(height/2.0, width/2.0);
-        // Rotation about image centre
-        tx.rotate(Math.PI / 2.0);
-        tx.translate(-width / 2.0, -height / 2.0);
-
-        Graphics2D g = rotated.createGraphics();
-        g.drawImage(src, tx, null);
-        g.dispose();
-
-        return rotated;
-    }
-
     private static Color paddingColour = new Color(0,0,0,0);
 
     private static List<BufferedImage> createInnerPadding(List<BufferedImage> images, int amount) {
@@ -647,14 +651,21 @@ public class TextureSetGenerator {
         return rectangles;
     }
 
-    private static BufferedImage composite(List<BufferedImage> images, int width, int height, List<Rect> rects) {
+    /**
+     * Create the image of a layout page. Each image is padded, extruded and rotated
+     * while it's copied straight into the pixels of the page. The rects of a layout
+     * don't overlap, so the images are copied in parallel.
+     */
+    private static BufferedImage composite(Layout layout, int innerPadding, int extrudeBorders, Function<Rect, BufferedImage> images) {
+        int width = layout.getWidth();
+        int height = layout.getHeight();
         BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_4BYTE_ABGR);
-        Graphics2D g = image.createGraphics();
-        int i = 0;
-        for (Rect r : rects) {
-            g.drawImage(images.get(i++), r.getX(), r.getY(), null);
-        }
-        g.dispose();
+        byte[] pixels = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+        layout.getRectangles().parallelStream().forEach(r -> {
+            BufferedImage src = images.apply(r);
+            TextureUtil.drawSprite(TextureUtil.getABGRPixels(src), src.getWidth(), src.getHeight(), innerPadding, extrudeBorders, r.getRotated(),
+                                   pixels, width, height, r.getX(), r.getY());
+        });
         return image;
     }
 
@@ -298,20 +298,7 @@ public class TextureSetLayout {
      * @return
      */
     public static List<Layout> createMaxRectsLayout(int margin, List<Rect> rectangles, boolean rotate, float maxPageSizeW, float maxPageSizeH) {
-        // Sort by area first, then longest side
-        Collections.sort(rectangles, new Comparator<Rect>() {
-            @Override
-            public int compare(Rect o1, Rect o2) {
-                int a1 = o1.getArea();
-                int a2 = o2.getArea();
-                if (a1 != a2) {
-                    return a2 - a1;
-                }
-                int n1 = Math.max(o1.rect.width, o1.rect.height);
-                int n2 = Math.max(o2.rect.width, o2.rect.height);
-                return n2 - n1;
-            }
-        });
+        sortRectangles(rectangles);
 
         boolean useMaxPageSize       = maxPageSizeW > 0 && maxPageSizeH > 0;
         final int defaultMinPageSize = 16;
@@ -398,6 +385,45 @@ public class TextureSetLayout {
         }
     }
 
+    /**
+     * Packs the rectangles into the pages of a previous layout. Rectangles that still fit
+     * in their previous placement are kept there, new or grown rectangles are packed into
+     * the free space.
+     * @param margin
+     * @param rectangles
+     * @param rotate
+     * @param previousLayouts layouts created with the same margin and rotation
+     * @return the layouts, or null if the rectangles don't fit in the pages of the previous layouts
+     */
+    public static List<Layout> createMaxRectsLayout(int margin, List<Rect> rectangles, boolean rotate, List<Layout> previousLayouts) {
+        sortRectangles(rectangles);
+
+        MaxRectsLayoutStrategy.Settings settings = new MaxRectsLayoutStrategy.Settings();
+        settings.paddingX = margin;
+        settings.paddingY = margin;
+        settings.rotation = rotate;
+
+        MaxRectsLayoutStrategy strategy = new MaxRectsLayoutStrategy(settings);
+        return strategy.createLayout(rectangles, previousLayouts);
+    }
+
+    // Sort by area first, then longest side
+    private static void sortRectangles(List<Rect> rectangles) {
+        Collections.sort(rectangles, new Comparator<Rect>() {
+            @Override
+            public int compare(Rect o1, Rect o2) {
+                int a1 = o1.getArea();
+                int a2 = o2.getArea();
+                if (a1 != a2) {
+                    return a2 - a1;
+                }
+                int n1 = Math.max(o1.rect.width, o1.rect.height);
+                int n2 = Math.max(o2.rect.width, o2.rect.height);
+                return n2 - n1;
+            }
+        });
+    }
+
     /////////////////////////////////////////////////////////////////////////////////////////////////////////
     // Public api for extensions!
 
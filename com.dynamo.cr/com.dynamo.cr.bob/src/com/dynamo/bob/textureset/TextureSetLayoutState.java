@@ -0,0 +1,169 @@
+// Copyright 2020-2024 The Defold Foundation
+// Copyright 2014-2020 King
+// Copyright 2009-2014 Ragnar Svensson, Christian Murray
+// Licensed under the Defold License version 1.0 (the "License"); you may not use
+// this file except in compliance with the License.
+//
+// You may obtain a copy of the License, together with FAQs at
+// https://www.defold.com/license
+//
+// Unless required by applicable law or agreed to in writing, software distributed
+// under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+// CONDITIONS OF ANY KIND, either express or implied. See the License for the
+// specific language governing permissions and limitations under the License.
+
+package com.dynamo.bob.textureset;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.dynamo.bob.fs.IResource;
+import com.dynamo.bob.textureset.TextureSetGenerator.LayoutResult;
+import com.dynamo.bob.textureset.TextureSetLayout.Layout;
+import com.dynamo.bob.textureset.TextureSetLayout.Rect;
+
+/**
+ * The layout of a texture set, persisted between builds so that a rebuild can
+ * keep the placement of the images that didn't change.
+ * A layout is only reused with the settings it was created with.
+ */
+public class TextureSetLayoutState {
+
+    private static final int VERSION = 1;
+
+    public final int margin;
+    public final int innerPadding;
+    public final int extrudeBorders;
+    public final boolean rotate;
+    public final float maxPageSizeW;
+    public final float maxPageSizeH;
+    // The occupancy of the last layout packed from scratch
+    public final float referenceOccupancy;
+    public final List<Layout> layouts;
+
+    public TextureSetLayoutState(int margin, int innerPadding, int extrudeBorders, boolean rotate, float maxPageSizeW, float maxPageSizeH,
+                                 float referenceOccupancy, List<Layout> layouts) {
+        this.margin = margin;
+        this.innerPadding = innerPadding;
+        this.extrudeBorders = extrudeBorders;
+        this.rotate = rotate;
+        this.maxPageSizeW = maxPageSizeW;
+        this.maxPageSizeH = maxPageSizeH;
+        this.referenceOccupancy = referenceOccupancy;
+        this.layouts = layouts;
+    }
+
+    public TextureSetLayoutState(int margin, boolean rotate, float maxPageSizeW, float maxPageSizeH, LayoutResult layoutResult) {
+        this(margin, layoutResult.innerPadding, layoutResult.extrudeBorders, rotate, maxPageSizeW, maxPageSizeH,
+             layoutResult.referenceOccupancy, layoutResult.layouts);
+    }
+
+    /**
+     * Check if the layout was created with the given settings
+     * @return true if the layout can be reused with the settings
+     */
+    public boolean isCompatible(int margin, int innerPadding, int extrudeBorders, boolean rotate, float maxPageSizeW, float maxPageSizeH) {
+        return this.margin == margin && this.innerPadding == innerPadding && this.extrudeBorders == extrudeBorders
+            && this.rotate == rotate && this.maxPageSizeW == maxPageSizeW && this.maxPageSizeH == maxPageSizeH;
+    }
+
+    public byte[] toByteArray() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(VERSION);
+        out.writeInt(margin);
+        out.writeInt(innerPadding);
+        out.writeInt(extrudeBorders);
+        out.writeBoolean(rotate);
+        out.writeFloat(maxPageSizeW);
+        out.writeFloat(maxPageSizeH);
+        out.writeFloat(referenceOccupancy);
+        out.writeInt(layouts.size());
+        for (Layout layout : layouts) {
+            out.writeInt(layout.getWidth());
+            out.writeInt(layout.getHeight());
+            out.writeInt(layout.getRectangles().size());
+            for (Rect r : layout.getRectangles()) {
+                out.writeUTF(r.getId());
+                out.writeInt(r.getX());
+                out.writeInt(r.getY());
+                out.writeInt(r.getWidth());
+                out.writeInt(r.getHeight());
+                out.writeBoolean(r.getRotated());
+            }
+        }
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Create a layout state from a byte array
+     * A layout state saved in an older format is discarded
+     * @param content the content created by {@link #toByteArray()}
+     * @return {@link TextureSetLayoutState} or null if the content isn't a layout state of this version
+     */
+    public static TextureSetLayoutState fromByteArray(byte[] content) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(content))) {
+            if (in.readInt() != VERSION) {
+                return null;
+            }
+            int margin = in.readInt();
+            int innerPadding = in.readInt();
+            int extrudeBorders = in.readInt();
+            boolean rotate = in.readBoolean();
+            float maxPageSizeW = in.readFloat();
+            float maxPageSizeH = in.readFloat();
+            float referenceOccupancy = in.readFloat();
+            int layoutCount = in.readInt();
+            List<Layout> layouts = new ArrayList<Layout>(layoutCount);
+            for (int i = 0; i < layoutCount; ++i) {
+                int width = in.readInt();
+                int height = in.readInt();
+                int rectCount = in.readInt();
+                List<Rect> rects = new ArrayList<Rect>(rectCount);
+                for (int j = 0; j < rectCount; ++j) {
+                    String id = in.readUTF();
+                    int x = in.readInt();
+                    int y = in.readInt();
+                    int w = in.readInt();
+                    int h = in.readInt();
+                    boolean rotated = in.readBoolean();
+                    rects.add(new Rect(id, j, i, x, y, w, h, rotated));
+                }
+                layouts.add(new Layout(width, height, rects));
+            }
+            return new TextureSetLayoutState(margin, innerPadding, extrudeBorders, rotate, maxPageSizeW, maxPageSizeH, referenceOccupancy, layouts);
+        } catch (IOException e) {
+            // Truncated content
+            return null;
+        }
+    }
+
+    /**
+     * Load layout state from resource
+     * @param resource layout state resource
+     * @return {@link TextureSetLayoutState} or null if there is no usable layout state
+     * @throws IOException
+     */
+    public static TextureSetLayoutState load(IResource resource) throws IOException {
+        byte[] content = resource.getContent();
+        if (content == null) {
+            return null;
+        }
+        return fromByteArray(content);
+    }
+
+    /**
+     * Save layout state
+     * @param resource layout state resource
+     * @throws IOException
+     */
+    public void save(IResource resource) throws IOException {
+        resource.setContent(toByteArray());
+    }
+}
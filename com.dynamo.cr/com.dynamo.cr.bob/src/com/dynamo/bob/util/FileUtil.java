@@ -22,7 +22,10 @@ import java.io.FileInputStream;
 import java.io.BufferedInputStream;
 import java.util.zip.Checksum;
 import java.util.zip.CRC32;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 
@@ -84,6 +87,36 @@ public class FileUtil {
 		return digest.digest();
 	}
 
+	/**
+	 * Move a file, atomically replacing the target if supported by the file system.
+	 * @param source the file to move
+	 * @param target the file to create or replace
+	 */
+	public static void moveFile(File source, File target) throws IOException {
+		try {
+			Files.move(source.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	/**
+	 * Hard link a file, or copy it if the file system does not support links
+	 * between the two paths. The source must never be modified in place, since
+	 * a link shares its content with the target.
+	 * @param source the file to link
+	 * @param target the file to create or replace
+	 */
+	public static void linkOrCopyFile(File source, File target) throws IOException {
+		Files.deleteIfExists(target.toPath());
+		target.getAbsoluteFile().getParentFile().mkdirs();
+		try {
+			Files.createLink(target.toPath(), source.toPath());
+		} catch (IOException | UnsupportedOperationException e) {
+			FileUtils.copyFile(source, target);
+		}
+	}
+
     public static void deleteOnExit(Path path) {
         File f = path.toFile();
         deleteOnExit(f);
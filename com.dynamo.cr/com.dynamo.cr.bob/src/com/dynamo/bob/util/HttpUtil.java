@@ -96,6 +96,44 @@ public class HttpUtil {
 		}
 	}
 
+	/**
+	 * Download a file if it exists. This saves a round trip compared to
+	 * calling exists() followed by downloadToFile()
+	 * @param url The URL to download
+	 * @param file The file to download to
+	 * @return true if the file was downloaded, false if it doesn't exist or
+	 * the server responded with an error
+	 */
+	public boolean downloadToFileIfExists(URL url, File file) {
+		try {
+			HttpURLConnection connection = openConnection(url, "GET");
+			connection.connect();
+			int code = connection.getResponseCode();
+
+			// S3 and GCS style servers respond 403 for missing keys
+			if (code == 404 || code == 403) {
+				connection.disconnect();
+				return false;
+			}
+			else if (code >= 400) {
+				logWarning("Status %d: Failed to download %s", code, url);
+				connection.disconnect();
+				return false;
+			}
+			InputStream input = new BufferedInputStream(connection.getInputStream());
+			FileUtils.copyInputStreamToFile(input, file);
+			IOUtils.closeQuietly(input);
+			connection.disconnect();
+			return true;
+		}
+		catch (ConnectException e) {
+			throw new RuntimeException(String.format("Connection refused by the server at %s", url.toString()), e);
+		}
+		catch (IOException e) {
+			throw new RuntimeException(String.format("Connection refused by the server at %s", url.toString()), e);
+		}
+	}
+
 	public void uploadFile(URL url, File file) {
 		try {
 			HttpURLConnection connection = openConnection(url, "PUT");
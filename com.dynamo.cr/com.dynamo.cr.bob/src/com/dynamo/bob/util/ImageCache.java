@@ -0,0 +1,127 @@
+// Copyright 2020-2024 The Defold Foundation
+// Copyright 2014-2020 King
+// Copyright 2009-2014 Ragnar Svensson, Christian Murray
+// Licensed under the Defold License version 1.0 (the "License"); you may not use
+// this file except in compliance with the License.
+//
+// You may obtain a copy of the License, together with FAQs at
+// https://www.defold.com/license
+//
+// Unless required by applicable law or agreed to in writing, software distributed
+// under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+// CONDITIONS OF ANY KIND, either express or implied. See the License for the
+// specific language governing permissions and limitations under the License.
+
+package com.dynamo.bob.util;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+import javax.imageio.ImageIO;
+
+import org.apache.commons.codec.digest.DigestUtils;
+
+/**
+ * Cache of decoded images, keyed on the digest of the encoded image data.
+ * The cache is bounded by the total number of pixels of the cached images,
+ * and the least recently used images are evicted first. An image that is
+ * being decoded by one thread is not decoded again by other threads asking
+ * for the same data.
+ *
+ * The cached images are shared and must not be modified.
+ */
+public class ImageCache {
+
+    private final long maxPixels;
+    private long pixels = 0;
+    private final LinkedHashMap<String, BufferedImage> images = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<String, FutureTask<BufferedImage>> decoding = new HashMap<>();
+
+    /**
+     * Create an image cache
+     * @param maxPixels Max total number of pixels of the cached images
+     */
+    public ImageCache(long maxPixels) {
+        this.maxPixels = maxPixels;
+    }
+
+    private static long getPixels(BufferedImage image) {
+        return (long) image.getWidth() * image.getHeight();
+    }
+
+    private synchronized void put(String key, BufferedImage image) {
+        long imagePixels = getPixels(image);
+        if (imagePixels > maxPixels || images.containsKey(key)) {
+            return;
+        }
+        images.put(key, image);
+        pixels += imagePixels;
+        Iterator<BufferedImage> it = images.values().iterator();
+        while (pixels > maxPixels && it.hasNext()) {
+            pixels -= getPixels(it.next());
+            it.remove();
+        }
+    }
+
+    /**
+     * Get the decoded image for some encoded image data, decoding it if it
+     * isn't cached
+     * @param data The encoded image data
+     * @return The decoded image, or null if the data isn't a supported image format
+     */
+    public BufferedImage get(byte[] data) throws IOException {
+        String key = DigestUtils.sha1Hex(data);
+        FutureTask<BufferedImage> task;
+        boolean decode = false;
+        synchronized (this) {
+            BufferedImage image = images.get(key);
+            if (image != null) {
+                return image;
+            }
+            task = decoding.get(key);
+            if (task == null) {
+                task = new FutureTask<>(() -> ImageIO.read(new ByteArrayInputStream(data)));
+                decoding.put(key, task);
+                decode = true;
+            }
+        }
+
+        if (decode) {
+            task.run();
+        }
+        try {
+            BufferedImage image = task.get();
+            if (decode && image != null) {
+                put(key, image);
+            }
+            return image;
+        } catch (InterruptedException | ExecutionException e) {
+            Throwable cause = e.getCause() != null ? e.getCause() : e;
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException("Unable to decode image", cause);
+        } finally {
+            if (decode) {
+                synchronized (this) {
+                    decoding.remove(key);
+                }
+            }
+        }
+    }
+
+    /**
+     * Remove all images from the cache
+     */
+    public synchronized void clear() {
+        images.clear();
+        pixels = 0;
+    }
+}
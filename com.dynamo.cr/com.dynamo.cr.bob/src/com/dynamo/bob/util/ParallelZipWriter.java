@@ -0,0 +1,462 @@
+// Copyright 2020-2024 The Defold Foundation
+// Copyright 2014-2020 King
+// Copyright 2009-2014 Ragnar Svensson, Christian Murray
+// Licensed under the Defold License version 1.0 (the "License"); you may not use
+// this file except in compliance with the License.
+//
+// You may obtain a copy of the License, together with FAQs at
+// https://www.defold.com/license
+//
+// Unless required by applicable law or agreed to in writing, software distributed
+// under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+// CONDITIONS OF ANY KIND, either express or implied. See the License for the
+// specific language governing permissions and limitations under the License.
+
+package com.dynamo.bob.util;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Zip file writer that reads and deflates entries on multiple threads.
+ *
+ * Each file is split into blocks which are deflated independently, using
+ * the end of the previous block as dictionary, and flushed to a byte
+ * boundary so that the blocks can be concatenated into a single deflate
+ * stream. The blocks are written to the zip file in the order the files were
+ * added, by the thread adding the files, so the output does not depend on
+ * the number of threads.
+ *
+ * Files that are already compressed (see STORED_EXTENSIONS), and files that
+ * don't get smaller when deflated, are stored. Large files and archives
+ * with many entries are written in the Zip64 format.
+ */
+public class ParallelZipWriter implements Closeable {
+
+    // Files with these extensions are stored without trying to deflate them
+    public static final Set<String> STORED_EXTENSIONS = new HashSet<>(Arrays.asList(
+        "arcd", "ogg", "basis", "png", "jpg", "jpeg", "webp", "zip", "jar", "apk", "gz"));
+
+    private static final int BLOCK_SIZE = 1024 * 1024;
+    private static final int DICTIONARY_SIZE = 32 * 1024;
+
+    private static final long ZIP64_LIMIT = 0xFFFFFFFFL;
+    private static final int ZIP64_ENTRIES_LIMIT = 0xFFFF;
+
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+    private static final int END_SIGNATURE = 0x06054b50;
+    private static final int ZIP64_END_SIGNATURE = 0x06064b50;
+    private static final int ZIP64_LOCATOR_SIGNATURE = 0x07064b50;
+    private static final short ZIP64_EXTRA_ID = 0x0001;
+
+    private static final int VERSION = 20;
+    private static final int VERSION_ZIP64 = 45;
+    private static final int FLAG_UTF8 = 0x0800;
+
+    private static final int METHOD_STORED = 0;
+    private static final int METHOD_DEFLATED = 8;
+
+    private static class Entry {
+        byte[] name;
+        File file;
+        FileChannel channel;
+        long size;
+        boolean zip64;
+        int method;
+        int dosTime;
+        long crc;
+        long compressedSize;
+        long localHeaderOffset;
+        long dataOffset;
+        CRC32 crc32 = new CRC32();
+    }
+
+    private static class Block {
+        Entry entry;
+        boolean first;
+        boolean last;
+        FutureTask<byte[][]> task;
+    }
+
+    private FileChannel out;
+    private int level = Deflater.DEFAULT_COMPRESSION;
+    private int maxThreads;
+    private ExecutorService executor;
+    private ArrayDeque<Block> pendingBlocks = new ArrayDeque<>();
+    private List<Entry> entries = new ArrayList<>();
+
+    /**
+     * Create a zip file writer
+     * @param file The zip file to write. An existing file is overwritten.
+     * @param maxThreads Max number of threads used to read and deflate files
+     */
+    public ParallelZipWriter(File file, int maxThreads) throws IOException {
+        this.out = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        this.maxThreads = Math.max(1, maxThreads);
+        if (this.maxThreads > 1) {
+            this.executor = Executors.newFixedThreadPool(this.maxThreads);
+        }
+    }
+
+    /**
+     * Set the deflate compression level
+     * @param level Compression level 0-9, or Deflater.DEFAULT_COMPRESSION
+     */
+    public void setLevel(int level) {
+        this.level = level;
+    }
+
+    /**
+     * Check if a file should be stored rather than deflated, based on its extension
+     * @param name The file name
+     * @return true if the file is already compressed
+     */
+    public static boolean isCompressedFile(String name) {
+        int index = name.lastIndexOf('.');
+        if (index < 0) {
+            return false;
+        }
+        return STORED_EXTENSIONS.contains(name.substring(index + 1).toLowerCase());
+    }
+
+    /**
+     * Add a file to the zip. The file is deflated unless it is already
+     * compressed, and is read and deflated in the background. The file must
+     * not change until the writer is closed.
+     * @param name The name of the entry in the zip
+     * @param file The file to add
+     */
+    public void putFile(String name, File file) throws IOException {
+        putFile(name, file, isCompressedFile(name));
+    }
+
+    /**
+     * Add a file to the zip
+     * @param name The name of the entry in the zip
+     * @param file The file to add
+     * @param store true if the file should be stored instead of deflated
+     */
+    public void putFile(String name, File file, boolean store) throws IOException {
+        Entry entry = new Entry();
+        entry.name = name.getBytes(StandardCharsets.UTF_8);
+        entry.file = file;
+        entry.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        entry.size = entry.channel.size();
+        entry.zip64 = entry.size >= ZIP64_LIMIT;
+        entry.method = store ? METHOD_STORED : METHOD_DEFLATED;
+        entry.dosTime = toDosTime(file.lastModified());
+
+        long numBlocks = Math.max(1, (entry.size + BLOCK_SIZE - 1) / BLOCK_SIZE);
+        for (long i = 0; i < numBlocks; ++i) {
+            final long offset = i * BLOCK_SIZE;
+            final int length = (int) Math.min(BLOCK_SIZE, entry.size - offset);
+            final boolean last = i == numBlocks - 1;
+            Block block = new Block();
+            block.entry = entry;
+            block.first = i == 0;
+            block.last = last;
+            block.task = new FutureTask<>(() -> readBlock(entry, offset, length, last));
+            addBlock(block);
+        }
+    }
+
+    private void addBlock(Block block) throws IOException {
+        // limit the number of blocks kept in memory
+        while (pendingBlocks.size() >= maxThreads * 2) {
+            writeBlock(pendingBlocks.poll());
+        }
+        pendingBlocks.add(block);
+        if (executor != null) {
+            executor.execute(block.task);
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int count = channel.read(buffer, position);
+            if (count < 0) {
+                throw new EOFException("Unexpected end of file");
+            }
+            position += count;
+        }
+    }
+
+    // Returns the data of the block and, unless the entry is stored, the
+    // deflated data of the block
+    private byte[][] readBlock(Entry entry, long offset, int length, boolean last) throws IOException {
+        int dictionaryLength = entry.method == METHOD_DEFLATED ? (int) Math.min(DICTIONARY_SIZE, offset) : 0;
+        byte[] buffer = new byte[dictionaryLength + length];
+        readFully(entry.channel, ByteBuffer.wrap(buffer), offset - dictionaryLength);
+        byte[] data = Arrays.copyOfRange(buffer, dictionaryLength, buffer.length);
+        if (entry.method == METHOD_STORED) {
+            return new byte[][] { data, null };
+        }
+
+        Deflater deflater = new Deflater(level, true);
+        try {
+            if (dictionaryLength > 0) {
+                deflater.setDictionary(buffer, 0, dictionaryLength);
+            }
+            deflater.setInput(data);
+            if (last) {
+                deflater.finish();
+            }
+            byte[] compressed = new byte[length + length / 8 + 64];
+            int compressedLength = 0;
+            while (true) {
+                if (compressedLength == compressed.length) {
+                    compressed = Arrays.copyOf(compressed, compressed.length * 2);
+                }
+                int available = compressed.length - compressedLength;
+                int count = deflater.deflate(compressed, compressedLength, available, last ? Deflater.NO_FLUSH : Deflater.SYNC_FLUSH);
+                compressedLength += count;
+                // the block is done when the whole stream is finished, or
+                // when the flush didn't fill the output buffer
+                if (last ? deflater.finished() : count < available) {
+                    break;
+                }
+            }
+            return new byte[][] { data, Arrays.copyOf(compressed, compressedLength) };
+        }
+        finally {
+            deflater.end();
+        }
+    }
+
+    private void writeBlock(Block block) throws IOException {
+        Entry entry = block.entry;
+        if (executor == null) {
+            block.task.run();
+        }
+        byte[][] result;
+        try {
+            result = block.task.get();
+        } catch (InterruptedException | ExecutionException e) {
+            Throwable cause = e.getCause() != null ? e.getCause() : e;
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException("Unable to read " + entry.file, cause);
+        }
+
+        if (block.first) {
+            entry.localHeaderOffset = out.position();
+            writeLocalHeader(entry);
+            entry.dataOffset = out.position();
+        }
+
+        byte[] data = result[0];
+        byte[] compressed = result[1];
+        entry.crc32.update(data);
+        writeFully(ByteBuffer.wrap(compressed != null ? compressed : data));
+
+        if (block.last) {
+            finishEntry(entry);
+        }
+    }
+
+    private void finishEntry(Entry entry) throws IOException {
+        entry.crc = entry.crc32.getValue();
+        entry.crc32 = null;
+        entry.compressedSize = out.position() - entry.dataOffset;
+        if (entry.method == METHOD_DEFLATED && entry.compressedSize >= entry.size) {
+            // the file didn't get any smaller, store it instead
+            entry.method = METHOD_STORED;
+            out.position(entry.dataOffset);
+            long position = 0;
+            while (position < entry.size) {
+                position += entry.channel.transferTo(position, entry.size - position, out);
+            }
+            entry.compressedSize = entry.size;
+            out.truncate(out.position());
+        }
+        entry.channel.close();
+        entry.channel = null;
+
+        // update the local header now that the crc and sizes are known
+        long end = out.position();
+        out.position(entry.localHeaderOffset);
+        writeLocalHeader(entry);
+        out.position(end);
+        entries.add(entry);
+    }
+
+    private void writeFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+    }
+
+    private static ByteBuffer allocate(int size) {
+        return ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static int toDosTime(long time) {
+        LocalDateTime date = LocalDateTime.ofInstant(Instant.ofEpochMilli(time), ZoneId.systemDefault());
+        if (date.getYear() < 1980) {
+            return (1 << 21) | (1 << 16);
+        }
+        return (date.getYear() - 1980) << 25 | date.getMonthValue() << 21 | date.getDayOfMonth() << 16
+             | date.getHour() << 11 | date.getMinute() << 5 | date.getSecond() >> 1;
+    }
+
+    private void writeLocalHeader(Entry entry) throws IOException {
+        ByteBuffer header = allocate(30 + entry.name.length + (entry.zip64 ? 20 : 0));
+        header.putInt(LOCAL_HEADER_SIGNATURE);
+        header.putShort((short) (entry.zip64 ? VERSION_ZIP64 : VERSION));
+        header.putShort((short) FLAG_UTF8);
+        header.putShort((short) entry.method);
+        header.putInt(entry.dosTime);
+        header.putInt((int) entry.crc);
+        header.putInt(entry.zip64 ? (int) ZIP64_LIMIT : (int) entry.compressedSize);
+        header.putInt(entry.zip64 ? (int) ZIP64_LIMIT : (int) entry.size);
+        header.putShort((short) entry.name.length);
+        header.putShort((short) (entry.zip64 ? 20 : 0));
+        header.put(entry.name);
+        if (entry.zip64) {
+            header.putShort(ZIP64_EXTRA_ID);
+            header.putShort((short) 16);
+            header.putLong(entry.size);
+            header.putLong(entry.compressedSize);
+        }
+        header.flip();
+        writeFully(header);
+    }
+
+    private void writeCentralHeader(Entry entry) throws IOException {
+        boolean zip64Size = entry.size >= ZIP64_LIMIT;
+        boolean zip64CompressedSize = entry.compressedSize >= ZIP64_LIMIT;
+        boolean zip64Offset = entry.localHeaderOffset >= ZIP64_LIMIT;
+        int extraLength = (zip64Size ? 8 : 0) + (zip64CompressedSize ? 8 : 0) + (zip64Offset ? 8 : 0);
+        if (extraLength > 0) {
+            extraLength += 4;
+        }
+        int version = (entry.zip64 || extraLength > 0) ? VERSION_ZIP64 : VERSION;
+
+        ByteBuffer header = allocate(46 + entry.name.length + extraLength);
+        header.putInt(CENTRAL_HEADER_SIGNATURE);
+        header.putShort((short) version);
+        header.putShort((short) version);
+        header.putShort((short) FLAG_UTF8);
+        header.putShort((short) entry.method);
+        header.putInt(entry.dosTime);
+        header.putInt((int) entry.crc);
+        header.putInt(zip64CompressedSize ? (int) ZIP64_LIMIT : (int) entry.compressedSize);
+        header.putInt(zip64Size ? (int) ZIP64_LIMIT : (int) entry.size);
+        header.putShort((short) entry.name.length);
+        header.putShort((short) extraLength);
+        header.putShort((short) 0); // comment length
+        header.putShort((short) 0); // disk number
+        header.putShort((short) 0); // internal attributes
+        header.putInt(0); // external attributes
+        header.putInt(zip64Offset ? (int) ZIP64_LIMIT : (int) entry.localHeaderOffset);
+        header.put(entry.name);
+        if (extraLength > 0) {
+            header.putShort(ZIP64_EXTRA_ID);
+            header.putShort((short) (extraLength - 4));
+            if (zip64Size) {
+                header.putLong(entry.size);
+            }
+            if (zip64CompressedSize) {
+                header.putLong(entry.compressedSize);
+            }
+            if (zip64Offset) {
+                header.putLong(entry.localHeaderOffset);
+            }
+        }
+        header.flip();
+        writeFully(header);
+    }
+
+    private void writeCentralDirectory() throws IOException {
+        long centralDirectoryOffset = out.position();
+        for (Entry entry : entries) {
+            writeCentralHeader(entry);
+        }
+        long centralDirectoryEnd = out.position();
+        long centralDirectorySize = centralDirectoryEnd - centralDirectoryOffset;
+
+        boolean zip64 = entries.size() >= ZIP64_ENTRIES_LIMIT
+                     || centralDirectoryOffset >= ZIP64_LIMIT
+                     || centralDirectorySize >= ZIP64_LIMIT;
+        if (zip64) {
+            ByteBuffer end = allocate(56 + 20);
+            end.putInt(ZIP64_END_SIGNATURE);
+            end.putLong(44); // size of the rest of the record
+            end.putShort((short) VERSION_ZIP64);
+            end.putShort((short) VERSION_ZIP64);
+            end.putInt(0); // disk number
+            end.putInt(0); // disk with the central directory
+            end.putLong(entries.size());
+            end.putLong(entries.size());
+            end.putLong(centralDirectorySize);
+            end.putLong(centralDirectoryOffset);
+
+            end.putInt(ZIP64_LOCATOR_SIGNATURE);
+            end.putInt(0); // disk with the zip64 end record
+            end.putLong(centralDirectoryEnd);
+            end.putInt(1); // number of disks
+            end.flip();
+            writeFully(end);
+        }
+
+        ByteBuffer end = allocate(22);
+        end.putInt(END_SIGNATURE);
+        end.putShort((short) 0); // disk number
+        end.putShort((short) 0); // disk with the central directory
+        end.putShort((short) Math.min(entries.size(), ZIP64_ENTRIES_LIMIT));
+        end.putShort((short) Math.min(entries.size(), ZIP64_ENTRIES_LIMIT));
+        end.putInt((int) Math.min(centralDirectorySize, ZIP64_LIMIT));
+        end.putInt((int) Math.min(centralDirectoryOffset, ZIP64_LIMIT));
+        end.putShort((short) 0); // comment length
+        end.flip();
+        writeFully(end);
+    }
+
+    /**
+     * Write all remaining entries and the central directory, and close the file
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            while (!pendingBlocks.isEmpty()) {
+                writeBlock(pendingBlocks.poll());
+            }
+            writeCentralDirectory();
+        }
+        finally {
+            if (executor != null) {
+                executor.shutdownNow();
+            }
+            for (Block block : pendingBlocks) {
+                if (block.entry.channel != null) {
+                    block.entry.channel.close();
+                }
+            }
+            out.close();
+        }
+    }
+}
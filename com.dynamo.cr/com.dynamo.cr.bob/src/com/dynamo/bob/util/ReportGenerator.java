@@ -16,9 +16,9 @@ package com.dynamo.bob.util;
 
 import java.util.Map;
 import java.util.HashMap;
-import java.util.List;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.InputStream;
 import java.io.IOException;
 import java.io.StringWriter;
@@ -27,8 +27,10 @@ import java.io.BufferedWriter;
 import com.dynamo.bob.Bob;
 import com.dynamo.bob.util.BobProjectProperties;
 import com.dynamo.bob.Project;
-import com.dynamo.bob.archive.ArchiveReader;
 import com.dynamo.bob.archive.ArchiveEntry;
+import com.dynamo.bob.archive.MappedArchiveReader;
+import com.dynamo.liveupdate.proto.Manifest.ManifestData;
+import com.dynamo.liveupdate.proto.Manifest.ManifestFile;
 
 import com.dynamo.bob.archive.publisher.Publisher;
 
@@ -137,33 +139,38 @@ public class ReportGenerator {
         String archiveData = FilenameUtils.concat(rootDir, "game.arcd");
         String manifest = FilenameUtils.concat(rootDir, "game.dmanifest");
 
-        ArchiveReader ar = new ArchiveReader(archiveIndex, archiveData, manifest);
-
-        ar.read();
-
-        List<ArchiveEntry> archiveEntries = ar.getEntries();
-        for (int i = 0; i < archiveEntries.size(); i++) {
-            ArchiveEntry archiveEntry = archiveEntries.get(i);
-            long compressedSize = archiveEntry.getCompressedSize() != -1 ? archiveEntry.getCompressedSize() : archiveEntry.getSize();
-            boolean encrypted = archiveEntry.isEncrypted();
-
-            if (this.resources.containsKey(archiveEntry.getFilename())) {
-                ResourceEntry resEntry = this.resources.get(archiveEntry.getFilename());
-                resEntry.compressedSize = compressedSize;
-                resEntry.size = archiveEntry.getSize();
-                resEntry.encrypted = encrypted;
-            } else {
-                ResourceEntry resEntry = new ResourceEntry(archiveEntry.getFilename(),
-                        archiveEntry.getSize(),
-                        compressedSize,
-                        encrypted);
+        ManifestData manifestData;
+        try (InputStream manifestInputStream = new FileInputStream(manifest)) {
+            manifestData = ManifestData.parseFrom(ManifestFile.parseFrom(manifestInputStream).getData());
+        }
 
-                this.resources.put(archiveEntry.getFilename(), resEntry);
+        // look up the manifest entries in the index instead of reading every entry
+        try (MappedArchiveReader ar = new MappedArchiveReader(new File(archiveIndex), new File(archiveData))) {
+            for (com.dynamo.liveupdate.proto.Manifest.ResourceEntry resource : manifestData.getResourcesList()) {
+                int index = ar.find(resource.getHash().getData().toByteArray());
+                if (index < 0) {
+                    continue; // excluded from the archive
+                }
+                String filename = resource.getUrl();
+                int size = ar.getSize(index);
+                long compressedSize = ar.getCompressedSize(index) != -1 ? ar.getCompressedSize(index) : size;
+                boolean encrypted = ar.isEncrypted(index);
+
+                if (this.resources.containsKey(filename)) {
+                    ResourceEntry resEntry = this.resources.get(filename);
+                    resEntry.compressedSize = compressedSize;
+                    resEntry.size = size;
+                    resEntry.encrypted = encrypted;
+                } else {
+                    ResourceEntry resEntry = new ResourceEntry(filename,
+                            size,
+                            compressedSize,
+                            encrypted);
+
+                    this.resources.put(filename, resEntry);
+                }
             }
-
         }
-
-        ar.close();
     }
 
 
@@ -0,0 +1,407 @@
+// Copyright 2020-2024 The Defold Foundation
+// Copyright 2014-2020 King
+// Copyright 2009-2014 Ragnar Svensson, Christian Murray
+// Licensed under the Defold License version 1.0 (the "License"); you may not use
+// this file except in compliance with the License.
+//
+// You may obtain a copy of the License, together with FAQs at
+// https://www.defold.com/license
+//
+// Unless required by applicable law or agreed to in writing, software distributed
+// under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+// CONDITIONS OF ANY KIND, either express or implied. See the License for the
+// specific language governing permissions and limitations under the License.
+
+
+package com.dynamo.bob.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Persistent table of path to signature (sha1) with optional file modification
+ * time and size. The table is stored in a versioned binary format:
+ *
+ *   header:  magic (4 bytes), version (int), entry count (int), offset of path data (int)
+ *   records: one fixed size record per entry, sorted by the UTF-8 bytes of the path
+ *            path offset (int), path length (int), mtime (long), size (long),
+ *            signature length (int), signature (20 bytes)
+ *   paths:   UTF-8 encoded paths
+ *
+ * An existing table is memory mapped and entries are looked up with a binary
+ * search when requested, nothing is decoded up front. Changes are kept in
+ * memory until the table is saved. If only existing entries were changed the
+ * records are updated in place, otherwise the file is rewritten.
+ *
+ * Lookups and changes may be done from several threads.
+ */
+public class SignatureTable {
+
+    private static final int MAGIC = 0x44534947; // "DSIG"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+    public static final int MAX_SIGNATURE_LENGTH = 20;
+    private static final int RECORD_SIZE = 4 + 4 + 8 + 8 + 4 + MAX_SIGNATURE_LENGTH;
+    // offset of the mtime field in a record, the fields after it can be updated in place
+    private static final int RECORD_VALUE_OFFSET = 8;
+
+    public static class Entry {
+        public final byte[] signature;
+        public final long mtime;
+        public final long size;
+
+        public Entry(byte[] signature, long mtime, long size) {
+            this.signature = signature;
+            this.mtime = mtime;
+            this.size = size;
+        }
+    }
+
+    // marks an entry which was removed since the table was loaded
+    private static final Entry REMOVED = new Entry(new byte[0], 0, 0);
+
+    private File source;
+    private ByteBuffer data;
+    private int count;
+    private int pathsOffset;
+    private final Map<String, Entry> changes = new ConcurrentHashMap<>();
+
+    /**
+     * Create an empty table
+     */
+    public SignatureTable() {
+    }
+
+    private SignatureTable(ByteBuffer data) {
+        if (data.capacity() < HEADER_SIZE || data.getInt(0) != MAGIC || data.getInt(4) != VERSION) {
+            // unknown or older format, start from an empty table
+            return;
+        }
+        int count = data.getInt(8);
+        int pathsOffset = data.getInt(12);
+        if (count < 0 || pathsOffset != HEADER_SIZE + count * RECORD_SIZE || pathsOffset > data.capacity()) {
+            return;
+        }
+        this.data = data;
+        this.count = count;
+        this.pathsOffset = pathsOffset;
+    }
+
+    private static boolean isWindows() {
+        return StringUtil.toLowerCase(System.getProperty("os.name")).indexOf("win") != -1;
+    }
+
+    /**
+     * Open a table stored in a file. The file is memory mapped, except on
+     * Windows where a mapped file can't be replaced and the file is read
+     * into memory instead. A missing or invalid file results in an empty table.
+     * @param file The file to open
+     * @return The table
+     */
+    public static SignatureTable open(File file) throws IOException {
+        if (!file.isFile()) {
+            SignatureTable table = new SignatureTable();
+            table.source = file;
+            return table;
+        }
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                return new SignatureTable();
+            }
+            ByteBuffer buffer;
+            if (isWindows()) {
+                buffer = ByteBuffer.allocate((int) size);
+                while (buffer.hasRemaining() && channel.read(buffer) != -1) {
+                }
+                buffer.flip();
+            } else {
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            }
+            SignatureTable table = new SignatureTable(buffer);
+            table.source = file;
+            return table;
+        }
+    }
+
+    /**
+     * Create a table from serialized data
+     * @param content The data, as created by toByteArray()
+     * @return The table. Invalid data results in an empty table.
+     */
+    public static SignatureTable fromByteArray(byte[] content) {
+        return new SignatureTable(ByteBuffer.wrap(content));
+    }
+
+    private static int compare(ByteBuffer data, int offset, int length, byte[] key) {
+        int n = Math.min(length, key.length);
+        for (int i = 0; i < n; ++i) {
+            int cmp = Integer.compare(data.get(offset + i) & 0xff, key[i] & 0xff);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return Integer.compare(length, key.length);
+    }
+
+    private static int compare(byte[] a, byte[] b) {
+        return compare(ByteBuffer.wrap(a), 0, a.length, b);
+    }
+
+    private static int recordOffset(int index) {
+        return HEADER_SIZE + index * RECORD_SIZE;
+    }
+
+    private int find(byte[] key) {
+        int low = 0;
+        int high = count - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int record = recordOffset(mid);
+            int cmp = compare(data, pathsOffset + data.getInt(record), data.getInt(record + 4), key);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    private String readPath(int index) {
+        int record = recordOffset(index);
+        byte[] path = new byte[data.getInt(record + 4)];
+        for (int i = 0; i < path.length; ++i) {
+            path[i] = data.get(pathsOffset + data.getInt(record) + i);
+        }
+        return new String(path, StandardCharsets.UTF_8);
+    }
+
+    private Entry readEntry(int index) {
+        int record = recordOffset(index) + RECORD_VALUE_OFFSET;
+        long mtime = data.getLong(record);
+        long size = data.getLong(record + 8);
+        byte[] signature = new byte[Math.min(data.getInt(record + 16), MAX_SIGNATURE_LENGTH)];
+        for (int i = 0; i < signature.length; ++i) {
+            signature[i] = data.get(record + 20 + i);
+        }
+        return new Entry(signature, mtime, size);
+    }
+
+    /**
+     * Get the entry for a path
+     * @param path The path to get the entry for
+     * @return The entry or null if no entry exists
+     */
+    public Entry get(String path) {
+        Entry entry = changes.get(path);
+        if (entry != null) {
+            return entry == REMOVED ? null : entry;
+        }
+        if (data == null) {
+            return null;
+        }
+        int index = find(path.getBytes(StandardCharsets.UTF_8));
+        return index < 0 ? null : readEntry(index);
+    }
+
+    /**
+     * Get the signature for a path
+     * @param path The path to get the signature for
+     * @return The signature or null if no entry exists
+     */
+    public byte[] getSignature(String path) {
+        Entry entry = get(path);
+        return entry == null ? null : entry.signature;
+    }
+
+    /**
+     * Set the entry for a path
+     * @param path The path to set the entry for
+     * @param signature The signature. At most 20 bytes.
+     * @param mtime Modification time of the file, or 0
+     * @param size Size of the file, or 0
+     */
+    public void put(String path, byte[] signature, long mtime, long size) {
+        if (signature.length > MAX_SIGNATURE_LENGTH) {
+            throw new IllegalArgumentException(String.format("Signature for '%s' is longer than %d bytes", path, MAX_SIGNATURE_LENGTH));
+        }
+        changes.put(path, new Entry(signature, mtime, size));
+    }
+
+    /**
+     * Set the signature for a path
+     * @param path The path to set the signature for
+     * @param signature The signature. At most 20 bytes.
+     */
+    public void put(String path, byte[] signature) {
+        put(path, signature, 0, 0);
+    }
+
+    /**
+     * Remove the entry for a path
+     * @param path The path to remove
+     */
+    public void remove(String path) {
+        changes.put(path, REMOVED);
+    }
+
+    /**
+     * Get all paths with an entry in the table
+     * @return list of paths
+     */
+    public List<String> getPaths() {
+        return new ArrayList<>(merge().keySet());
+    }
+
+    // all entries, sorted by the UTF-8 bytes of the path
+    private Map<byte[], Entry> mergeEncoded() {
+        Map<byte[], Entry> entries = new TreeMap<>(SignatureTable::compare);
+        for (int i = 0; i < count; ++i) {
+            String path = readPath(i);
+            if (!changes.containsKey(path)) {
+                entries.put(path.getBytes(StandardCharsets.UTF_8), readEntry(i));
+            }
+        }
+        for (Map.Entry<String, Entry> change : changes.entrySet()) {
+            if (change.getValue() != REMOVED) {
+                entries.put(change.getKey().getBytes(StandardCharsets.UTF_8), change.getValue());
+            }
+        }
+        return entries;
+    }
+
+    private Map<String, Entry> merge() {
+        Map<String, Entry> entries = new TreeMap<>();
+        for (Map.Entry<byte[], Entry> entry : mergeEncoded().entrySet()) {
+            entries.put(new String(entry.getKey(), StandardCharsets.UTF_8), entry.getValue());
+        }
+        return entries;
+    }
+
+    private static void writeValue(ByteBuffer buffer, Entry entry) {
+        buffer.putLong(entry.mtime);
+        buffer.putLong(entry.size);
+        buffer.putInt(entry.signature.length);
+        buffer.put(entry.signature);
+        buffer.put(new byte[MAX_SIGNATURE_LENGTH - entry.signature.length]);
+    }
+
+    /**
+     * Serialize the table
+     * @return The table in the binary format
+     */
+    public synchronized byte[] toByteArray() {
+        Map<byte[], Entry> entries = mergeEncoded();
+        int pathsSize = 0;
+        for (byte[] path : entries.keySet()) {
+            pathsSize += path.length;
+        }
+        int pathsOffset = HEADER_SIZE + entries.size() * RECORD_SIZE;
+        ByteBuffer buffer = ByteBuffer.allocate(pathsOffset + pathsSize);
+        buffer.putInt(MAGIC);
+        buffer.putInt(VERSION);
+        buffer.putInt(entries.size());
+        buffer.putInt(pathsOffset);
+        int pathOffset = 0;
+        for (Map.Entry<byte[], Entry> entry : entries.entrySet()) {
+            buffer.putInt(pathOffset);
+            buffer.putInt(entry.getKey().length);
+            writeValue(buffer, entry.getValue());
+            pathOffset += entry.getKey().length;
+        }
+        for (byte[] path : entries.keySet()) {
+            buffer.put(path);
+        }
+        return buffer.array();
+    }
+
+    /**
+     * Check if the table has changed since it was loaded
+     * @return true if there are unsaved changes
+     */
+    public boolean isModified() {
+        return !changes.isEmpty();
+    }
+
+    /**
+     * Save the table to a file. Nothing is written if the table is unchanged.
+     * If only entries that exist in the file were changed, and the table was
+     * opened from the same file, the changed records are written in place.
+     * Otherwise the table is written to a temporary file which replaces the
+     * file.
+     * @param file The file to save to
+     */
+    public synchronized void save(File file) throws IOException {
+        boolean sameFile = file.equals(source) && data != null && file.length() == data.capacity();
+        if (sameFile && changes.isEmpty()) {
+            return;
+        }
+        if (sameFile && saveInPlace(file)) {
+            return;
+        }
+
+        Path path = file.toPath();
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (!parent.exists()) {
+            parent.mkdirs();
+        }
+        Path tmp = Files.createTempFile(parent.toPath(), file.getName(), ".tmp");
+        try {
+            Files.write(tmp, toByteArray());
+            try {
+                Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    private boolean saveInPlace(File file) throws IOException {
+        int[] indices = new int[changes.size()];
+        Entry[] entries = new Entry[changes.size()];
+        int i = 0;
+        for (Map.Entry<String, Entry> change : changes.entrySet()) {
+            if (change.getValue() == REMOVED) {
+                return false;
+            }
+            int index = find(change.getKey().getBytes(StandardCharsets.UTF_8));
+            if (index < 0) {
+                return false;
+            }
+            indices[i] = index;
+            entries[i] = change.getValue();
+            ++i;
+        }
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+            ByteBuffer value = ByteBuffer.allocate(RECORD_SIZE - RECORD_VALUE_OFFSET);
+            for (i = 0; i < indices.length; ++i) {
+                value.clear();
+                writeValue(value, entries[i]);
+                value.flip();
+                long position = recordOffset(indices[i]) + RECORD_VALUE_OFFSET;
+                while (value.hasRemaining()) {
+                    position += channel.write(value, position);
+                }
+            }
+        }
+        return true;
+    }
+}
@@ -17,18 +17,23 @@ package com.dynamo.bob.util;
 import java.awt.Color;
 import java.awt.Graphics2D;
 import java.awt.image.BufferedImage;
-import java.io.ByteArrayInputStream;
+import java.awt.image.DataBufferByte;
+import java.awt.image.WritableRaster;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.lang.reflect.Array;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 import java.util.HashMap;
-
-import javax.imageio.ImageIO;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import com.google.protobuf.ByteString;
 import com.dynamo.bob.CompileExceptionError;
+import com.dynamo.bob.Project;
 import com.dynamo.bob.fs.IResource;
 import com.dynamo.bob.pipeline.TextureGenerator;
 import com.dynamo.bob.pipeline.TextureGeneratorException;
@@ -106,6 +111,12 @@ public class TextureUtil {
 
         BufferedImage result = new BufferedImage(newWidth, newHeight, BufferedImage.TYPE_4BYTE_ABGR);
 
+        if (paddingColour.getRGB() == 0) {
+            byte[] pixels = ((DataBufferByte) result.getRaster().getDataBuffer()).getData();
+            drawSprite(getABGRPixels(src), origWidth, origHeight, paddingAmount, 0, false, pixels, newWidth, newHeight, 0, 0);
+            return result;
+        }
+
         Graphics2D graphics = result.createGraphics();
         graphics.setBackground(paddingColour);
         graphics.clearRect(0, 0, newWidth, newHeight);
@@ -137,6 +148,27 @@ public class TextureUtil {
             int type = getImageType(src);
 
             BufferedImage tgt = new BufferedImage(newWidth, newHeight, type);
+            if (type == src.getType()) {
+                // Same pixel format, copy the rows of raw pixel data
+                WritableRaster srcRaster = src.getRaster();
+                int numElements = srcRaster.getNumDataElements();
+                Object srcData = srcRaster.getDataElements(0, 0, origWidth, origHeight, null);
+                Object tgtData = Array.newInstance(srcData.getClass().getComponentType(), newWidth * newHeight * numElements);
+                int srcRowLength = origWidth * numElements;
+                int tgtRowLength = newWidth * numElements;
+                for (int y = 0; y < newHeight; ++y) {
+                    int srcRow = Math.min(Math.max(y - extrudeBorders, 0), origHeight-1) * srcRowLength;
+                    int tgtRow = y * tgtRowLength;
+                    for (int x = 0; x < extrudeBorders; ++x) {
+                        System.arraycopy(srcData, srcRow, tgtData, tgtRow + x * numElements, numElements);
+                        System.arraycopy(srcData, srcRow + srcRowLength - numElements, tgtData, tgtRow + tgtRowLength - (x + 1) * numElements, numElements);
+                    }
+                    System.arraycopy(srcData, srcRow, tgtData, tgtRow + extrudeBorders * numElements, srcRowLength);
+                }
+                tgt.getRaster().setDataElements(0, 0, newWidth, newHeight, tgtData);
+                return tgt;
+            }
+
             int numComponents = src.getColorModel().getNumComponents();
             int[] srcPixels = new int[origWidth * origHeight * numComponents];
             src.getRaster().getPixels(0, 0, origWidth, origHeight, srcPixels);
@@ -159,6 +191,193 @@ public class TextureUtil {
         }
     }
 
+    // When Java2D draws a semi transparent pixel onto a transparent image, its colour is
+    // premultiplied with the alpha and divided by it again with 8 bit fixed point math,
+    // which rounds the colour. ALPHA_ROUNDING[alpha * 256 + colour] is the rounded colour,
+    // computed with the same tables as Java2D.
+    private static final byte[] ALPHA_ROUNDING = createAlphaRounding();
+
+    private static byte[] createAlphaRounding() {
+        int[] mul8 = new int[256 * 256];
+        int[] div8 = new int[256 * 256];
+        for (int i = 1; i < 256; ++i) {
+            int inc = (i << 16) + (i << 8) + i;
+            int val = inc + (1 << 23);
+            for (int j = 1; j < 256; ++j) {
+                mul8[i * 256 + j] = val >>> 24;
+                val += inc;
+            }
+        }
+        for (int i = 1; i < 256; ++i) {
+            int inc = (int) (((0xffL << 24) + i / 2) / i);
+            int val = 1 << 23;
+            for (int j = 0; j < i; ++j) {
+                div8[i * 256 + j] = val >>> 24;
+                val += inc;
+            }
+            for (int j = i; j < 256; ++j) {
+                div8[i * 256 + j] = 255;
+            }
+        }
+
+        byte[] rounding = new byte[256 * 256];
+        for (int a = 1; a < 256; ++a) {
+            for (int c = 0; c < 256; ++c) {
+                rounding[a * 256 + c] = (byte) (a == 255 ? c : div8[a * 256 + mul8[a * 256 + c]]);
+            }
+        }
+        return rounding;
+    }
+
+    /**
+     * Get the pixels of an image in the layout of {@link BufferedImage#TYPE_4BYTE_ABGR}, four bytes
+     * per pixel in A, B, G, R order. The pixels are the same as when the image is drawn onto a
+     * transparent image with Graphics2D: the colours of semi transparent pixels are rounded and
+     * fully transparent pixels are cleared.
+     * @param image the image
+     * @return the pixels, row by row
+     */
+    public static byte[] getABGRPixels(BufferedImage image) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int type = image.getType();
+        byte[] pixels;
+        switch (type) {
+        case BufferedImage.TYPE_4BYTE_ABGR: {
+            // The data elements are in band order, R, G, B, A
+            pixels = (byte[]) image.getRaster().getDataElements(0, 0, width, height, null);
+            for (int i = 0; i < pixels.length; i += 4) {
+                byte r = pixels[i];
+                byte g = pixels[i + 1];
+                pixels[i] = pixels[i + 3];
+                pixels[i + 1] = pixels[i + 2];
+                pixels[i + 2] = g;
+                pixels[i + 3] = r;
+            }
+            break;
+        }
+        case BufferedImage.TYPE_3BYTE_BGR: {
+            byte[] rgb = (byte[]) image.getRaster().getDataElements(0, 0, width, height, null);
+            pixels = new byte[width * height * 4];
+            for (int i = 0, j = 0; i < pixels.length; i += 4, j += 3) {
+                pixels[i] = (byte) 0xff;
+                pixels[i + 1] = rgb[j + 2];
+                pixels[i + 2] = rgb[j + 1];
+                pixels[i + 3] = rgb[j];
+            }
+            return pixels;
+        }
+        case BufferedImage.TYPE_INT_ARGB:
+        case BufferedImage.TYPE_INT_RGB: {
+            int[] argb = (int[]) image.getRaster().getDataElements(0, 0, width, height, null);
+            boolean opaque = type == BufferedImage.TYPE_INT_RGB;
+            pixels = new byte[width * height * 4];
+            for (int i = 0, j = 0; i < pixels.length; i += 4, ++j) {
+                int pixel = argb[j];
+                pixels[i] = opaque ? (byte) 0xff : (byte) (pixel >>> 24);
+                pixels[i + 1] = (byte) pixel;
+                pixels[i + 2] = (byte) (pixel >> 8);
+                pixels[i + 3] = (byte) (pixel >> 16);
+            }
+            if (opaque) {
+                return pixels;
+            }
+            break;
+        }
+        default: {
+            // Let Java2D convert other formats, such as palettes, grey scale and 16 bit images
+            BufferedImage abgr = new BufferedImage(width, height, BufferedImage.TYPE_4BYTE_ABGR);
+            Graphics2D graphics = abgr.createGraphics();
+            graphics.drawImage(image, 0, 0, null);
+            graphics.dispose();
+            return ((DataBufferByte) abgr.getRaster().getDataBuffer()).getData();
+        }
+        }
+
+        for (int i = 0; i < pixels.length; i += 4) {
+            int a = pixels[i] & 0xff;
+            if (a == 0) {
+                pixels[i + 1] = 0;
+                pixels[i + 2] = 0;
+                pixels[i + 3] = 0;
+            } else if (a != 255) {
+                int row = a * 256;
+                pixels[i + 1] = ALPHA_ROUNDING[row + (pixels[i + 1] & 0xff)];
+                pixels[i + 2] = ALPHA_ROUNDING[row + (pixels[i + 2] & 0xff)];
+                pixels[i + 3] = ALPHA_ROUNDING[row + (pixels[i + 3] & 0xff)];
+            }
+        }
+        return pixels;
+    }
+
+    /**
+     * Copy a sprite into an image, both in the layout of {@link BufferedImage#TYPE_4BYTE_ABGR}.
+     * The sprite is surrounded by transparent inner padding, then its borders are extruded, and
+     * it's rotated 90 degrees clockwise if rotated is set. The copied pixels replace the pixels
+     * of the image, and the pixels outside of the image are clipped.
+     * @param src the sprite pixels, see {@link #getABGRPixels(BufferedImage)}
+     * @param srcWidth the width of the sprite
+     * @param srcHeight the height of the sprite
+     * @param innerPadding the amount of transparent padding around the sprite
+     * @param extrudeBorders the number of times the border pixels are repeated, outside of the padding
+     * @param rotated true if the sprite is rotated
+     * @param dst the image pixels
+     * @param dstWidth the width of the image
+     * @param dstHeight the height of the image
+     * @param dstX the left of the sprite in the image, after padding, extrusion and rotation
+     * @param dstY the top of the sprite in the image, after padding, extrusion and rotation
+     */
+    public static void drawSprite(byte[] src, int srcWidth, int srcHeight, int innerPadding, int extrudeBorders, boolean rotated,
+                                  byte[] dst, int dstWidth, int dstHeight, int dstX, int dstY) {
+        int paddedHeight = srcHeight + innerPadding * 2;
+        int border = innerPadding + extrudeBorders;
+        int width = srcWidth + border * 2;
+        int height = srcHeight + border * 2;
+
+        // The visible columns of a row of the sprite, before rotation
+        int minX = rotated ? Math.max(0, -dstY) : Math.max(0, -dstX);
+        int maxX = rotated ? Math.min(width, dstHeight - dstY) : Math.min(width, dstWidth - dstX);
+        if (minX >= maxX) {
+            return;
+        }
+
+        byte[] row = new byte[width * 4];
+        for (int y = 0; y < height; ++y) {
+            int tx = rotated ? dstX + height - 1 - y : 0;
+            int ty = rotated ? 0 : dstY + y;
+            if (tx < 0 || tx >= dstWidth || ty < 0 || ty >= dstHeight) {
+                continue;
+            }
+
+            int sy = Math.min(Math.max(y - extrudeBorders, 0), paddedHeight - 1) - innerPadding;
+            if (sy < 0 || sy >= srcHeight) {
+                Arrays.fill(row, (byte) 0);
+            } else {
+                int srcRow = sy * srcWidth * 4;
+                // Only the pixels of the sprite are extruded, the padding is transparent
+                for (int x = 0; x < border; ++x) {
+                    if (innerPadding > 0) {
+                        Arrays.fill(row, x * 4, x * 4 + 4, (byte) 0);
+                        Arrays.fill(row, (width - 1 - x) * 4, (width - x) * 4, (byte) 0);
+                    } else {
+                        System.arraycopy(src, srcRow, row, x * 4, 4);
+                        System.arraycopy(src, srcRow + (srcWidth - 1) * 4, row, (width - 1 - x) * 4, 4);
+                    }
+                }
+                System.arraycopy(src, srcRow, row, border * 4, srcWidth * 4);
+            }
+
+            if (rotated) {
+                // Row y of the sprite is column height - 1 - y of the rotated sprite
+                for (int x = minX; x < maxX; ++x) {
+                    System.arraycopy(row, x * 4, dst, ((dstY + x) * dstWidth + tx) * 4, 4);
+                }
+            } else {
+                System.arraycopy(row, minX * 4, dst, (ty * dstWidth + dstX + minX) * 4, (maxX - minX) * 4);
+            }
+        }
+    }
+
     public static BufferedImage depalettiseImage(BufferedImage src) {
         BufferedImage result = null;
         if (BufferedImage.TYPE_BYTE_INDEXED == src.getType() || BufferedImage.TYPE_BYTE_BINARY == src.getType() || src.getColorModel().getNumColorComponents() < 3 || src.getColorModel().getComponentSize(0) > 8) {
@@ -282,11 +501,43 @@ public class TextureUtil {
     }
 
     // Public api
-    public static List<BufferedImage> loadImages(List<IResource> resources) throws IOException, CompileExceptionError {
-        List<BufferedImage> images = new ArrayList<BufferedImage>(resources.size());
+    /**
+     * Decode an image, or get it from the cache of decoded images of the build
+     * if the same image data has been decoded before. The returned image may
+     * be shared and must not be modified.
+     * @param project The project being built
+     * @param data The encoded image data
+     * @return The decoded image, or null if the image format isn't supported
+     */
+    public static BufferedImage readImage(Project project, byte[] data) throws IOException {
+        return project.getImageCache().get(data);
+    }
 
+    /**
+     * Decode the images of a list of resources, in parallel
+     * @see #readImage(Project, byte[])
+     */
+    public static List<BufferedImage> loadImages(Project project, List<IResource> resources) throws IOException, CompileExceptionError {
+        ExecutorService executor = project.getImageExecutor();
+        List<Future<BufferedImage>> futures = new ArrayList<Future<BufferedImage>>(resources.size());
         for (IResource resource : resources) {
-            BufferedImage image = ImageIO.read(new ByteArrayInputStream(resource.getContent()));
+            final byte[] content = resource.getContent();
+            futures.add(executor.submit(() -> readImage(project, content)));
+        }
+
+        List<BufferedImage> images = new ArrayList<BufferedImage>(resources.size());
+        for (int i = 0; i < resources.size(); ++i) {
+            IResource resource = resources.get(i);
+            BufferedImage image;
+            try {
+                image = futures.get(i).get();
+            } catch (InterruptedException | ExecutionException e) {
+                Throwable cause = e.getCause() != null ? e.getCause() : e;
+                if (cause instanceof IOException) {
+                    throw (IOException) cause;
+                }
+                throw new CompileExceptionError(resource, -1, "Unable to load image " + resource.getPath(), cause);
+            }
             if (image == null) {
                 throw new CompileExceptionError(resource, -1, "Unable to load image " + resource.getPath());
             }
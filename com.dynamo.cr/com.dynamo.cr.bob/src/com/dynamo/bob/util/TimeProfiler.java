@@ -29,6 +29,7 @@ import java.util.List;
 import java.util.ArrayList;
 import java.util.Map;
 import java.util.HashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 import org.codehaus.jackson.JsonFactory;
 import org.codehaus.jackson.JsonGenerator;
@@ -38,15 +39,22 @@ import org.apache.commons.io.IOUtils;
 
 /**
  * Class helps to profile time of the Bob tool and generate report.
+ *
+ * Each thread records its own stack of scopes without any locking. In the
+ * time report the scopes of other threads than the one which initialized the
+ * profiler are grouped in one top level entry per thread.
  */
 public class TimeProfiler {
 
     private static final String FILENAME_POSTFIX = "_time";
 
+    private static final long NANOS_PER_MILLI = 1000000L;
+
     /**
      * Helper class that contains profiling data and represents a linked list of scopes hierarchy.
      */
     private static class ProfilingScope {
+        // nanoseconds since buildTime
         public long startTime;
         public long endTime;
         HashMap<String, String> additionalStringData;
@@ -55,6 +63,11 @@ public class TimeProfiler {
 
         public ProfilingScope parent;
         public ArrayList<ProfilingScope> children;
+
+        // the thread which recorded the scope
+        public ThreadState thread;
+        // true if the scope was started with no other scope open on the thread
+        public boolean threadRoot;
     }
 
     /**
@@ -67,24 +80,66 @@ public class TimeProfiler {
         public long timestamp;
     }
 
-    private static ArrayList<ProfilingMark> marks;
+    /**
+     * Scope stack of a single thread. Only the owning thread modifies it
+     * while profiling.
+     */
+    private static class ThreadState {
+        public final long id;
+        public final String name;
+        public ProfilingScope currentScope;
+        // scopes started with no other scope open on this thread
+        public final ArrayList<ProfilingScope> roots = new ArrayList<ProfilingScope>();
+
+        ThreadState(Thread thread) {
+            this.id = thread.getId();
+            this.name = thread.getName();
+        }
+    }
+
+    private static ConcurrentLinkedQueue<ProfilingMark> marks;
     private static long buildTime;
+    // added to System.nanoTime() to get nanoseconds since buildTime
+    private static long timeOffset;
 
-    private static ProfilingScope rootScope;
-    private static ProfilingScope currentScope;
+    private static volatile ProfilingScope rootScope;
     private static List<File> reportFiles;
+    private static File traceFile;
     private static Boolean fromEditor;
 
+    // the thread which initialized the profiler
+    private static ThreadState ownerThread;
+
+    private static ConcurrentLinkedQueue<ThreadState> threads;
+    private static ThreadLocal<ThreadState> threadState;
+
     private static long time() {
-        return System.currentTimeMillis();
+        return System.nanoTime() + timeOffset;
+    }
+
+    private static ThreadState getThreadState() {
+        if (rootScope == null) {
+            return null;
+        }
+        ThreadState state = threadState.get();
+        if (state == null) {
+            state = new ThreadState(Thread.currentThread());
+            threadState.set(state);
+            threads.add(state);
+        }
+        return state;
+    }
+
+    private static long toMillis(long time) {
+        return time / NANOS_PER_MILLI;
     }
 
     private static void generateJsonRecursively(JsonGenerator generator, ProfilingScope scope) throws IOException {
         generator.writeStartObject();
         generator.writeFieldName("start");
-        generator.writeNumber(scope.startTime - buildTime);
+        generator.writeNumber(toMillis(scope.startTime));
         generator.writeFieldName("duration");
-        generator.writeNumber(scope.endTime - scope.startTime);
+        generator.writeNumber(toMillis(scope.endTime - scope.startTime));
         if (scope.additionalStringData != null) {
             for (Map.Entry<String, String> entry : scope.additionalStringData.entrySet())  {
                 generator.writeFieldName(entry.getKey());
@@ -114,7 +169,7 @@ public class TimeProfiler {
         generator.writeEndObject();
     }
 
-    private static void generateJSON(ProfilingScope scope, BufferedWriter writer) throws IOException {
+    private static void generateJSON(List<ProfilingScope> scopes, BufferedWriter writer) throws IOException {
 
         JsonGenerator generator = null;
         try {
@@ -123,7 +178,9 @@ public class TimeProfiler {
             generator.writeStartObject();
             generator.writeFieldName("data");
             generator.writeStartArray();
-            generateJsonRecursively(generator, scope);
+            for (ProfilingScope scope : scopes) {
+                generateJsonRecursively(generator, scope);
+            }
             generator.writeEndArray();
             generator.writeFieldName("marks");
             generator.writeStartArray();
@@ -136,7 +193,92 @@ public class TimeProfiler {
                 generator.writeFieldName("color");
                 generator.writeString(mark.color);
                 generator.writeFieldName("timestamp");
-                generator.writeNumber(mark.timestamp - buildTime);
+                generator.writeNumber(toMillis(mark.timestamp));
+                generator.writeEndObject();
+            }
+            generator.writeEndArray();
+            generator.writeEndObject();
+        } finally {
+            if (null != generator) {
+                generator.flush();
+            }
+        }
+    }
+
+    private static void generateTraceEventsRecursively(JsonGenerator generator, ProfilingScope scope) throws IOException {
+        String name = null;
+        if (scope.additionalStringData != null) {
+            name = scope.additionalStringData.get("name");
+        }
+        generator.writeStartObject();
+        generator.writeStringField("name", name != null ? name : "unnamed");
+        generator.writeStringField("ph", "X");
+        generator.writeNumberField("pid", 1);
+        generator.writeNumberField("tid", scope.thread.id);
+        // trace event timestamps are in microseconds
+        generator.writeNumberField("ts", scope.startTime / 1000.0);
+        generator.writeNumberField("dur", (scope.endTime - scope.startTime) / 1000.0);
+        generator.writeFieldName("args");
+        generator.writeStartObject();
+        if (scope.additionalStringData != null) {
+            for (Map.Entry<String, String> entry : scope.additionalStringData.entrySet())  {
+                generator.writeStringField(entry.getKey(), entry.getValue());
+            }
+        }
+        if (scope.additionalNumberData != null) {
+            for (Map.Entry<String, Float> entry : scope.additionalNumberData.entrySet())  {
+                generator.writeNumberField(entry.getKey(), entry.getValue());
+            }
+        }
+        if (scope.additionalBooleanData != null) {
+            for (Map.Entry<String, Boolean> entry : scope.additionalBooleanData.entrySet())  {
+                generator.writeBooleanField(entry.getKey(), entry.getValue());
+            }
+        }
+        generator.writeEndObject();
+        generator.writeEndObject();
+        if (scope.children != null) {
+            for(ProfilingScope childScope : scope.children) {
+                generateTraceEventsRecursively(generator, childScope);
+            }
+        }
+    }
+
+    /**
+     * Write the scopes in the Chrome trace event format, which can be opened
+     * in Perfetto or chrome://tracing. Each thread gets its own track.
+     */
+    private static void generateTrace(List<ProfilingScope> scopes, BufferedWriter writer) throws IOException {
+        JsonGenerator generator = null;
+        try {
+            generator = (new JsonFactory()).createJsonGenerator(writer);
+            generator.writeStartObject();
+            generator.writeStringField("displayTimeUnit", "ms");
+            generator.writeFieldName("traceEvents");
+            generator.writeStartArray();
+            for (ThreadState thread : threads) {
+                generator.writeStartObject();
+                generator.writeStringField("name", "thread_name");
+                generator.writeStringField("ph", "M");
+                generator.writeNumberField("pid", 1);
+                generator.writeNumberField("tid", thread.id);
+                generator.writeFieldName("args");
+                generator.writeStartObject();
+                generator.writeStringField("name", thread.name);
+                generator.writeEndObject();
+                generator.writeEndObject();
+            }
+            for (ProfilingScope scope : scopes) {
+                generateTraceEventsRecursively(generator, scope);
+            }
+            for (ProfilingMark mark : marks) {
+                generator.writeStartObject();
+                generator.writeStringField("name", mark.fullName);
+                generator.writeStringField("ph", "i");
+                generator.writeStringField("s", "g");
+                generator.writeNumberField("pid", 1);
+                generator.writeNumberField("tid", ownerThread.id);
+                generator.writeNumberField("ts", mark.timestamp / 1000.0);
                 generator.writeEndObject();
             }
             generator.writeEndArray();
@@ -165,6 +307,61 @@ public class TimeProfiler {
         return new String[]{beforeToken, afterToken};
     }
 
+    private static boolean isRoot(ProfilingScope scope) {
+        return scope.parent == null && !scope.threadRoot;
+    }
+
+    // close all unclosed scopes of a thread
+    private static void closeScopes(ThreadState state, long endTime) {
+        ProfilingScope scope = state.currentScope;
+        while (scope != null && !isRoot(scope)) {
+            addData(scope, "forceFinishedScope", true);
+            addData(scope, "color", "#FF0000");
+            scope.endTime = endTime;
+            state.currentScope = scope.threadRoot ? null : scope.parent;
+            scope = state.currentScope;
+        }
+    }
+
+    /**
+     * Close all scopes and collect the top level scopes of the report. The
+     * scopes of each thread other than the one which initialized the profiler
+     * are grouped under a scope spanning all of them.
+     */
+    private static List<ProfilingScope> collectScopes(ProfilingScope root) {
+        long endTime = time();
+        List<ProfilingScope> result = new ArrayList<ProfilingScope>();
+        result.add(root);
+        for (ThreadState state : threads) {
+            closeScopes(state, endTime);
+            if (state == ownerThread || state.roots.isEmpty()) {
+                continue;
+            }
+            ProfilingScope threadScope = new ProfilingScope();
+            threadScope.thread = state;
+            threadScope.startTime = Long.MAX_VALUE;
+            threadScope.endTime = Long.MIN_VALUE;
+            threadScope.children = state.roots;
+            for (ProfilingScope scope : state.roots) {
+                threadScope.startTime = Math.min(threadScope.startTime, scope.startTime);
+                threadScope.endTime = Math.max(threadScope.endTime, scope.endTime);
+            }
+            addData(threadScope, "name", "Thread " + state.name);
+            result.add(threadScope);
+        }
+        return result;
+    }
+
+    private static File getReportFile(File reportFile) {
+        File parentDir = reportFile.getAbsoluteFile().getParentFile();
+        if (parentDir != null && !parentDir.exists()) {
+            if (!parentDir.mkdirs()) {
+                System.out.println("Failed to create directories: " + parentDir);
+            }
+        }
+        return reportFile;
+    }
+
     public static void createReport(Boolean fromEditor) {
         // avoid double creation of the report by checking `fromEditor` flag
         if (rootScope == null || TimeProfiler.fromEditor != fromEditor) {
@@ -173,16 +370,12 @@ public class TimeProfiler {
         ProfilingScope _rootScope = rootScope;
         // Make sure that using of TimeProfiler is impossible from now on
         rootScope = null;
-        long reportStartTime = time();
+        long reportStartTime = System.currentTimeMillis();
 
-        //Close all unclosed scopes
-        while(currentScope != _rootScope) {
-            unsafeAddData("forceFinishedScope", true);
-            unsafeAddData("color", "#FF0000");
-            unsafeStop();
-        };
-        unsafeStop();
+        List<ProfilingScope> scopes = collectScopes(_rootScope);
+        _rootScope.endTime = time();
 
+        int bufferSize = 8 * 1024 * 1024; // 8 MB in bytes
         try {
             // save report files, add '_time' to the given filenames
             // foo.json -> foo_time.json
@@ -190,22 +383,15 @@ public class TimeProfiler {
                 String reportFileName = reportFile.getName();
                 String extension = "." + FilenameUtils.getExtension(reportFileName);
                 String finalReportFileName = reportFileName.replace(extension, FILENAME_POSTFIX + extension);
-                File finalReportFile = new File(reportFile.getParent(), finalReportFileName);
-                File parentDir = finalReportFile.getParentFile();
-                if (parentDir != null && !parentDir.exists()) {
-                    if (!parentDir.mkdirs()) {
-                        System.out.println("Failed to create directories: " + parentDir);
-                    }
-                }
-                int bufferSize = 8 * 1024 * 1024; // 8 MB in bytes
+                File finalReportFile = getReportFile(new File(reportFile.getParent(), finalReportFileName));
                 try (BufferedWriter writer = new BufferedWriter(new FileWriter(finalReportFile), bufferSize)) {
                     if (extension.equals(".json")) {
-                        generateJSON(_rootScope, writer);
+                        generateJSON(scopes, writer);
                     } else if (extension.equals(".html")) {
                         String[] htmlContent = getHtmlContent();
                         writer.write(htmlContent[0]);
                         writer.flush();
-                        generateJSON(_rootScope, writer);
+                        generateJSON(scopes, writer);
                         writer.flush();
                         writer.write(htmlContent[1]);
                     } else {
@@ -218,42 +404,71 @@ public class TimeProfiler {
                     throw e;
                 }
             }
+            if (traceFile != null) {
+                try (BufferedWriter writer = new BufferedWriter(new FileWriter(getReportFile(traceFile)), bufferSize)) {
+                    generateTrace(scopes, writer);
+                    writer.flush();
+                }
+            }
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
 
-        long reportEndTime = time();
+        long reportEndTime = System.currentTimeMillis();
         System.out.printf("\nTime profiler report creation took %.2f seconds", (reportEndTime - reportStartTime)/1000.0f);
     }
 
     public static void init(List<File> reportFiles, Boolean fromEditor) throws IOException {
+        init(reportFiles, null, fromEditor);
+    }
+
+    /**
+     * Start profiling
+     * @param reportFiles Time reports to write (.json or .html)
+     * @param traceFile Path to write a Chrome trace event file to, or null
+     * @param fromEditor true if the build was started from the editor
+     */
+    public static void init(List<File> reportFiles, File traceFile, Boolean fromEditor) throws IOException {
         if (rootScope != null) {
             return;
         }
         TimeProfiler.reportFiles = reportFiles;
+        TimeProfiler.traceFile = traceFile;
         TimeProfiler.fromEditor = fromEditor;
-        marks = new ArrayList();
-        long startTime = time();
+        marks = new ConcurrentLinkedQueue<ProfilingMark>();
+        threads = new ConcurrentLinkedQueue<ThreadState>();
+        threadState = new ThreadLocal<ThreadState>();
+        long now = System.currentTimeMillis();
+        long startTime = now;
         if (!fromEditor) {
             RuntimeMXBean bean = ManagementFactory.getRuntimeMXBean();
             startTime = bean.getStartTime(); //Returns the start time of the Java virtual machine in milliseconds.
         }
         buildTime = startTime;
-        rootScope = new ProfilingScope();
-        rootScope.startTime = startTime;
-        currentScope = rootScope;
-        unsafeAddData("name", "Total time");
+        timeOffset = (now - startTime) * NANOS_PER_MILLI - System.nanoTime();
+
+        ownerThread = new ThreadState(Thread.currentThread());
+        threadState.set(ownerThread);
+        threads.add(ownerThread);
+
+        ProfilingScope root = new ProfilingScope();
+        root.startTime = 0;
+        root.thread = ownerThread;
+        addData(root, "name", "Total time");
+        ownerThread.currentScope = root;
 
         if (!fromEditor) {
             ProfilingScope initScope = new ProfilingScope();
             initScope.additionalStringData = new HashMap<String, String>();
             initScope.additionalStringData.put("name", "Java VM init");
-            initScope.startTime = startTime;
+            initScope.startTime = 0;
             initScope.endTime = time();
-            rootScope.children = new ArrayList<ProfilingScope>();
-            rootScope.children.add(initScope);
-            initScope.parent = rootScope;
+            initScope.thread = ownerThread;
+            root.children = new ArrayList<ProfilingScope>();
+            root.children.add(initScope);
+            initScope.parent = root;
         }
+        rootScope = root;
 
         Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
             @Override
@@ -264,21 +479,30 @@ public class TimeProfiler {
     }
 
     public static void start() {
-        if (rootScope == null) {
+        ThreadState state = getThreadState();
+        if (state == null) {
             return;
         }
-        if (currentScope.children == null) {
-            currentScope.children = new ArrayList<ProfilingScope>();
-        }
         ProfilingScope scope = new ProfilingScope();
         scope.startTime = time();
-        scope.parent = currentScope;
-        currentScope.children.add(scope);
-        currentScope = scope;
+        scope.thread = state;
+        ProfilingScope parent = state.currentScope;
+        if (parent != null) {
+            if (parent.children == null) {
+                parent.children = new ArrayList<ProfilingScope>();
+            }
+            parent.children.add(scope);
+            scope.parent = parent;
+        } else {
+            scope.threadRoot = true;
+            state.roots.add(scope);
+        }
+        state.currentScope = scope;
     }
 
     public static void start(String scopeName) {
-        if (rootScope == null) {
+        ThreadState state = getThreadState();
+        if (state == null) {
             return;
         }
         start();
@@ -289,16 +513,18 @@ public class TimeProfiler {
         start(String.format(fmt, args));
     }
 
-    private static void unsafeStop() {
-        currentScope.endTime = time();
-        currentScope = currentScope.parent;
-    }
-
     public static void stop() {
-        if (rootScope == null) {
+        ThreadState state = getThreadState();
+        if (state == null) {
             return;
         }
-        unsafeStop();
+        ProfilingScope scope = state.currentScope;
+        // never close the root scope, it is closed when the report is created
+        if (scope == null || isRoot(scope)) {
+            return;
+        }
+        scope.endTime = time();
+        state.currentScope = scope.threadRoot ? null : scope.parent;
     }
 
     public static void addMark(String shortName, String fullName, String color) {
@@ -321,46 +547,54 @@ public class TimeProfiler {
         addMark(shortName, shortName, "#EADDCA");
     }
 
-    private static void unsafeAddData(String fieldName, String data) {
-        if (currentScope.additionalStringData == null) {
-            currentScope.additionalStringData = new HashMap<String, String>();
+    private static void addData(ProfilingScope scope, String fieldName, String data) {
+        if (scope.additionalStringData == null) {
+            scope.additionalStringData = new HashMap<String, String>();
         }
-        currentScope.additionalStringData.put(fieldName, data);
+        scope.additionalStringData.put(fieldName, data);
     }
 
-    private static void unsafeAddData(String fieldName, Float data) {
-        if (currentScope.additionalNumberData == null) {
-            currentScope.additionalNumberData = new HashMap<String, Float>();
+    private static void addData(ProfilingScope scope, String fieldName, Float data) {
+        if (scope.additionalNumberData == null) {
+            scope.additionalNumberData = new HashMap<String, Float>();
         }
-        currentScope.additionalNumberData.put(fieldName, data);
+        scope.additionalNumberData.put(fieldName, data);
     }
 
-    private static void unsafeAddData(String fieldName, Boolean data) {
-        if (currentScope.additionalBooleanData == null) {
-            currentScope.additionalBooleanData = new HashMap<String, Boolean>();
+    private static void addData(ProfilingScope scope, String fieldName, Boolean data) {
+        if (scope.additionalBooleanData == null) {
+            scope.additionalBooleanData = new HashMap<String, Boolean>();
         }
-        currentScope.additionalBooleanData.put(fieldName, data);
+        scope.additionalBooleanData.put(fieldName, data);
+    }
+
+    private static ProfilingScope getCurrentScope() {
+        ThreadState state = getThreadState();
+        return state != null ? state.currentScope : null;
     }
 
     public static void addData(String fieldName, String data) {
-        if (rootScope == null) {
+        ProfilingScope scope = getCurrentScope();
+        if (scope == null) {
             return;
         }
-        unsafeAddData(fieldName, data);
+        addData(scope, fieldName, data);
     }
 
     public static void addData(String fieldName, Float data) {
-        if (rootScope == null) {
+        ProfilingScope scope = getCurrentScope();
+        if (scope == null) {
             return;
         }
-        unsafeAddData(fieldName, data);
+        addData(scope, fieldName, data);
     }
 
     public static void addData(String fieldName, Boolean data) {
-        if (rootScope == null) {
+        ProfilingScope scope = getCurrentScope();
+        if (scope == null) {
             return;
         }
-        unsafeAddData(fieldName, data);
+        addData(scope, fieldName, data);
     }
 
     public static void addData(String fieldName, Integer data) {
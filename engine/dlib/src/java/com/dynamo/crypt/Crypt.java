@@ -14,10 +14,25 @@
 
 package com.dynamo.crypt;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
 public class Crypt {
 
     private final static int NUM_ROUNDS = 32;
 
+    private final static int BLOCK_SIZE = 8;
+
+    // Data larger than this is encrypted in parallel chunks
+    private final static int PARALLEL_THRESHOLD = 256 * 1024;
+
+    // Size of each parallel chunk, must be a multiple of BLOCK_SIZE
+    private final static int CHUNK_SIZE = 64 * 1024;
+
+    private final static ForkJoinPool pool = new ForkJoinPool();
+
     private static int[] toIntArray(byte[] data, int n) {
         int[] result = new int[n >> 2];
         for (int i = 0; i < data.length; ++i) {
@@ -26,44 +41,99 @@ public class Crypt {
         return result;
     }
 
-    private static byte[] toByteArray(int[] data) {
-        int n = data.length << 2;
-        byte[] result = new byte[n];
-
-        for (int i = 0; i < n; ++i) {
-            result[i] = (byte) (data[i >>> 2] >>> ((3 - (i & 3)) << 3));
-        }
-        return result;
-    }
-
-    private static int[] encrypt(int[] v, int[] key) {
+    // Encrypt the block (v0, v1) and return it as a big endian long
+    private static long encrypt(int v0, int v1, int[] key) {
         int sum = 0;
         int delta = 0x9e3779b9;
-        int v0 = v[0];
-        int v1 = v[1];
         for (int i = 0; i < NUM_ROUNDS; i++) {
             v0 += (((v1 << 4) ^ (v1 >>> 5)) + v1) ^ (sum + key[sum & 3]);
             sum += delta;
             v1 += (((v0 << 4) ^ (v0 >>> 5)) + v0) ^ (sum + key[(sum >>> 11) & 3]);
         }
-        return new int[] { v0, v1 };
+        return ((long) v0 << 32) | (v1 & 0xffffffffL);
     }
 
-    public static byte[] encryptCTR(byte[] data, byte[] key) {
-        byte[] result = new byte[data.length];
-        int[] counter = new int[2];
-        byte[] enc_counter = new byte[8];
-        int[] int_key = toIntArray(key, 16);
-
-        for (int i = 0; i < data.length; i++) {
-            if (i % 8 == 0) {
-                enc_counter = toByteArray(encrypt(counter, int_key));
-                // TODO: Include overflow for supporting more than 2^31 bytes of data.
-                //       i.e. handling incrementing counter[0] as well.
-                counter[1]++;
+    // Encrypt length bytes in place, starting at the absolute index offset of
+    // a big endian buffer. The first block is encrypted with the given counter.
+    private static void encryptBlocks(ByteBuffer data, int offset, int length, int counter, int[] key) {
+        int end = offset + length;
+        int i = offset;
+        for (; i + BLOCK_SIZE <= end; i += BLOCK_SIZE) {
+            // TODO: Include overflow for supporting more than 2^31 bytes of data.
+            //       i.e. handling incrementing the high word of the counter as well.
+            data.putLong(i, data.getLong(i) ^ encrypt(0, counter++, key));
+        }
+        if (i < end) {
+            long encCounter = encrypt(0, counter, key);
+            for (int shift = 56; i < end; ++i, shift -= 8) {
+                data.put(i, (byte) (data.get(i) ^ (encCounter >>> shift)));
             }
-            result[i] = (byte) ((data[i] ^ enc_counter[i % 8]) & 0xff);
         }
+    }
+
+    private static class EncryptTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final ByteBuffer data;
+        private final int offset;
+        private final int start;
+        private final int end;
+        private final int[] key;
+
+        // start and end are relative to offset, start is a multiple of BLOCK_SIZE
+        EncryptTask(ByteBuffer data, int offset, int start, int end, int[] key) {
+            this.data = data;
+            this.offset = offset;
+            this.start = start;
+            this.end = end;
+            this.key = key;
+        }
+
+        @Override
+        protected void compute() {
+            int length = end - start;
+            if (length <= CHUNK_SIZE) {
+                encryptBlocks(data, offset + start, length, start / BLOCK_SIZE, key);
+                return;
+            }
+            int middle = start + ((length / CHUNK_SIZE + 1) / 2) * CHUNK_SIZE;
+            invokeAll(new EncryptTask(data, offset, start, middle, key),
+                      new EncryptTask(data, offset, middle, end, key));
+        }
+    }
+
+    /**
+     * Encrypt the remaining bytes of a buffer in place. The position, limit
+     * and byte order of the buffer are not changed. Works on both heap and
+     * direct buffers without allocating per block, and encrypts large
+     * buffers in parallel. The result is identical to encryptCTR(byte[], byte[]).
+     * @param data The buffer to encrypt
+     * @param key The 16 byte key
+     */
+    public static void encryptCTR(ByteBuffer data, byte[] key) {
+        ByteBuffer buffer = data.duplicate().order(ByteOrder.BIG_ENDIAN);
+        int[] intKey = toIntArray(key, 16);
+        int offset = buffer.position();
+        int length = buffer.remaining();
+        if (length <= PARALLEL_THRESHOLD) {
+            encryptBlocks(buffer, offset, length, 0, intKey);
+        }
+        else {
+            pool.invoke(new EncryptTask(buffer, offset, 0, length, intKey));
+        }
+    }
+
+    /**
+     * Decrypt the remaining bytes of a buffer in place.
+     * @see #encryptCTR(ByteBuffer, byte[])
+     */
+    public static void decryptCTR(ByteBuffer data, byte[] key) {
+        encryptCTR(data, key);
+    }
+
+    public static byte[] encryptCTR(byte[] data, byte[] key) {
+        byte[] result = data.clone();
+        encryptCTR(ByteBuffer.wrap(result), key);
         return result;
     }
 
@@ -0,0 +1,99 @@
+// Copyright 2020-2024 The Defold Foundation
+// Copyright 2014-2020 King
+// Copyright 2009-2014 Ragnar Svensson, Christian Murray
+// Licensed under the Defold License version 1.0 (the "License"); you may not use
+// this file except in compliance with the License.
+//
+// You may obtain a copy of the License, together with FAQs at
+// https://www.defold.com/license
+//
+// Unless required by applicable law or agreed to in writing, software distributed
+// under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+// CONDITIONS OF ANY KIND, either express or implied. See the License for the
+// specific language governing permissions and limitations under the License.
+
+package com.dynamo.crypt;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class CryptTest {
+
+    private static final byte[] KEY = "aQj8CScgNP4VsfXK".getBytes();
+
+    // Straightforward implementation, one block at a time
+    private static byte[] referenceEncryptCTR(byte[] data, byte[] key) {
+        int[] intKey = new int[4];
+        for (int i = 0; i < key.length; ++i) {
+            intKey[i >>> 2] |= (0x000000ff & key[i]) << ((3 - (i & 3)) << 3);
+        }
+        byte[] result = new byte[data.length];
+        int counter = 0;
+        byte[] encCounter = new byte[8];
+        for (int i = 0; i < data.length; i++) {
+            if (i % 8 == 0) {
+                int sum = 0;
+                int v0 = 0;
+                int v1 = counter++;
+                for (int r = 0; r < 32; r++) {
+                    v0 += (((v1 << 4) ^ (v1 >>> 5)) + v1) ^ (sum + intKey[sum & 3]);
+                    sum += 0x9e3779b9;
+                    v1 += (((v0 << 4) ^ (v0 >>> 5)) + v0) ^ (sum + intKey[(sum >>> 11) & 3]);
+                }
+                for (int j = 0; j < 4; ++j) {
+                    encCounter[j] = (byte) (v0 >>> ((3 - j) << 3));
+                    encCounter[j + 4] = (byte) (v1 >>> ((3 - j) << 3));
+                }
+            }
+            result[i] = (byte) (data[i] ^ encCounter[i % 8]);
+        }
+        return result;
+    }
+
+    private static byte[] randomData(int size) {
+        byte[] data = new byte[size];
+        new Random(size).nextBytes(data);
+        return data;
+    }
+
+    @Test
+    public void testByteArray() {
+        int[] sizes = { 0, 1, 7, 8, 9, 100, 4096, 65537, 1024 * 1024 + 3 };
+        for (int size : sizes) {
+            byte[] data = randomData(size);
+            byte[] encrypted = Crypt.encryptCTR(data, KEY);
+            assertArrayEquals(referenceEncryptCTR(data, KEY), encrypted);
+            assertArrayEquals(data, Crypt.decryptCTR(encrypted, KEY));
+        }
+    }
+
+    @Test
+    public void testDirectByteBuffer() {
+        int[] sizes = { 5, 8, 1000, 1024 * 1024 + 3 };
+        for (int size : sizes) {
+            byte[] data = randomData(size);
+            ByteBuffer buffer = ByteBuffer.allocateDirect(size + 3);
+            buffer.position(3);
+            buffer.put(data);
+            buffer.position(3);
+
+            Crypt.encryptCTR(buffer, KEY);
+            assertEquals(3, buffer.position());
+            assertEquals(size + 3, buffer.limit());
+
+            byte[] encrypted = new byte[size];
+            buffer.duplicate().get(encrypted);
+            assertArrayEquals(referenceEncryptCTR(data, KEY), encrypted);
+
+            Crypt.decryptCTR(buffer, KEY);
+            byte[] decrypted = new byte[size];
+            buffer.get(decrypted);
+            assertArrayEquals(data, decrypted);
+        }
+    }
+}